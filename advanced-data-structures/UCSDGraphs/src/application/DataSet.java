@@ -1,10 +1,16 @@
 package application;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+import geography.BoundingBox;
 import geography.GeographicPoint;
+import geography.RoadIndex;
+import geography.RoadSegment;
 import util.GraphLoader;
 
 /**
@@ -19,12 +25,14 @@ public class DataSet {
 	roadgraph.MapGraph graph;
 	Set<GeographicPoint> intersections;
     private HashMap<geography.GeographicPoint,HashSet<geography.RoadSegment>>  roads;
+    private RoadIndex roadIndex;
 	boolean currentlyDisplayed;
 
 	public DataSet (String path) {
         this.filePath = path;
         graph = null;
         roads = null;
+        roadIndex = null;
         currentlyDisplayed = false;
 	}
 
@@ -32,7 +40,10 @@ public class DataSet {
     	this.graph = graph;
     }
 
-    public void setRoads(HashMap<geography.GeographicPoint,HashSet<geography.RoadSegment>>  roads) { this.roads = roads; }
+    public void setRoads(HashMap<geography.GeographicPoint,HashSet<geography.RoadSegment>>  roads) {
+    	this.roads = roads;
+    	this.roadIndex = RoadIndex.of(roads);
+    }
     public roadgraph.MapGraph getGraph(){ return graph; }
     
     /** Return the intersections in this graph.
@@ -54,12 +65,53 @@ public class DataSet {
     
     public HashMap<geography.GeographicPoint,HashSet<geography.RoadSegment>>  getRoads() { return this.roads; }
 
+    /** Snap a location, e.g. a click on the map, to the closest intersection.
+     * @param point The location
+     * @return The closest intersection, null if there is none
+     */
+    public GeographicPoint nearestIntersection(GeographicPoint point) {
+    	return graph.nearestVertex(point);
+    }
+
+    /** Return the road segments to draw in an area, e.g. the viewport.
+     * @param box The area
+     * @return The segments with a piece of road in the area
+     */
+    public List<RoadSegment> getRoadsWithin(BoundingBox box) {
+    	return roadIndex.intersecting(box);
+    }
+
+    /** Return the road segments passing near a location, closest first.
+     * @param point The location
+     * @param radius The distance in km
+     * @return The segments within radius of the location
+     */
+    public List<RoadSegment> getRoadsNear(GeographicPoint point, double radius) {
+    	return roadIndex.within(point, radius);
+    }
+
+    /** Load the graph, from the binary graph file next to the .map file 
+     * if there is one at least as recent, see GraphLoader.createGraphFile.
+     */
     public void initializeGraph() {
-        graph = new roadgraph.MapGraph();
         roads = new HashMap<geography.GeographicPoint, HashSet<geography.RoadSegment>>();
         intersections = new HashSet<GeographicPoint>();
+        File graphFile = new File(GraphLoader.graphFileOf(filePath));
+        if (graphFile.isFile() && graphFile.lastModified() >= new File(filePath).lastModified()) {
+        	try {
+        		graph = GraphLoader.loadGraphFile(graphFile.getPath(), roads, intersections);
+        		roadIndex = RoadIndex.of(roads);
+        		return;
+        	} catch (IOException e) {
+        		System.err.println("Problem loading graph file: " + graphFile + ", loading " + filePath);
+        		roads.clear();
+        		intersections.clear();
+        	}
+        }
+        graph = new roadgraph.MapGraph();
         //TODO: change to use intersections for points in graph.
     	GraphLoader.loadRoadMap(filePath, graph, roads, intersections);
+    	roadIndex = RoadIndex.of(roads);
     }
 
 	public String getFilePath() {
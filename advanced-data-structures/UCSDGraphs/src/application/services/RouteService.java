@@ -5,7 +5,6 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.function.Consumer;
 
@@ -16,10 +15,7 @@ import application.MarkerManager;
 import application.RouteVisualization;
 import application.controllers.RouteController;
 
-import java.util.Iterator;
-
 import geography.GeographicPoint;
-import geography.RoadSegment;
 import gmapsfx.GoogleMapView;
 import gmapsfx.javascript.object.GoogleMap;
 import gmapsfx.javascript.object.LatLong;
@@ -27,6 +23,9 @@ import gmapsfx.javascript.object.LatLongBounds;
 import gmapsfx.javascript.object.MVCArray;
 import gmapsfx.shapes.Polyline;
 import javafx.scene.control.Button;
+import roadgraph.CostProfile;
+import roadgraph.Route;
+import roadgraph.SearchStats;
 
 public class RouteService {
 	private GoogleMap map;
@@ -107,28 +106,21 @@ public class RouteService {
         			toggle == RouteController.BFS) {
         		markerManager.initVisualization();
             	Consumer<geography.GeographicPoint> nodeAccepter = markerManager.getVisualization()::acceptPoint;
-            	List<geography.GeographicPoint> path = null;
+            	SearchStats.Algorithm algorithm = SearchStats.Algorithm.A_STAR;
             	if (toggle == RouteController.BFS) {
-            		path = markerManager.getDataSet().getGraph().bfs(start, end, nodeAccepter);
+            		algorithm = SearchStats.Algorithm.BFS;
             	}
             	else if (toggle == RouteController.DIJ) {
-            		path = markerManager.getDataSet().getGraph().dijkstra(start, end, nodeAccepter);
-            	}
-            	else if (toggle == RouteController.A_STAR) {
-            		path = markerManager.getDataSet().getGraph().aStarSearch(start, end, nodeAccepter);
+            		algorithm = SearchStats.Algorithm.DIJKSTRA;
             	}
+            	Route route = markerManager.getDataSet().getGraph().route(start, end, algorithm, CostProfile.DURATION, nodeAccepter);
 
-            	if(path == null) {
+            	if(route == null) {
                     // System.out.println("In displayRoute : PATH NOT FOUND");
                     MapApp.showInfoAlert("Routing Error : ", "No path found");
                 	return false;
                 }
-                // TODO -- debug road segments
-            	List<LatLong> mapPath = constructMapPath(path);
-                //List<LatLong> mapPath = new ArrayList<LatLong>();
-                //for(geography.GeographicPoint point : path) {
-                //    mapPath.add(new LatLong(point.getX(), point.getY()));
-                //}
+            	List<LatLong> mapPath = constructMapPath(route);
 
 
                 markerManager.setSelectMode(false);
@@ -144,56 +136,15 @@ public class RouteService {
 
 
     /**
-     * Construct path including road regments
-     * @param path - path with only intersections
+     * Construct path including road segments
+     * @param route - route found by the graph, with the geometry of its roads
      * @return list of LatLongs corresponding the path of route
      */
-    private List<LatLong> constructMapPath(List<geography.GeographicPoint> path) {
-    	List<LatLong> retVal = new ArrayList<LatLong>();
-        List<geography.GeographicPoint> segmentList = null;
-    	geography.GeographicPoint curr;
-    	geography.GeographicPoint next;
-
-    	geography.RoadSegment chosenSegment = null;;
-
-        for(int i = 0; i < path.size() - 1; i++) {
-            double minLength = Double.MAX_VALUE;
-        	curr = path.get(i);
-        	next = path.get(i+1);
-
-        	if(markerManager.getDataSet().getRoads().containsKey(curr)) {
-        		HashSet<geography.RoadSegment> segments = markerManager.getDataSet().getRoads().get(curr);
-        		Iterator<geography.RoadSegment> it = segments.iterator();
-
-        		// get segments which are
-            	geography.RoadSegment currSegment;
-                while(it.hasNext()) {
-                    //System.out.println("new segment");
-                	currSegment = it.next();
-                	if(currSegment.getOtherPoint(curr).equals(next)) {
-                        //System.out.println("1st check passed : other point correct");
-                		if(currSegment.getLength() < minLength) {
-                            //System.out.println("2nd check passed : length less");
-                			chosenSegment = currSegment;
-                		}
-                	}
-                }
-
-                if(chosenSegment != null) {
-                    segmentList = chosenSegment.getPoints(curr, next);
-                    for(geography.GeographicPoint point : segmentList) {
-                        retVal.add(new LatLong(point.getX(), point.getY()));
-                    }
-                }
-                else {
-                	System.err.println("ERROR in constructMapPath : chosenSegment was null");
-                }
-        		// find
-
-        	}
+    private List<LatLong> constructMapPath(Route route) {
+    	List<LatLong> retVal = new ArrayList<LatLong>(route.getGeometry().size());
+        for(geography.GeographicPoint point : route.getGeometry()) {
+            retVal.add(new LatLong(point.getX(), point.getY()));
         }
-
-        // System.out.println("NOW there are " + retVal.size() + " points");
     	return retVal;
     }
 
@@ -0,0 +1,99 @@
+package geography;
+
+/**
+ * Rectangle of latitudes and longitudes, for the spatial queries. It does not cross the antimeridian.
+ *
+ * @author dayler
+ */
+public final class BoundingBox {
+
+    private final double minLat;
+
+    private final double minLon;
+
+    private final double maxLat;
+
+    private final double maxLon;
+
+    /**
+     * @param minLat
+     * @param minLon
+     * @param maxLat
+     * @param maxLon
+     * @throws IllegalArgumentException If a min is above its max or any value is NaN.
+     */
+    public BoundingBox(double minLat, double minLon, double maxLat, double maxLon) {
+        if (!(minLat <= maxLat) || !(minLon <= maxLon)) {
+            throw new IllegalArgumentException("empty box: " + minLat + ", " + minLon + ", " + maxLat + ", " + maxLon);
+        }
+        this.minLat = minLat;
+        this.minLon = minLon;
+        this.maxLat = maxLat;
+        this.maxLon = maxLon;
+    }
+
+    /**
+     * @param a
+     * @param b
+     * @return The smallest box holding both points.
+     */
+    public static BoundingBox of(GeographicPoint a, GeographicPoint b) {
+        return new BoundingBox(Math.min(a.getX(), b.getX()), Math.min(a.getY(), b.getY()), Math.max(a.getX(), b.getX()),
+                               Math.max(a.getY(), b.getY()));
+    }
+
+    public double getMinLat() {
+        return minLat;
+    }
+
+    public double getMinLon() {
+        return minLon;
+    }
+
+    public double getMaxLat() {
+        return maxLat;
+    }
+
+    public double getMaxLon() {
+        return maxLon;
+    }
+
+    /**
+     * @return true if the point is inside the box or on its border.
+     */
+    public boolean contains(double lat, double lon) {
+        return lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon;
+    }
+
+    /**
+     * @return true if the point is inside the box or on its border.
+     */
+    public boolean contains(GeographicPoint point) {
+        return contains(point.getX(), point.getY());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof BoundingBox)) {
+            return false;
+        }
+        BoundingBox other = (BoundingBox) obj;
+        return minLat == other.minLat && minLon == other.minLon && maxLat == other.maxLat && maxLon == other.maxLon;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = Double.hashCode(minLat);
+        hash = 31 * hash + Double.hashCode(minLon);
+        hash = 31 * hash + Double.hashCode(maxLat);
+        return 31 * hash + Double.hashCode(maxLon);
+    }
+
+    @Override
+    public String toString() {
+        return "Lat: [" + minLat + ", " + maxLat + "], Lon: [" + minLon + ", " + maxLon + "]";
+    }
+}
@@ -0,0 +1,55 @@
+package geography;
+
+import java.util.Objects;
+
+/**
+ * Distance in km between two points given by latitude and longitude, the estimate A* calls on every relaxed edge.
+ * <p>
+ * <code>HAVERSINE</code> is the exact great-circle distance of <code>GeographicPoint.distance</code>. <code>equirectangular</code> trades
+ * the trigonometry for a multiply-add and a square root, and never exceeds the great-circle distance inside the area it is made for, so it
+ * can stand in for it as an A* heuristic. <code>distances</code> measures from one point to a whole array of them in a plain loop over
+ * primitive arrays, which the JIT can unroll and vectorize when the kernel has no trigonometry.
+ *
+ * @author dayler
+ */
+@FunctionalInterface
+public interface DistanceKernel {
+
+    /**
+     * Great-circle distance, <code>GeographicPoint.getDist</code>.
+     */
+    DistanceKernel HAVERSINE = GeographicPoint::getDist;
+
+    /**
+     * @param lat1
+     * @param lon1
+     * @param lat2
+     * @param lon2
+     * @return The distance in km between the two points.
+     */
+    double distance(double lat1, double lon1, double lat2, double lon2);
+
+    /**
+     * Distance from one point to many, <code>distances[i]</code> is the distance to <code>(lats[i], lons[i])</code>.
+     *
+     * @param lat
+     * @param lon
+     * @param lats
+     * @param lons
+     * @param distances Receives the distances, at least as long as <code>lats</code>.
+     */
+    default void distances(double lat, double lon, double[] lats, double[] lons, double[] distances) {
+        for (int i = 0; i < lats.length; i++) {
+            distances[i] = distance(lat, lon, lats[i], lons[i]);
+        }
+    }
+
+    /**
+     * @param area Box holding every point the kernel will be called on.
+     * @return A flat-earth distance that is a lower bound of the great-circle distance between any two points of <code>area</code>.
+     */
+    static DistanceKernel equirectangular(BoundingBox area) {
+        Objects.requireNonNull(area, "area");
+        return new Equirectangular(area);
+    }
+}
@@ -0,0 +1,55 @@
+package geography;
+
+/**
+ * Equirectangular distance, <code>R * sqrt(dLat^2 + (cos(lat) * dLon)^2)</code> in radians, with the cosine fixed for a whole area.
+ * <p>
+ * The cosine is the one of the latitude farthest from the equator that a great circle between two points of the area can reach: it is
+ * the smallest one along any shortest path, so the flat distance never exceeds the great-circle distance. For a city it stays within a
+ * fraction of a percent of it, with no trigonometry per call.
+ *
+ * @author dayler
+ */
+final class Equirectangular implements DistanceKernel {
+
+    /**
+     * Relative margin for rounding, so the bound holds in floating point.
+     */
+    private static final double ROUNDING = 1 - 1e-12;
+
+    /**
+     * Km per degree of latitude.
+     */
+    private final double kmPerLat;
+
+    /**
+     * Km per degree of longitude at the farthest latitude.
+     */
+    private final double kmPerLon;
+
+    Equirectangular(BoundingBox area) {
+        double farthest = Math.toRadians(Math.max(Math.abs(area.getMinLat()), Math.abs(area.getMaxLat())));
+        double halfSpan = Math.toRadians(area.getMaxLon() - area.getMinLon()) / 2;
+        // the vertex of a great circle arc is at atan(tan(lat) / cos(dLon / 2)), past a quarter turn it can reach the pole.
+        double cos = halfSpan >= Math.PI / 2 ? 0 : Math.cos(Math.atan(Math.tan(farthest) / Math.cos(halfSpan)));
+        kmPerLat = GeographicPoint.EARTH_RADIUS * Math.PI / 180 * ROUNDING;
+        kmPerLon = kmPerLat * cos;
+    }
+
+    @Override
+    public double distance(double lat1, double lon1, double lat2, double lon2) {
+        double y = (lat2 - lat1) * kmPerLat;
+        double x = (lon2 - lon1) * kmPerLon;
+        return Math.sqrt(x * x + y * y);
+    }
+
+    @Override
+    public void distances(double lat, double lon, double[] lats, double[] lons, double[] distances) {
+        double kmPerLat = this.kmPerLat;
+        double kmPerLon = this.kmPerLon;
+        for (int i = 0; i < lats.length; i++) {
+            double y = (lats[i] - lat) * kmPerLat;
+            double x = (lons[i] - lon) * kmPerLon;
+            distances[i] = Math.sqrt(x * x + y * y);
+        }
+    }
+}
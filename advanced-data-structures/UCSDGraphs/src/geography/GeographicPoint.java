@@ -9,6 +9,11 @@ public class GeographicPoint extends Double {
 
     private static final long serialVersionUID = 20171116L;
 
+    /**
+     * Radius of the earth in km of <code>distance</code>, for the projections and bounds that must agree with it.
+     */
+    public static final double EARTH_RADIUS = 6373;
+
     public GeographicPoint(double latitude, double longitude) {
         super(latitude, longitude);
     }
@@ -24,8 +29,14 @@ public class GeographicPoint extends Double {
         return getDist(this.getX(), this.getY(), other.getX(), other.getY());
     }
 
-    private double getDist(double lat1, double lon1, double lat2, double lon2) {
-        int R = 6373; // radius of the earth in kilometres
+    /**
+     * Calculates the geographic distance in km between two points given by
+     * their latitude and longitude, same as <code>distance</code> without
+     * creating the points.
+     * 
+     * @return The distance between the two points
+     */
+    public static double getDist(double lat1, double lon1, double lat2, double lon2) {
         double lat1rad = Math.toRadians(lat1);
         double lat2rad = Math.toRadians(lat2);
         double deltaLat = Math.toRadians(lat2 - lat1);
@@ -34,7 +45,7 @@ public class GeographicPoint extends Double {
         double a = Math.sin(deltaLat / 2) * Math.sin(deltaLat / 2) + Math.cos(lat1rad) * Math.cos(lat2rad) * Math.sin(deltaLon / 2) * Math.sin(deltaLon / 2);
         double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
 
-        double d = R * c;
+        double d = EARTH_RADIUS * c;
         return d;
     }
 
@@ -0,0 +1,226 @@
+package geography;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Polygons around a set of points, e.g. the area reached by an isochrone.
+ * <p>
+ * The points are projected on a plane in km around their mean latitude, which is accurate enough for an area the size of a city. The convex
+ * hull is Andrew's monotone chain. The concave hull digs into the convex one (Park and Oh, 2012): every edge longer than a given length is
+ * replaced by two edges through the inner point closest to it, as long as the polygon stays simple and every point stays inside, so it
+ * falls back to the convex hull wherever it cannot dig.
+ *
+ * @author dayler
+ */
+public final class Hull {
+
+    /**
+     * Km per degree of latitude.
+     */
+    private static final double KM_PER_DEGREE = GeographicPoint.EARTH_RADIUS * Math.PI / 180;
+
+    private final List<GeographicPoint> points;
+
+    private final double[] x;
+
+    private final double[] y;
+
+    private Hull(Collection<GeographicPoint> points) {
+        this.points = new ArrayList<>(new LinkedHashSet<>(points));
+        double meanLat = 0;
+        for (GeographicPoint point : this.points) {
+            meanLat += point.getX() / this.points.size();
+        }
+        double lonScale = Math.cos(Math.toRadians(meanLat));
+        x = new double[this.points.size()];
+        y = new double[this.points.size()];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = this.points.get(i).getY() * KM_PER_DEGREE * lonScale;
+            y[i] = this.points.get(i).getX() * KM_PER_DEGREE;
+        }
+    }
+
+    /**
+     * @param points
+     * @return The corners of the smallest convex polygon holding the points, counterclockwise, without collinear points. The distinct
+     * points themselves if there are fewer than three.
+     */
+    public static List<GeographicPoint> convex(Collection<GeographicPoint> points) {
+        Objects.requireNonNull(points, "points");
+        Hull hull = new Hull(points);
+        return hull.toPoints(hull.convex());
+    }
+
+    /**
+     * @param points
+     * @param maxEdge Length in km above which an edge of the hull is dug into, the smaller the tighter the hull. Infinity gives the convex
+     * hull.
+     * @return The corners of a simple polygon holding the points, counterclockwise.
+     * @throws IllegalArgumentException If <code>maxEdge</code> is not positive.
+     */
+    public static List<GeographicPoint> concave(Collection<GeographicPoint> points, double maxEdge) throws IllegalArgumentException {
+        Objects.requireNonNull(points, "points");
+        if (!(maxEdge > 0)) {
+            throw new IllegalArgumentException("maxEdge must be positive: " + maxEdge);
+        }
+        Hull hull = new Hull(points);
+        return hull.toPoints(hull.concave(maxEdge));
+    }
+
+    private List<GeographicPoint> toPoints(List<Integer> ids) {
+        List<GeographicPoint> corners = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            corners.add(points.get(id));
+        }
+        return corners;
+    }
+
+    /**
+     * Andrew's monotone chain.
+     */
+    private List<Integer> convex() {
+        int n = points.size();
+        List<Integer> sorted = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            sorted.add(i);
+        }
+        if (n < 3) {
+            return sorted;
+        }
+        sorted.sort(Comparator.<Integer> comparingDouble(i -> x[i]).thenComparingDouble(i -> y[i]));
+        int[] hull = new int[2 * n];
+        int k = 0;
+        // lower chain, then upper chain.
+        for (int i = 0; i < n; i++) {
+            while (k >= 2 && cross(hull[k - 2], hull[k - 1], sorted.get(i)) <= 0) {
+                k--;
+            }
+            hull[k++] = sorted.get(i);
+        }
+        for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+            while (k >= lower && cross(hull[k - 2], hull[k - 1], sorted.get(i)) <= 0) {
+                k--;
+            }
+            hull[k++] = sorted.get(i);
+        }
+        List<Integer> corners = new ArrayList<>(k - 1);
+        for (int i = 0; i < k - 1; i++) {
+            corners.add(hull[i]);
+        }
+        return corners;
+    }
+
+    private List<Integer> concave(double maxEdge) {
+        List<Integer> hull = convex();
+        if (hull.size() < 3) {
+            return hull;
+        }
+        boolean[] onHull = new boolean[points.size()];
+        for (int id : hull) {
+            onHull[id] = true;
+        }
+        int i = 0;
+        while (i < hull.size()) {
+            int a = hull.get(i);
+            int b = hull.get((i + 1) % hull.size());
+            double length = distance(a, b);
+            int dug = length > maxEdge ? dig(hull, onHull, a, b, length) : -1;
+            if (dug < 0) {
+                i++;
+            } else {
+                // look at the new edge from a again.
+                hull.add(i + 1, dug);
+                onHull[dug] = true;
+            }
+        }
+        return hull;
+    }
+
+    /**
+     * @return The inner point to replace the edge from <code>a</code> to <code>b</code> with, or -1 if none keeps the polygon valid.
+     */
+    private int dig(List<Integer> hull, boolean[] onHull, int a, int b, double length) {
+        List<Integer> candidates = new ArrayList<>();
+        for (int p = 0; p < points.size(); p++) {
+            // on the inner side of the edge, and both new edges shorter or the hull would not shrink.
+            if (!onHull[p] && cross(a, b, p) > 0 && Math.max(distance(a, p), distance(b, p)) < length) {
+                candidates.add(p);
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(p -> distanceToEdge(p, a, b)));
+        for (int p : candidates) {
+            if (isValidDig(hull, a, b, p)) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if cutting the triangle <code>a, p, b</code> out of the polygon leaves no point outside and no edges crossing.
+     */
+    private boolean isValidDig(List<Integer> hull, int a, int b, int p) {
+        for (int q = 0; q < points.size(); q++) {
+            if (q != a && q != b && q != p && isCutOut(q, a, p, b)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < hull.size(); i++) {
+            int c = hull.get(i);
+            int d = hull.get((i + 1) % hull.size());
+            if (c == a && d == b) {
+                continue;
+            }
+            if (crosses(a, p, c, d) || crosses(p, b, c, d)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Twice the signed area of <code>o, a, b</code>, positive if they turn counterclockwise.
+     */
+    private double cross(int o, int a, int b) {
+        return (x[a] - x[o]) * (y[b] - y[o]) - (y[a] - y[o]) * (x[b] - x[o]);
+    }
+
+    /**
+     * @return true if <code>q</code> would be cut out with the triangle <code>a, p, b</code>, clockwise as <code>p</code> is on the inner
+     * side of the edge from <code>a</code> to <code>b</code>: inside it or on that edge. The points on the new edges stay on the border.
+     */
+    private boolean isCutOut(int q, int a, int p, int b) {
+        return cross(a, p, q) < 0 && cross(p, b, q) < 0 && cross(b, a, q) <= 0;
+    }
+
+    /**
+     * @return true if the segments cross at a point that is not an end point of both.
+     */
+    private boolean crosses(int a, int b, int c, int d) {
+        if (a == c || a == d || b == c || b == d) {
+            return false;
+        }
+        double d1 = cross(a, b, c);
+        double d2 = cross(a, b, d);
+        double d3 = cross(c, d, a);
+        double d4 = cross(c, d, b);
+        return ((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0));
+    }
+
+    private double distance(int a, int b) {
+        return Math.hypot(x[a] - x[b], y[a] - y[b]);
+    }
+
+    private double distanceToEdge(int p, int a, int b) {
+        double dx = x[b] - x[a];
+        double dy = y[b] - y[a];
+        double length2 = dx * dx + dy * dy;
+        double t = length2 == 0 ? 0 : Math.max(0, Math.min(1, ((x[p] - x[a]) * dx + (y[p] - y[a]) * dy) / length2));
+        return Math.hypot(x[a] + t * dx - x[p], y[a] + t * dy - y[p]);
+    }
+}
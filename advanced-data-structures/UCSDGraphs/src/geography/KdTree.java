@@ -0,0 +1,303 @@
+package geography;
+
+import java.util.stream.IntStream;
+
+/**
+ * Static 2-d tree over points given by latitude and longitude, to find the points closest to a location by great-circle distance, the same
+ * one <code>GeographicPoint.distance</code> measures, or the points inside a box.
+ * <p>
+ * The points are kept in arrays permuted so that every subtree is a contiguous range with its root in the middle, there is no node object.
+ * Each node splits its range on latitude or on longitude, whichever spreads further in km, and a subtree is skipped as soon as the distance
+ * to its splitting line is above the distances found so far. The points are int ids, their index in the arrays the tree is built from.
+ *
+ * @author dayler
+ */
+public final class KdTree {
+
+    private final int[] ids;
+
+    private final double[] lat;
+
+    private final double[] lon;
+
+    /**
+     * True if the node at this index splits its range on latitude, false on longitude.
+     */
+    private final boolean[] splitsLat;
+
+    /**
+     * Builds the tree in <code>O(n log n)</code>, the arrays are copied.
+     *
+     * @param lat Latitude of each point, by id.
+     * @param lon Longitude of each point, by id.
+     */
+    public KdTree(double[] lat, double[] lon) {
+        if (lat.length != lon.length) {
+            throw new IllegalArgumentException("lat and lon lengths differ: " + lat.length + ", " + lon.length);
+        }
+        int n = lat.length;
+        this.ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i;
+        }
+        this.lat = lat.clone();
+        this.lon = lon.clone();
+        this.splitsLat = new boolean[n];
+        build(0, n);
+    }
+
+    private void build(int lo, int hi) {
+        if (hi - lo < 2) {
+            return;
+        }
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        for (int i = lo; i < hi; i++) {
+            minLat = Math.min(minLat, lat[i]);
+            maxLat = Math.max(maxLat, lat[i]);
+            minLon = Math.min(minLon, lon[i]);
+            maxLon = Math.max(maxLon, lon[i]);
+        }
+        // a degree of longitude shrinks with the cosine of the latitude.
+        boolean byLat = maxLat - minLat >= (maxLon - minLon) * Math.cos(Math.toRadians((minLat + maxLat) / 2));
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi, mid, byLat);
+        splitsLat[mid] = byLat;
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    /**
+     * Quickselect: moves the point of rank <code>k</code> on the axis to <code>k</code>, with no greater key before it and no smaller after.
+     * The partition is three-way so runs of equal keys do not make it quadratic.
+     */
+    private void select(int lo, int hi, int k, boolean byLat) {
+        while (hi - lo > 1) {
+            double pivot = key((lo + hi) >>> 1, byLat);
+            int less = lo;
+            int greater = hi;
+            int i = lo;
+            while (i < greater) {
+                double key = key(i, byLat);
+                if (key < pivot) {
+                    swap(less++, i++);
+                } else if (key > pivot) {
+                    swap(i, --greater);
+                } else {
+                    i++;
+                }
+            }
+            if (k < less) {
+                hi = less;
+            } else if (k >= greater) {
+                lo = greater;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private double key(int i, boolean byLat) {
+        return byLat ? lat[i] : lon[i];
+    }
+
+    private void swap(int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        double tmp = lat[i];
+        lat[i] = lat[j];
+        lat[j] = tmp;
+        tmp = lon[i];
+        lon[i] = lon[j];
+        lon[j] = tmp;
+    }
+
+    /**
+     * @return The number of points.
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @param lat
+     * @param lon
+     * @return The id of the point closest to the location, -1 if the tree is empty.
+     */
+    public int nearest(double lat, double lon) {
+        int[] nearest = kNearest(lat, lon, 1);
+        return nearest.length == 0 ? -1 : nearest[0];
+    }
+
+    /**
+     * @param lat
+     * @param lon
+     * @param k
+     * @return The ids of the <code>k</code> points closest to the location, closest first, all of them if there are fewer.
+     */
+    public int[] kNearest(double lat, double lon, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("negative k: " + k);
+        }
+        Neighbors neighbors = new Neighbors(Math.min(k, ids.length));
+        if (neighbors.capacity() > 0) {
+            search(0, ids.length, lat, lon, Math.cos(Math.toRadians(lat)), neighbors);
+        }
+        return neighbors.sorted();
+    }
+
+    private void search(int lo, int hi, double qLat, double qLon, double cosQLat, Neighbors neighbors) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        neighbors.offer(ids[mid], GeographicPoint.getDist(qLat, qLon, lat[mid], lon[mid]));
+        boolean byLat = splitsLat[mid];
+        double split = key(mid, byLat);
+        boolean before = (byLat ? qLat : qLon) < split;
+        // the side of the query first, the other one only if it can hold something closer.
+        if (before) {
+            search(lo, mid, qLat, qLon, cosQLat, neighbors);
+        } else {
+            search(mid + 1, hi, qLat, qLon, cosQLat, neighbors);
+        }
+        if (distanceToSplit(byLat, split, qLat, qLon, cosQLat) < neighbors.worst()) {
+            if (before) {
+                search(mid + 1, hi, qLat, qLon, cosQLat, neighbors);
+            } else {
+                search(lo, mid, qLat, qLon, cosQLat, neighbors);
+            }
+        }
+    }
+
+    /**
+     * @return A lower bound of the distance in km from the query to any point on the other side of the split.
+     */
+    private static double distanceToSplit(boolean byLat, double split, double qLat, double qLon, double cosQLat) {
+        if (byLat) {
+            // no path between two latitudes is shorter than the meridian arc.
+            return GeographicPoint.EARTH_RADIUS * Math.toRadians(Math.abs(qLat - split));
+        }
+        // a path to the other side crosses the meridian of the split, or the antimeridian going the other way round.
+        return Math.min(distanceToMeridian(cosQLat, Math.abs(qLon - split)), distanceToMeridian(cosQLat, 180 - Math.abs(qLon)));
+    }
+
+    /**
+     * @return The cross-track distance to a meridian <code>deltaLon</code> degrees away, 0 past a quarter turn where it is not a bound.
+     */
+    private static double distanceToMeridian(double cosQLat, double deltaLon) {
+        if (deltaLon >= 90) {
+            return 0;
+        }
+        return GeographicPoint.EARTH_RADIUS * Math.asin(cosQLat * Math.sin(Math.toRadians(deltaLon)));
+    }
+
+    /**
+     * @param box
+     * @return The ids of the points inside the box or on its border, in no particular order.
+     */
+    public int[] within(BoundingBox box) {
+        IntStream.Builder found = IntStream.builder();
+        within(0, ids.length, box, found);
+        return found.build().toArray();
+    }
+
+    private void within(int lo, int hi, BoundingBox box, IntStream.Builder found) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (box.contains(lat[mid], lon[mid])) {
+            found.add(ids[mid]);
+        }
+        boolean byLat = splitsLat[mid];
+        double split = key(mid, byLat);
+        if ((byLat ? box.getMinLat() : box.getMinLon()) <= split) {
+            within(lo, mid, box, found);
+        }
+        if ((byLat ? box.getMaxLat() : box.getMaxLon()) >= split) {
+            within(mid + 1, hi, box, found);
+        }
+    }
+
+    /**
+     * Bounded max-heap of the closest points found so far, the farthest of them on top.
+     */
+    private static final class Neighbors {
+
+        private final int[] ids;
+
+        private final double[] distances;
+
+        private int size;
+
+        Neighbors(int capacity) {
+            ids = new int[capacity];
+            distances = new double[capacity];
+        }
+
+        int capacity() {
+            return ids.length;
+        }
+
+        /**
+         * @return The distance a point must beat to get in.
+         */
+        double worst() {
+            return size < ids.length ? Double.POSITIVE_INFINITY : distances[0];
+        }
+
+        void offer(int id, double distance) {
+            if (size < ids.length) {
+                int i = size++;
+                while (i > 0 && distances[(i - 1) >>> 1] < distance) {
+                    int parent = (i - 1) >>> 1;
+                    ids[i] = ids[parent];
+                    distances[i] = distances[parent];
+                    i = parent;
+                }
+                ids[i] = id;
+                distances[i] = distance;
+            } else if (distance < distances[0]) {
+                siftDown(id, distance);
+            }
+        }
+
+        /**
+         * Puts the point at the root and sinks it to its place.
+         */
+        private void siftDown(int id, double distance) {
+            int i = 0;
+            int child;
+            while ((child = 2 * i + 1) < size) {
+                if (child + 1 < size && distances[child + 1] > distances[child]) {
+                    child++;
+                }
+                if (distances[child] <= distance) {
+                    break;
+                }
+                ids[i] = ids[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            ids[i] = id;
+            distances[i] = distance;
+        }
+
+        /**
+         * @return The ids, closest first. Empties the heap.
+         */
+        int[] sorted() {
+            int[] sorted = new int[size];
+            while (size > 0) {
+                sorted[size - 1] = ids[0];
+                size--;
+                siftDown(ids[size], distances[size]);
+            }
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package geography;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Static R-tree over the geometry of road segments, to find the roads crossing a viewport or passing within some km of a point.
+ * <p>
+ * The tree is packed bottom up with Sort-Tile-Recursive (STR): the entries are sorted into vertical slices by the longitude of their center,
+ * each slice by latitude, and every run of <code>NODE_CAPACITY</code> becomes a node, then the same again one level up. Every level is a set
+ * of flat arrays, the bounds of its nodes and the range of their children in the level below, so there is no node object and the tree is
+ * never changed once built.
+ * <p>
+ * The segment tests are exact on the polylines, the whole geometry of a segment and not only its end points: a viewport query checks every
+ * piece of the road against the box, and a radius query measures the distance to the closest piece in a plane projected around the query
+ * point, accurate to well under a meter at the scale of a city.
+ *
+ * @author dayler
+ */
+public final class RoadIndex {
+
+    /**
+     * Children per node.
+     */
+    private static final int NODE_CAPACITY = 16;
+
+    private static final double KM_PER_DEGREE = GeographicPoint.EARTH_RADIUS * Math.PI / 180;
+
+    /**
+     * The segments, in the packed order of the leaf level.
+     */
+    private final RoadSegment[] segments;
+
+    /**
+     * Latitude and longitude of the points of each segment, interleaved.
+     */
+    private final double[][] geometry;
+
+    /**
+     * Bounds of the entries of each level, <code>[level][i]</code>: the segments at level 0, the nodes above.
+     */
+    private final double[][] minLat;
+    private final double[][] minLon;
+    private final double[][] maxLat;
+    private final double[][] maxLon;
+
+    /**
+     * Children of node <code>i</code> of level <code>l > 0</code> are <code>[first[l][i], end[l][i])</code> of level <code>l - 1</code>.
+     */
+    private final int[][] first;
+    private final int[][] end;
+
+    /**
+     * Builds the tree in <code>O(n log n)</code>.
+     *
+     * @param segments
+     */
+    public RoadIndex(Collection<RoadSegment> segments) {
+        Objects.requireNonNull(segments, "segments");
+        int n = segments.size();
+        RoadSegment[] entries = segments.toArray(new RoadSegment[n]);
+        double[][] points = new double[n][];
+        double[][] bounds = new double[4][n];
+        for (int i = 0; i < n; i++) {
+            List<GeographicPoint> polyline = entries[i].getPoints();
+            points[i] = new double[2 * polyline.size()];
+            bounds[0][i] = bounds[1][i] = Double.POSITIVE_INFINITY;
+            bounds[2][i] = bounds[3][i] = Double.NEGATIVE_INFINITY;
+            for (int j = 0; j < polyline.size(); j++) {
+                GeographicPoint point = polyline.get(j);
+                points[i][2 * j] = point.getX();
+                points[i][2 * j + 1] = point.getY();
+                bounds[0][i] = Math.min(bounds[0][i], point.getX());
+                bounds[1][i] = Math.min(bounds[1][i], point.getY());
+                bounds[2][i] = Math.max(bounds[2][i], point.getX());
+                bounds[3][i] = Math.max(bounds[3][i], point.getY());
+            }
+        }
+        int[] order = strOrder(bounds, n);
+        this.segments = new RoadSegment[n];
+        this.geometry = new double[n][];
+        for (int i = 0; i < n; i++) {
+            this.segments[i] = entries[order[i]];
+            this.geometry[i] = points[order[i]];
+        }
+        List<double[][]> levels = new ArrayList<>();
+        List<int[][]> children = new ArrayList<>();
+        levels.add(permute(bounds, order));
+        children.add(null);
+        // one more level while the top one does not fit in a node.
+        while (levels.get(levels.size() - 1)[0].length > NODE_CAPACITY) {
+            double[][] below = levels.get(levels.size() - 1);
+            int count = below[0].length;
+            int parents = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            double[][] parentBounds = new double[4][parents];
+            int[][] ranges = new int[2][parents];
+            for (int p = 0; p < parents; p++) {
+                ranges[0][p] = p * NODE_CAPACITY;
+                ranges[1][p] = Math.min(count, (p + 1) * NODE_CAPACITY);
+                parentBounds[0][p] = parentBounds[1][p] = Double.POSITIVE_INFINITY;
+                parentBounds[2][p] = parentBounds[3][p] = Double.NEGATIVE_INFINITY;
+                for (int c = ranges[0][p]; c < ranges[1][p]; c++) {
+                    parentBounds[0][p] = Math.min(parentBounds[0][p], below[0][c]);
+                    parentBounds[1][p] = Math.min(parentBounds[1][p], below[1][c]);
+                    parentBounds[2][p] = Math.max(parentBounds[2][p], below[2][c]);
+                    parentBounds[3][p] = Math.max(parentBounds[3][p], below[3][c]);
+                }
+            }
+            int[] parentOrder = strOrder(parentBounds, parents);
+            levels.add(permute(parentBounds, parentOrder));
+            children.add(permute(ranges, parentOrder));
+        }
+        int numLevels = levels.size();
+        minLat = new double[numLevels][];
+        minLon = new double[numLevels][];
+        maxLat = new double[numLevels][];
+        maxLon = new double[numLevels][];
+        first = new int[numLevels][];
+        end = new int[numLevels][];
+        for (int l = 0; l < numLevels; l++) {
+            minLat[l] = levels.get(l)[0];
+            minLon[l] = levels.get(l)[1];
+            maxLat[l] = levels.get(l)[2];
+            maxLon[l] = levels.get(l)[3];
+            if (l > 0) {
+                first[l] = children.get(l)[0];
+                end[l] = children.get(l)[1];
+            }
+        }
+    }
+
+    /**
+     * Indexes the roads loaded by <code>GraphLoader</code>, each segment once even though it is listed at both of its ends.
+     *
+     * @param roads The segments by end point.
+     * @return The index of all the segments.
+     */
+    public static RoadIndex of(Map<GeographicPoint, ? extends Collection<RoadSegment>> roads) {
+        Objects.requireNonNull(roads, "roads");
+        LinkedHashSet<RoadSegment> segments = new LinkedHashSet<>();
+        for (Collection<RoadSegment> atPoint : roads.values()) {
+            segments.addAll(atPoint);
+        }
+        return new RoadIndex(segments);
+    }
+
+    /**
+     * Sort-Tile-Recursive order of boxes: slices by center longitude, each one sorted by center latitude.
+     *
+     * @param bounds minLat, minLon, maxLat and maxLon of every box.
+     * @return The index of the boxes in packed order.
+     */
+    private static int[] strOrder(double[][] bounds, int count) {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Comparator<Integer> byLon = Comparator.comparingDouble(i -> bounds[1][i] + bounds[3][i]);
+        Comparator<Integer> byLat = Comparator.comparingDouble(i -> bounds[0][i] + bounds[2][i]);
+        Arrays.sort(order, byLon);
+        int nodes = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int sliceSize = (int) Math.ceil(Math.sqrt(nodes)) * NODE_CAPACITY;
+        for (int from = 0; from < count; from += sliceSize) {
+            Arrays.sort(order, from, Math.min(count, from + sliceSize), byLat);
+        }
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    private static double[][] permute(double[][] columns, int[] order) {
+        double[][] permuted = new double[columns.length][order.length];
+        for (int c = 0; c < columns.length; c++) {
+            for (int i = 0; i < order.length; i++) {
+                permuted[c][i] = columns[c][order[i]];
+            }
+        }
+        return permuted;
+    }
+
+    private static int[][] permute(int[][] columns, int[] order) {
+        int[][] permuted = new int[columns.length][order.length];
+        for (int c = 0; c < columns.length; c++) {
+            for (int i = 0; i < order.length; i++) {
+                permuted[c][i] = columns[c][order[i]];
+            }
+        }
+        return permuted;
+    }
+
+    /**
+     * @return The number of segments.
+     */
+    public int size() {
+        return segments.length;
+    }
+
+    /**
+     * @param box The area, e.g. the viewport of the map.
+     * @return The segments with a piece of road inside <code>box</code> or crossing it, in no particular order.
+     */
+    public List<RoadSegment> intersecting(BoundingBox box) {
+        Objects.requireNonNull(box, "box");
+        List<RoadSegment> found = new ArrayList<>();
+        int top = minLat.length - 1;
+        for (int i = 0; i < minLat[top].length; i++) {
+            intersecting(top, i, box, found);
+        }
+        return found;
+    }
+
+    private void intersecting(int level, int i, BoundingBox box, List<RoadSegment> found) {
+        if (minLat[level][i] > box.getMaxLat() || maxLat[level][i] < box.getMinLat() || minLon[level][i] > box.getMaxLon()
+            || maxLon[level][i] < box.getMinLon()) {
+            return;
+        }
+        if (level == 0) {
+            if (intersects(geometry[i], box)) {
+                found.add(segments[i]);
+            }
+            return;
+        }
+        for (int c = first[level][i]; c < end[level][i]; c++) {
+            intersecting(level - 1, c, box, found);
+        }
+    }
+
+    /**
+     * @param center
+     * @param radius In km.
+     * @return The segments passing within <code>radius</code> of <code>center</code>, closest first, so the first one is where to snap.
+     */
+    public List<RoadSegment> within(GeographicPoint center, double radius) {
+        Objects.requireNonNull(center, "center");
+        if (!(radius >= 0)) {
+            throw new IllegalArgumentException("negative radius: " + radius);
+        }
+        double lonScale = Math.cos(Math.toRadians(center.getX()));
+        List<double[]> found = new ArrayList<>();
+        int top = minLat.length - 1;
+        for (int i = 0; i < minLat[top].length; i++) {
+            within(top, i, center.getX(), center.getY(), lonScale, radius, found);
+        }
+        found.sort(Comparator.comparingDouble(entry -> entry[1]));
+        List<RoadSegment> segments = new ArrayList<>(found.size());
+        for (double[] entry : found) {
+            segments.add(this.segments[(int) entry[0]]);
+        }
+        return segments;
+    }
+
+    private void within(int level, int i, double lat, double lon, double lonScale, double radius, List<double[]> found) {
+        // distance to the box in the plane of the query.
+        double dLat = Math.max(0, Math.max(minLat[level][i] - lat, lat - maxLat[level][i])) * KM_PER_DEGREE;
+        double dLon = Math.max(0, Math.max(minLon[level][i] - lon, lon - maxLon[level][i])) * KM_PER_DEGREE * lonScale;
+        if (dLat * dLat + dLon * dLon > radius * radius) {
+            return;
+        }
+        if (level == 0) {
+            double distance = distance(lat, lon, lonScale, geometry[i]);
+            if (distance <= radius) {
+                found.add(new double[] { i, distance });
+            }
+            return;
+        }
+        for (int c = first[level][i]; c < end[level][i]; c++) {
+            within(level - 1, c, lat, lon, lonScale, radius, found);
+        }
+    }
+
+    /**
+     * @param points Latitude and longitude of the points of a polyline, interleaved.
+     * @return true if a piece of the polyline is inside the box or crosses it.
+     */
+    static boolean intersects(double[] points, BoundingBox box) {
+        for (int j = 0; j + 3 < points.length; j += 2) {
+            if (clips(points[j], points[j + 1], points[j + 2], points[j + 3], box)) {
+                return true;
+            }
+        }
+        // a single point.
+        return points.length == 2 && box.contains(points[0], points[1]);
+    }
+
+    /**
+     * Liang-Barsky clipping of the piece from point 1 to point 2 against the box.
+     *
+     * @return true if some of the piece is in the box.
+     */
+    private static boolean clips(double lat1, double lon1, double lat2, double lon2, BoundingBox box) {
+        double dLat = lat2 - lat1;
+        double dLon = lon2 - lon1;
+        double t0 = 0;
+        double t1 = 1;
+        // every side keeps the t with p * t <= q.
+        for (int side = 0; side < 4; side++) {
+            double p;
+            double q;
+            switch (side) {
+            case 0:
+                p = -dLon;
+                q = lon1 - box.getMinLon();
+                break;
+            case 1:
+                p = dLon;
+                q = box.getMaxLon() - lon1;
+                break;
+            case 2:
+                p = -dLat;
+                q = lat1 - box.getMinLat();
+                break;
+            default:
+                p = dLat;
+                q = box.getMaxLat() - lat1;
+                break;
+            }
+            if (p == 0) {
+                if (q < 0) {
+                    return false;
+                }
+            } else {
+                double r = q / p;
+                if (p < 0) {
+                    if (r > t1) {
+                        return false;
+                    }
+                    t0 = Math.max(t0, r);
+                } else {
+                    if (r < t0) {
+                        return false;
+                    }
+                    t1 = Math.min(t1, r);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param lonScale Cosine of <code>lat</code>.
+     * @param points Latitude and longitude of the points of a polyline, interleaved.
+     * @return The distance in km from the point to the closest piece of the polyline, in the plane projected around the point.
+     */
+    static double distance(double lat, double lon, double lonScale, double[] points) {
+        double best = Double.POSITIVE_INFINITY;
+        double y1 = (points[0] - lat) * KM_PER_DEGREE;
+        double x1 = (points[1] - lon) * KM_PER_DEGREE * lonScale;
+        if (points.length == 2) {
+            return Math.sqrt(x1 * x1 + y1 * y1);
+        }
+        for (int j = 2; j + 1 < points.length; j += 2) {
+            double y2 = (points[j] - lat) * KM_PER_DEGREE;
+            double x2 = (points[j + 1] - lon) * KM_PER_DEGREE * lonScale;
+            double dx = x2 - x1;
+            double dy = y2 - y1;
+            double length2 = dx * dx + dy * dy;
+            // closest point of the piece to the origin.
+            double t = length2 == 0 ? 0 : Math.max(0, Math.min(1, -(x1 * dx + y1 * dy) / length2));
+            double x = x1 + t * dx;
+            double y = y1 + t * dy;
+            best = Math.min(best, Math.sqrt(x * x + y * y));
+            x1 = x2;
+            y1 = y2;
+        }
+        return best;
+    }
+}
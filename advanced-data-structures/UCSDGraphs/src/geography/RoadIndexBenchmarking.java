@@ -0,0 +1,178 @@
+package geography;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+import roadgraph.MapGraph;
+import util.GraphLoader;
+
+/** A class for timing the queries of RoadIndex, an STR-packed R-tree
+ * over the road segments, against a linear scan of every segment with
+ * the same exact tests, in queries per second over the same random
+ * viewports and circles in the area of every map.  Both must find the
+ * same segments.
+ *
+ * @author dayler
+ *
+ */
+public class RoadIndexBenchmarking {
+
+	public static void main(String [] args) {
+
+		// Number of random viewports and circles per map.
+		int queries = 2000;
+
+		// Radius of the circles, in km.
+		double radius = 0.5;
+
+		// Fixed seed so every run times the same queries.
+		long seed = 20171119L;
+
+		File[] maps = new File("data/maps").listFiles((dir, name) -> name.endsWith(".map"));
+		Arrays.sort(maps, (a, b) -> Long.compare(a.length(), b.length()));
+
+		System.out.println("map\tsegments\tbuild ms\tquery\tscan q/s\tr-tree q/s\tspeedup");
+		for (File map : maps) {
+			HashMap<GeographicPoint, HashSet<RoadSegment>> roads = new HashMap<GeographicPoint, HashSet<RoadSegment>>();
+			GraphLoader.loadRoadMap(map.getPath(), new MapGraph(), roads, new HashSet<GeographicPoint>());
+			List<RoadSegment> segments = new ArrayList<RoadSegment>(new LinkedHashSet<RoadSegment>(flatten(roads)));
+			double[][] geometry = geometry(segments);
+
+			long start = System.nanoTime();
+			RoadIndex index = RoadIndex.of(roads);
+			long build = System.nanoTime() - start;
+
+			BoundingBox area = area(geometry);
+			Random random = new Random(seed);
+			GeographicPoint[] points = new GeographicPoint[queries];
+			BoundingBox[] boxes = new BoundingBox[queries];
+			// Viewports a tenth of the size of the area.
+			double halfLat = (area.getMaxLat() - area.getMinLat()) / 20;
+			double halfLon = (area.getMaxLon() - area.getMinLon()) / 20;
+			for (int i = 0; i < queries; i++) {
+				double lat = area.getMinLat() + random.nextDouble() * (area.getMaxLat() - area.getMinLat());
+				double lon = area.getMinLon() + random.nextDouble() * (area.getMaxLon() - area.getMinLon());
+				points[i] = new GeographicPoint(lat, lon);
+				boxes[i] = new BoundingBox(lat - halfLat, lon - halfLon, lat + halfLat, lon + halfLon);
+			}
+
+			// Warm up both ways before timing.
+			for (int i = 0; i < queries; i++) {
+				scanIntersecting(segments, geometry, boxes[i]);
+				index.intersecting(boxes[i]);
+				scanWithin(segments, geometry, points[i], radius);
+				index.within(points[i], radius);
+			}
+
+			start = System.nanoTime();
+			List<List<RoadSegment>> scanned = new ArrayList<List<RoadSegment>>();
+			for (int i = 0; i < queries; i++) {
+				scanned.add(scanIntersecting(segments, geometry, boxes[i]));
+			}
+			long scan = System.nanoTime() - start;
+			start = System.nanoTime();
+			List<List<RoadSegment>> found = new ArrayList<List<RoadSegment>>();
+			for (int i = 0; i < queries; i++) {
+				found.add(index.intersecting(boxes[i]));
+			}
+			long tree = System.nanoTime() - start;
+			for (int i = 0; i < queries; i++) {
+				if (!new HashSet<RoadSegment>(scanned.get(i)).equals(new HashSet<RoadSegment>(found.get(i)))) {
+					throw new IllegalStateException("intersecting differs on " + map + " in " + boxes[i]);
+				}
+			}
+			print(map, segments.size(), build, "intersecting", scan, tree, queries);
+
+			start = System.nanoTime();
+			scanned.clear();
+			for (int i = 0; i < queries; i++) {
+				scanned.add(scanWithin(segments, geometry, points[i], radius));
+			}
+			scan = System.nanoTime() - start;
+			start = System.nanoTime();
+			found.clear();
+			for (int i = 0; i < queries; i++) {
+				found.add(index.within(points[i], radius));
+			}
+			tree = System.nanoTime() - start;
+			for (int i = 0; i < queries; i++) {
+				if (!new HashSet<RoadSegment>(scanned.get(i)).equals(new HashSet<RoadSegment>(found.get(i)))) {
+					throw new IllegalStateException("within differs on " + map + " at " + points[i]);
+				}
+			}
+			print(map, segments.size(), build, "within " + radius + " km", scan, tree, queries);
+		}
+	}
+
+	private static void print(File map, int segments, long build, String query, long scan, long tree, int queries) {
+		System.out.println(map.getPath() + "\t" + segments + "\t" + String.format("%.1f", build / 1000000.0) + "\t" + query
+				+ "\t" + String.format("%.0f", queries * 1e9 / scan) + "\t" + String.format("%.0f", queries * 1e9 / tree)
+				+ "\t" + String.format("%.1fx", (double)scan / tree));
+	}
+
+	private static List<RoadSegment> scanIntersecting(List<RoadSegment> segments, double[][] geometry, BoundingBox box) {
+		List<RoadSegment> found = new ArrayList<RoadSegment>();
+		for (int i = 0; i < geometry.length; i++) {
+			if (RoadIndex.intersects(geometry[i], box)) {
+				found.add(segments.get(i));
+			}
+		}
+		return found;
+	}
+
+	private static List<RoadSegment> scanWithin(List<RoadSegment> segments, double[][] geometry, GeographicPoint point,
+			double radius) {
+		double lonScale = Math.cos(Math.toRadians(point.getX()));
+		List<RoadSegment> found = new ArrayList<RoadSegment>();
+		for (int i = 0; i < geometry.length; i++) {
+			if (RoadIndex.distance(point.getX(), point.getY(), lonScale, geometry[i]) <= radius) {
+				found.add(segments.get(i));
+			}
+		}
+		return found;
+	}
+
+	private static List<RoadSegment> flatten(HashMap<GeographicPoint, HashSet<RoadSegment>> roads) {
+		List<RoadSegment> all = new ArrayList<RoadSegment>();
+		for (HashSet<RoadSegment> atPoint : roads.values()) {
+			all.addAll(atPoint);
+		}
+		return all;
+	}
+
+	// Latitude and longitude of the points of each segment, interleaved, as RoadIndex keeps them.
+	private static double[][] geometry(List<RoadSegment> segments) {
+		double[][] geometry = new double[segments.size()][];
+		for (int i = 0; i < geometry.length; i++) {
+			List<GeographicPoint> points = segments.get(i).getPoints();
+			geometry[i] = new double[2 * points.size()];
+			for (int j = 0; j < points.size(); j++) {
+				geometry[i][2 * j] = points.get(j).getX();
+				geometry[i][2 * j + 1] = points.get(j).getY();
+			}
+		}
+		return geometry;
+	}
+
+	private static BoundingBox area(double[][] geometry) {
+		double minLat = Double.POSITIVE_INFINITY;
+		double minLon = Double.POSITIVE_INFINITY;
+		double maxLat = Double.NEGATIVE_INFINITY;
+		double maxLon = Double.NEGATIVE_INFINITY;
+		for (double[] points : geometry) {
+			for (int j = 0; j < points.length; j += 2) {
+				minLat = Math.min(minLat, points[j]);
+				maxLat = Math.max(maxLat, points[j]);
+				minLon = Math.min(minLon, points[j + 1]);
+				maxLon = Math.max(maxLon, points[j + 1]);
+			}
+		}
+		return new BoundingBox(minLat, minLon, maxLat, maxLon);
+	}
+}
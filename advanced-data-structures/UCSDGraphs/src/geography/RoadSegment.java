@@ -66,6 +66,15 @@ public class RoadSegment {
 		return allPoints;
 	}
 	
+	/** Return all of the points of this segment, from its first end point
+	 * to its second, in that order.
+	 * @return The points of the road
+	 */
+	public List<GeographicPoint> getPoints()
+	{
+		return getPoints(point1, point2);
+	}
+	
 	/** Two road segments are equal if they have the same start and end points
 	 *  and they have the same road name.
 	 */
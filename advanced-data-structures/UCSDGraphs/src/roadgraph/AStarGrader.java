@@ -64,12 +64,24 @@ public class AStarGrader implements Runnable {
      * @param end The point to end at
      */
     public void runTest(int i, String file, String desc, GeographicPoint start, GeographicPoint end) {
+        runTest(i, file, file + ".answer", desc, start, end);
+    }
+
+    /** Run a test case against an answer of its own.
+     * @param i The graph number
+     * @param file The file to read from
+     * @param answer The file of the right answer
+     * @param desc A description of the graph
+     * @param start The point to start from
+     * @param end The point to end at
+     */
+    public void runTest(int i, String file, String answer, String desc, GeographicPoint start, GeographicPoint end) {
         MapGraph graph = new MapGraph();
 
         feedback += "\n\n" + desc;
 
         GraphLoader.loadRoadMap("data/graders/mod3/" + file, graph);
-        CorrectAnswer corr = new CorrectAnswer("data/graders/mod3/" + file + ".answer", false);
+        CorrectAnswer corr = new CorrectAnswer("data/graders/mod3/" + answer, false);
 
         judge(i, graph, corr, start, end);
     }
@@ -127,7 +139,8 @@ public class AStarGrader implements Runnable {
 
             runTest(3, "map3.txt", "MAP: Right triangle (with a little detour)", new GeographicPoint(0, 0), new GeographicPoint(0, 4));
 
-            runTest(4, "ucsd.map", "UCSD MAP: Intersections around UCSD", new GeographicPoint(32.8709815, -117.2434254), new GeographicPoint(32.8742087, -117.2381344));
+            // the roads cost their travel time, the quickest route is not the shortest one of ucsd.map.answer.
+            runTest(4, "ucsd.map", "ucsd.map.duration.answer", "UCSD MAP: Intersections around UCSD", new GeographicPoint(32.8709815, -117.2434254), new GeographicPoint(32.8742087, -117.2381344));
 
             if (correct == TESTS)
                 feedback = "All tests passed. Great job!" + feedback;
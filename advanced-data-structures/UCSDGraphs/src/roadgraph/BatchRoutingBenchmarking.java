@@ -0,0 +1,93 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import util.GraphLoader;
+
+/** A class for timing MapGraph.routeAll from one thread up to all the
+ * cores: the same batch of random requests on a fork-join pool of every
+ * size, with the throughput, its speedup over one thread and the
+ * latency percentiles of the requests.  Every run must find routes of
+ * the same cost as the sequential one.
+ *
+ * @author dayler
+ *
+ */
+public class BatchRoutingBenchmarking {
+
+	public static void main(String [] args) {
+
+		// Number of requests of the batch.
+		int batchSize = 5000;
+
+		// Fixed seed so every run routes the same batch.
+		long seed = 20171119L;
+
+		String map = "data/maps/san_diego.map";
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		List<Integer> sizes = new ArrayList<Integer>();
+		for (int threads = 1; threads < cores; threads *= 2) {
+			sizes.add(threads);
+		}
+		sizes.add(cores);
+
+		MapGraph graph = new MapGraph();
+		GraphLoader.loadRoadMap(map, graph);
+		CompactGraph frozen = graph.freeze();
+		Random random = new Random(seed);
+		List<RouteRequest> batch = new ArrayList<RouteRequest>();
+		for (int i = 0; i < batchSize; i++) {
+			batch.add(RouteRequest.of(frozen.point(random.nextInt(frozen.numVertices())),
+					frozen.point(random.nextInt(frozen.numVertices()))));
+		}
+
+		double[] expected = new double[batchSize];
+		for (int i = 0; i < batchSize; i++) {
+			Route route = graph.route(batch.get(i).getStart(), batch.get(i).getGoal());
+			expected[i] = route == null ? Double.POSITIVE_INFINITY : route.getCost();
+		}
+
+		System.out.println(map + ", " + batchSize + " requests, " + cores + " cores");
+		System.out.println("threads\trequests/s\tspeedup\tp50 us\tp99 us");
+		double single = 0;
+		for (int threads : sizes) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				// Warm up before timing.
+				graph.routeAll(batch, pool);
+
+				long start = System.nanoTime();
+				List<RouteResult> results = graph.routeAll(batch, pool);
+				long elapsed = System.nanoTime() - start;
+
+				long[] latencies = new long[batchSize];
+				for (int i = 0; i < batchSize; i++) {
+					RouteResult result = results.get(i);
+					if (result.getError() != null) {
+						throw new IllegalStateException("request " + i + " failed", result.getError());
+					}
+					double cost = result.getRoute() == null ? Double.POSITIVE_INFINITY : result.getRoute().getCost();
+					if (cost != expected[i]) {
+						throw new IllegalStateException("route " + i + " differs with " + threads + " threads: " + cost + " != " + expected[i]);
+					}
+					latencies[i] = result.getLatencyNanos();
+				}
+				Arrays.sort(latencies);
+				double throughput = batchSize * 1e9 / elapsed;
+				if (threads == 1) {
+					single = throughput;
+				}
+				System.out.println(threads + "\t" + String.format("%.0f", throughput) + "\t" + String.format("%.2fx", throughput / single)
+						+ "\t" + String.format("%.1f", latencies[batchSize / 2] / 1000.0)
+						+ "\t" + String.format("%.1f", latencies[batchSize * 99 / 100] / 1000.0));
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+}
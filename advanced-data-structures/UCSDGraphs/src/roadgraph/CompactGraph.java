@@ -0,0 +1,724 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import geography.BoundingBox;
+import geography.DistanceKernel;
+import geography.GeographicPoint;
+import geography.KdTree;
+
+/**
+ * Immutable, frozen form of a <code>MapGraph</code> stored in compressed sparse row (CSR) layout.
+ * <p>
+ * Vertices are dense int ids in <code>[0, numVertices())</code>. The outgoing edges of vertex <code>v</code> are the edge ids
+ * <code>[firstEdge(v), endEdge(v))</code>, and every edge attribute lives in a primitive array indexed by edge id, so a neighbor scan walks
+ * contiguous memory and no object is held per edge.
+ * <p>
+ * The edge costs live in a paged <code>CostTable</code> per profile. <code>withCosts</code> makes a new version of the graph with some costs
+ * changed that shares everything else with this one, which is how <code>MapGraph</code> closes roads and changes speeds under running
+ * queries: a query keeps the version it started on.
+ * <p>
+ * The graph can be saved to a versioned binary file with <code>save</code> and opened again with <code>load</code>, which maps the file and
+ * bulk copies the arrays, skipping the parsing of the text map files and the intersection detection.
+ *
+ * @author dayler
+ */
+public final class CompactGraph {
+
+    /**
+     * "RGBF", first bytes of the binary graph files.
+     */
+    private static final int FILE_MAGIC = 0x52474246;
+
+    /**
+     * Layout version of the binary graph files, bump it on any change of <code>save</code>.
+     */
+    private static final int FILE_VERSION = 1;
+
+    /**
+     * Latitude of each vertex.
+     */
+    private final double[] lat;
+
+    /**
+     * Longitude of each vertex.
+     */
+    private final double[] lon;
+
+    /**
+     * Edges of vertex <code>v</code> are <code>[offsets[v], offsets[v + 1])</code>.
+     */
+    private final int[] offsets;
+
+    /**
+     * Target vertex of each edge.
+     */
+    private final int[] targets;
+
+    /**
+     * Length of each edge in km.
+     */
+    private final double[] lengths;
+
+    /**
+     * Cost of each edge under every profile, <code>costs[profile.ordinal()].get(e)</code>.
+     */
+    private final CostTable[] costs;
+
+    /**
+     * Intermediate points of edge <code>e</code> are <code>[geometryOffsets[e], geometryOffsets[e + 1])</code>.
+     */
+    private final int[] geometryOffsets;
+
+    /**
+     * Latitude of each intermediate point.
+     */
+    private final double[] geometryLat;
+
+    /**
+     * Longitude of each intermediate point.
+     */
+    private final double[] geometryLon;
+
+    /**
+     * Index in <code>names</code> of the road name of each edge.
+     */
+    private final int[] nameIds;
+
+    /**
+     * Index in <code>types</code> of the road type of each edge.
+     */
+    private final int[] typeIds;
+
+    /**
+     * Interned road names.
+     */
+    private final String[] names;
+
+    /**
+     * Interned road types.
+     */
+    private final String[] types;
+
+    /**
+     * Incoming edges of vertex <code>v</code> are the reverse edge ids <code>[reverseOffsets[v], reverseOffsets[v + 1])</code>.
+     */
+    private final int[] reverseOffsets;
+
+    /**
+     * Source vertex of each reverse edge.
+     */
+    private final int[] reverseSources;
+
+    /**
+     * Forward edge id of each reverse edge, to read its attributes.
+     */
+    private final int[] reverseEdges;
+
+    /**
+     * Point to vertex id.
+     */
+    private final Map<GeographicPoint, Integer> index;
+
+    /**
+     * Vertex ids by location, for the nearest vertex queries.
+     */
+    private final KdTree spatialIndex;
+
+    /**
+     * Equirectangular distance made for the area of the vertices.
+     */
+    private final DistanceKernel equirectangular;
+
+    /**
+     * Search state reused by the queries of each thread, shared by all the versions of the graph.
+     */
+    private final ThreadLocal<SearchContext> contexts;
+
+    /**
+     * Version of the costs, see <code>withCosts</code>.
+     */
+    private final long version;
+
+    /**
+     * Version of the last <code>withCosts</code> that lowered any cost, 0 if none did.
+     */
+    private final long decreaseVersion;
+
+    CompactGraph(double[] lat, double[] lon, int[] offsets, int[] targets, double[] lengths, int[] nameIds, int[] typeIds, String[] names,
+                 String[] types, int[] geometryOffsets, double[] geometryLat, double[] geometryLon) {
+        this(lat, lon, offsets, targets, lengths, nameIds, typeIds, names, types, geometryOffsets, geometryLat, geometryLon, false);
+    }
+
+    /**
+     * @param forwardOnly Skips the reverse adjacency, the point and spatial indexes and the equirectangular kernel, see
+     * <code>loadForwardOnly</code>.
+     */
+    private CompactGraph(double[] lat, double[] lon, int[] offsets, int[] targets, double[] lengths, int[] nameIds, int[] typeIds,
+                         String[] names, String[] types, int[] geometryOffsets, double[] geometryLat, double[] geometryLon,
+                         boolean forwardOnly) {
+        this.lat = lat;
+        this.lon = lon;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.lengths = lengths;
+        this.nameIds = nameIds;
+        this.typeIds = typeIds;
+        this.names = names;
+        this.types = types;
+        this.geometryOffsets = geometryOffsets;
+        this.geometryLat = geometryLat;
+        this.geometryLon = geometryLon;
+        // every profile is materialized here, one builder per road type, so no search calls a WeightBuilder.
+        costs = new CostTable[CostProfile.values().length];
+        for (CostProfile profile : CostProfile.values()) {
+            WeightBuilder[] builders = new WeightBuilder[types.length];
+            for (int type = 0; type < types.length; type++) {
+                builders[type] = profile.builder(types[type]);
+            }
+            double[] cost = new double[targets.length];
+            for (int e = 0; e < targets.length; e++) {
+                cost[e] = builders[typeIds[e]].getValue(lengths[e]);
+            }
+            costs[profile.ordinal()] = new CostTable(cost);
+        }
+        contexts = ThreadLocal.withInitial(() -> new SearchContext(lat.length));
+        version = 0L;
+        decreaseVersion = 0L;
+        if (forwardOnly) {
+            reverseOffsets = null;
+            reverseSources = null;
+            reverseEdges = null;
+            index = null;
+            spatialIndex = null;
+            equirectangular = DistanceKernel.HAVERSINE;
+            return;
+        }
+        // reverse adjacency, counting sort of the edges by target.
+        int numVertices = lat.length;
+        reverseOffsets = new int[numVertices + 1];
+        for (int target : targets) {
+            reverseOffsets[target + 1]++;
+        }
+        for (int v = 0; v < numVertices; v++) {
+            reverseOffsets[v + 1] += reverseOffsets[v];
+        }
+        reverseSources = new int[targets.length];
+        reverseEdges = new int[targets.length];
+        int[] next = Arrays.copyOf(reverseOffsets, numVertices);
+        for (int v = 0; v < numVertices; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int r = next[targets[e]]++;
+                reverseSources[r] = v;
+                reverseEdges[r] = e;
+            }
+        }
+        this.index = new HashMap<>(lat.length * 4 / 3 + 1);
+        for (int v = 0; v < lat.length; v++) {
+            index.put(new GeographicPoint(lat[v], lon[v]), v);
+        }
+        spatialIndex = new KdTree(lat, lon);
+        equirectangular = equirectangular(lat, lon);
+    }
+
+    /**
+     * New version of <code>graph</code> with other costs, every other array is shared.
+     */
+    private CompactGraph(CompactGraph graph, CostTable[] costs, long version, long decreaseVersion) {
+        lat = graph.lat;
+        lon = graph.lon;
+        offsets = graph.offsets;
+        targets = graph.targets;
+        lengths = graph.lengths;
+        nameIds = graph.nameIds;
+        typeIds = graph.typeIds;
+        names = graph.names;
+        types = graph.types;
+        geometryOffsets = graph.geometryOffsets;
+        geometryLat = graph.geometryLat;
+        geometryLon = graph.geometryLon;
+        reverseOffsets = graph.reverseOffsets;
+        reverseSources = graph.reverseSources;
+        reverseEdges = graph.reverseEdges;
+        index = graph.index;
+        spatialIndex = graph.spatialIndex;
+        equirectangular = graph.equirectangular;
+        contexts = graph.contexts;
+        this.costs = costs;
+        this.version = version;
+        this.decreaseVersion = decreaseVersion;
+    }
+
+    /**
+     * @return An equirectangular kernel for the box of the vertices, haversine if there is none.
+     */
+    private static DistanceKernel equirectangular(double[] lat, double[] lon) {
+        if (lat.length == 0) {
+            return DistanceKernel.HAVERSINE;
+        }
+        double minLat = Double.POSITIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < lat.length; v++) {
+            minLat = Math.min(minLat, lat[v]);
+            minLon = Math.min(minLon, lon[v]);
+            maxLat = Math.max(maxLat, lat[v]);
+            maxLon = Math.max(maxLon, lon[v]);
+        }
+        return DistanceKernel.equirectangular(new BoundingBox(minLat, minLon, maxLat, maxLon));
+    }
+
+    /**
+     * Makes a new version of the graph with the costs of some edges replaced, e.g. <code>Double.POSITIVE_INFINITY</code> for a closed road.
+     * Only the pages of the changed edges are copied, this graph is not changed.
+     *
+     * @param edges Edge ids.
+     * @param costs New cost of the edges under every profile, <code>costs[profile.ordinal()][i]</code> for <code>edges[i]</code>.
+     * @param version Version of the new graph.
+     * @return The new version.
+     */
+    CompactGraph withCosts(int[] edges, double[][] costs, long version) {
+        CostTable[] tables = new CostTable[this.costs.length];
+        boolean decrease = false;
+        for (int p = 0; p < tables.length; p++) {
+            tables[p] = edges.length == 0 ? this.costs[p] : this.costs[p].with(edges, costs[p]);
+            for (int i = 0; i < edges.length; i++) {
+                decrease |= costs[p][i] < this.costs[p].get(edges[i]);
+            }
+        }
+        return new CompactGraph(this, tables, version, decrease ? version : decreaseVersion);
+    }
+
+    /**
+     * @param other
+     * @return true if <code>other</code> is a version of this graph, with the same vertex and edge ids.
+     */
+    boolean sameVertices(CompactGraph other) {
+        return lat == other.lat && offsets == other.offsets;
+    }
+
+    /**
+     * @return The version of the costs of the graph, 0 for a graph fresh from a <code>MapGraph</code> or a file, higher for every later
+     * version made by <code>withCosts</code>.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return The version of the last <code>withCosts</code> that lowered any cost, e.g. a reopened road or a faster speed, 0 if none did.
+     * The bounds precomputed on an earlier version, like <code>Landmarks</code>, may overestimate from there on.
+     */
+    long decreaseVersion() {
+        return decreaseVersion;
+    }
+
+    /**
+     * @return The number of vertices.
+     */
+    public int numVertices() {
+        return lat.length;
+    }
+
+    /**
+     * @return The number of directed edges.
+     */
+    public int numEdges() {
+        return targets.length;
+    }
+
+    /**
+     * @param point
+     * @return The id of the vertex at <code>point</code>, or -1 if the point is not a vertex of the graph.
+     */
+    public int idOf(GeographicPoint point) {
+        Objects.requireNonNull(point, "point");
+        Integer id = index.get(point);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return The points of the vertices.
+     */
+    Set<GeographicPoint> points() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * @return The k-d tree of the vertices, its ids are the vertex ids.
+     */
+    public KdTree spatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * @return A distance that never exceeds the great-circle distance between two vertices of this graph, and is much cheaper.
+     */
+    public DistanceKernel equirectangular() {
+        return equirectangular;
+    }
+
+    /**
+     * @param v Vertex id.
+     * @return A new <code>GeographicPoint</code> for the vertex.
+     */
+    public GeographicPoint point(int v) {
+        return new GeographicPoint(lat[v], lon[v]);
+    }
+
+    public double lat(int v) {
+        return lat[v];
+    }
+
+    public double lon(int v) {
+        return lon[v];
+    }
+
+    /**
+     * @param v Vertex id.
+     * @return The first outgoing edge id of <code>v</code>.
+     */
+    public int firstEdge(int v) {
+        return offsets[v];
+    }
+
+    /**
+     * @param v Vertex id.
+     * @return One past the last outgoing edge id of <code>v</code>.
+     */
+    public int endEdge(int v) {
+        return offsets[v + 1];
+    }
+
+    /**
+     * @param v Vertex id.
+     * @return The first incoming (reverse) edge id of <code>v</code>.
+     */
+    public int firstReverseEdge(int v) {
+        return reverseOffsets[v];
+    }
+
+    /**
+     * @param v Vertex id.
+     * @return One past the last incoming (reverse) edge id of <code>v</code>.
+     */
+    public int endReverseEdge(int v) {
+        return reverseOffsets[v + 1];
+    }
+
+    /**
+     * @param r Reverse edge id.
+     * @return The vertex the edge comes from.
+     */
+    public int reverseSource(int r) {
+        return reverseSources[r];
+    }
+
+    /**
+     * @param r Reverse edge id.
+     * @return The forward edge id, for <code>weight</code>, <code>length</code>, etc.
+     */
+    public int reverseEdge(int r) {
+        return reverseEdges[r];
+    }
+
+    public int target(int e) {
+        return targets[e];
+    }
+
+    /**
+     * @param e Edge id.
+     * @return The cost of the edge under the default profile, <code>CostProfile.DURATION</code>.
+     */
+    public double weight(int e) {
+        return cost(CostProfile.DURATION, e);
+    }
+
+    /**
+     * @param e Edge id.
+     * @return The length of the edge in km.
+     */
+    public double length(int e) {
+        return lengths[e];
+    }
+
+    /**
+     * @param profile
+     * @param e Edge id.
+     * @return The cost of the edge under <code>profile</code>.
+     */
+    public double cost(CostProfile profile, int e) {
+        return costs[profile.ordinal()].get(e);
+    }
+
+    /**
+     * @param profile
+     * @return The costs of all the edges under <code>profile</code>, by edge id, for the inner loops of the searches.
+     */
+    CostTable costs(CostProfile profile) {
+        return costs[profile.ordinal()];
+    }
+
+    /**
+     * @param profile
+     * @param e Edge id.
+     * @return The cost of the edge under <code>profile</code> from its length and road type, whatever <code>withCosts</code> changed.
+     */
+    double baseCost(CostProfile profile, int e) {
+        return profile.builder(types[typeIds[e]]).getValue(lengths[e]);
+    }
+
+    public String roadName(int e) {
+        return names[nameIds[e]];
+    }
+
+    public String roadType(int e) {
+        return types[typeIds[e]];
+    }
+
+    /**
+     * @param e Edge id.
+     * @return The id of the first intermediate point of the road geometry of the edge.
+     */
+    public int firstGeometryPoint(int e) {
+        return geometryOffsets[e];
+    }
+
+    /**
+     * @param e Edge id.
+     * @return One past the id of the last intermediate point of the edge.
+     */
+    public int endGeometryPoint(int e) {
+        return geometryOffsets[e + 1];
+    }
+
+    /**
+     * @param i Intermediate point id.
+     */
+    public double geometryLat(int i) {
+        return geometryLat[i];
+    }
+
+    /**
+     * @param i Intermediate point id.
+     */
+    public double geometryLon(int i) {
+        return geometryLon[i];
+    }
+
+    /**
+     * @param e Edge id.
+     * @return The points the road of the edge goes through between its two vertices, in order.
+     */
+    public List<GeographicPoint> geometry(int e) {
+        List<GeographicPoint> points = new ArrayList<>(geometryOffsets[e + 1] - geometryOffsets[e]);
+        for (int i = geometryOffsets[e]; i < geometryOffsets[e + 1]; i++) {
+            points.add(new GeographicPoint(geometryLat[i], geometryLon[i]));
+        }
+        return points;
+    }
+
+    /**
+     * Writes the graph to a binary file, see <code>load</code>. The costs are not written, they are materialized again from the lengths and
+     * road types on load, so the costs changed by <code>withCosts</code> are lost.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void save(Path file) throws IOException {
+        Objects.requireNonNull(file, "file");
+        byte[][] nameBytes = encode(names);
+        byte[][] typeBytes = encode(types);
+        int numVertices = lat.length;
+        int numEdges = targets.length;
+        int numPoints = geometryLat.length;
+        long size = 7L * Integer.BYTES
+                    + 2L * numVertices * Double.BYTES + (numVertices + 1L) * Integer.BYTES
+                    + numEdges * (3L * Integer.BYTES + Double.BYTES) + (numEdges + 1L) * Integer.BYTES
+                    + 2L * numPoints * Double.BYTES
+                    + size(nameBytes) + size(typeBytes);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The graph is too large for a single mapped file: " + size + " bytes.");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(FILE_MAGIC).putInt(FILE_VERSION);
+            buffer.putInt(numVertices).putInt(numEdges).putInt(numPoints).putInt(names.length).putInt(types.length);
+            put(buffer, lat);
+            put(buffer, lon);
+            put(buffer, offsets);
+            put(buffer, targets);
+            put(buffer, lengths);
+            put(buffer, nameIds);
+            put(buffer, typeIds);
+            put(buffer, geometryOffsets);
+            put(buffer, geometryLat);
+            put(buffer, geometryLon);
+            put(buffer, nameBytes);
+            put(buffer, typeBytes);
+            buffer.force();
+        }
+    }
+
+    /**
+     * Opens a graph written by <code>save</code>. The file is memory mapped and every array is a bulk copy out of the mapping, nothing is
+     * parsed.
+     *
+     * @param file
+     * @return The graph in the file.
+     * @throws IOException If the file is not a graph file of this version.
+     */
+    public static CompactGraph load(Path file) throws IOException {
+        return load(file, false);
+    }
+
+    /**
+     * Opens a graph written by <code>save</code> for forward searches only, e.g. a tile of a <code>TiledGraph</code> read again after it
+     * was evicted. The reverse adjacency and the point and spatial indexes are not built, so the reverse edge accessors, <code>idOf</code>
+     * and <code>spatialIndex</code> must not be used on it, and <code>equirectangular</code> is the haversine distance.
+     *
+     * @param file
+     * @return The graph in the file.
+     * @throws IOException If the file is not a graph file of this version.
+     */
+    static CompactGraph loadForwardOnly(Path file) throws IOException {
+        return load(file, true);
+    }
+
+    private static CompactGraph load(Path file, boolean forwardOnly) throws IOException {
+        Objects.requireNonNull(file, "file");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a graph file: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < 2 * Integer.BYTES || buffer.getInt() != FILE_MAGIC) {
+                throw new IOException("Not a graph file: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("Unsupported graph file version " + version + ": " + file);
+            }
+            int numVertices = buffer.getInt();
+            int numEdges = buffer.getInt();
+            int numPoints = buffer.getInt();
+            int numNames = buffer.getInt();
+            int numTypes = buffer.getInt();
+            double[] lat = getDoubles(buffer, numVertices);
+            double[] lon = getDoubles(buffer, numVertices);
+            int[] offsets = getInts(buffer, numVertices + 1);
+            int[] targets = getInts(buffer, numEdges);
+            double[] lengths = getDoubles(buffer, numEdges);
+            int[] nameIds = getInts(buffer, numEdges);
+            int[] typeIds = getInts(buffer, numEdges);
+            int[] geometryOffsets = getInts(buffer, numEdges + 1);
+            double[] geometryLat = getDoubles(buffer, numPoints);
+            double[] geometryLon = getDoubles(buffer, numPoints);
+            String[] names = getStrings(buffer, numNames);
+            String[] types = getStrings(buffer, numTypes);
+            return new CompactGraph(lat, lon, offsets, targets, lengths, nameIds, typeIds, names, types, geometryOffsets, geometryLat,
+                                    geometryLon, forwardOnly);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, NegativeArraySizeException, etc. of a truncated or corrupted file.
+            throw new IOException("Corrupted graph file: " + file, e);
+        }
+    }
+
+    private static byte[][] encode(String[] strings) {
+        byte[][] bytes = new byte[strings.length][];
+        for (int i = 0; i < strings.length; i++) {
+            bytes[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    private static long size(byte[][] strings) {
+        long size = 0;
+        for (byte[] string : strings) {
+            size += Integer.BYTES + string.length;
+        }
+        return size;
+    }
+
+    private static void put(ByteBuffer buffer, double[] values) {
+        buffer.asDoubleBuffer().put(values);
+        buffer.position(buffer.position() + values.length * Double.BYTES);
+    }
+
+    private static void put(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + values.length * Integer.BYTES);
+    }
+
+    private static void put(ByteBuffer buffer, byte[][] strings) {
+        for (byte[] string : strings) {
+            buffer.putInt(string.length).put(string);
+        }
+    }
+
+    private static double[] getDoubles(ByteBuffer buffer, int length) {
+        double[] values = new double[length];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + length * Double.BYTES);
+        return values;
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int length) {
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + length * Integer.BYTES);
+        return values;
+    }
+
+    private static String[] getStrings(ByteBuffer buffer, int length) {
+        String[] strings = new String[length];
+        for (int i = 0; i < length; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    /**
+     * Borrows the search state of the calling thread, reset for a new query. Must be given back with <code>release</code>.
+     *
+     * @return A context no other query is using.
+     */
+    SearchContext acquire() {
+        SearchContext context = contexts.get();
+        if (context.inUse) {
+            // nested query from a nodeSearched hook, do not clobber the outer one.
+            context = new SearchContext(numVertices());
+        }
+        context.inUse = true;
+        context.reset();
+        return context;
+    }
+
+    void release(SearchContext context) {
+        context.inUse = false;
+    }
+}
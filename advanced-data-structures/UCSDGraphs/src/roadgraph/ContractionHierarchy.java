@@ -0,0 +1,463 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import geography.GeographicPoint;
+
+/**
+ * Contraction hierarchy of a <code>MapGraph</code>, answers the same shortest path queries as <code>MapGraph.dijkstra</code> by running a
+ * bidirectional Dijkstra that only climbs to higher ranked vertices, so a query settles a few hundred nodes at most.
+ * <p>
+ * Every arc is either an original edge or a shortcut made of two child arcs, and the routes are unpacked back to the original
+ * intersections. The hierarchy does not reference the graph it was built from, it can be saved once with <code>save</code> and loaded on the
+ * next startup with <code>load</code>.
+ *
+ * @author dayler
+ */
+public final class ContractionHierarchy implements Serializable {
+
+    private static final long serialVersionUID = 20180124L;
+
+    private final double[] lat;
+
+    private final double[] lon;
+
+    private final int[] arcFrom;
+
+    private final int[] arcTo;
+
+    private final double[] arcWeight;
+
+    /**
+     * First and second half of each shortcut, -1 for the original edges.
+     */
+    private final int[] arcChild1;
+
+    private final int[] arcChild2;
+
+    /**
+     * Arcs leaving <code>v</code> to a higher ranked vertex are <code>upArcs[upOffsets[v] .. upOffsets[v + 1])</code>.
+     */
+    private final int[] upOffsets;
+
+    private final int[] upArcs;
+
+    /**
+     * Arcs entering <code>v</code> from a higher ranked vertex are <code>downArcs[downOffsets[v] .. downOffsets[v + 1])</code>.
+     */
+    private final int[] downOffsets;
+
+    private final int[] downArcs;
+
+    private transient volatile Map<GeographicPoint, Integer> index;
+
+    private transient volatile ThreadLocal<SearchContext> contexts;
+
+    private transient volatile SearchMetrics metrics = SearchMetrics.global();
+
+    ContractionHierarchy(double[] lat, double[] lon, int[] arcFrom, int[] arcTo, double[] arcWeight, int[] arcChild1,
+                         int[] arcChild2, int[] upOffsets, int[] upArcs, int[] downOffsets, int[] downArcs) {
+        this.lat = lat;
+        this.lon = lon;
+        this.arcFrom = arcFrom;
+        this.arcTo = arcTo;
+        this.arcWeight = arcWeight;
+        this.arcChild1 = arcChild1;
+        this.arcChild2 = arcChild2;
+        this.upOffsets = upOffsets;
+        this.upArcs = upArcs;
+        this.downOffsets = downOffsets;
+        this.downArcs = downArcs;
+    }
+
+    /**
+     * Preprocesses the graph, it takes a while on large maps, see <code>save</code>.
+     *
+     * @param graph
+     * @param profile Cost the queries minimize.
+     * @return The hierarchy of <code>graph</code>.
+     */
+    public static ContractionHierarchy of(CompactGraph graph, CostProfile profile) {
+        Objects.requireNonNull(graph, "graph");
+        Objects.requireNonNull(profile, "profile");
+        return new ContractionHierarchyBuilder(graph, profile).build();
+    }
+
+    /**
+     * @return The number of vertices.
+     */
+    public int numVertices() {
+        return lat.length;
+    }
+
+    /**
+     * @return The number of arcs, original edges plus shortcuts.
+     */
+    public int numArcs() {
+        return arcFrom.length;
+    }
+
+    public SearchMetrics getSearchMetrics() {
+        return metrics;
+    }
+
+    public void setSearchMetrics(SearchMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+    }
+
+    /**
+     * Find the path from start to goal, the same one <code>MapGraph.dijkstra</code> finds for the profile of the hierarchy.
+     *
+     * @param start The starting location
+     * @param goal The goal location
+     * @return The list of intersections that form the shortest path from start to goal (including both start and goal), or <code>null</code> if
+     * there is no such path.
+     */
+    public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal) {
+        Optional.ofNullable(start).orElseThrow(() -> new IllegalArgumentException("nul start."));
+        Optional.ofNullable(goal).orElseThrow(() -> new IllegalArgumentException("nul goal."));
+        if (start.equals(goal)) {
+            return Collections.emptyList();
+        }
+        int source = idOf(start);
+        int target = idOf(goal);
+        if (source < 0 || target < 0) {
+            return null;
+        }
+        // arcs from start to the meeting vertex, then from it to the goal.
+        List<Integer> arcs = new ArrayList<>();
+        SearchContext forward = acquire();
+        try {
+            SearchContext backward = forward.backward();
+            int meeting = search(forward, backward, source, target);
+            if (meeting < 0) {
+                return null;
+            }
+            for (int v = meeting; v != source; v = arcFrom[forward.parent(v)]) {
+                arcs.add(forward.parent(v));
+            }
+            Collections.reverse(arcs);
+            for (int v = meeting; v != target; v = arcTo[backward.parent(v)]) {
+                arcs.add(backward.parent(v));
+            }
+        } finally {
+            release(forward);
+        }
+        List<GeographicPoint> path = new ArrayList<>();
+        path.add(point(source));
+        for (int arc : arcs) {
+            unpack(arc, path);
+        }
+        return path;
+    }
+
+    /**
+     * @param start
+     * @param goal
+     * @return The cost of the shortest path from start to goal, infinity if there is no such path or a point is not in the graph, where
+     * <code>dijkstra</code> returns <code>null</code>.
+     */
+    public double distance(GeographicPoint start, GeographicPoint goal) {
+        int source = idOf(Objects.requireNonNull(start, "start"));
+        int target = idOf(Objects.requireNonNull(goal, "goal"));
+        if (source < 0 || target < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        SearchContext forward = acquire();
+        try {
+            SearchContext backward = forward.backward();
+            int meeting = search(forward, backward, source, target);
+            return meeting < 0 ? Double.POSITIVE_INFINITY : forward.distance(meeting) + backward.distance(meeting);
+        } finally {
+            release(forward);
+        }
+    }
+
+    /**
+     * Cost of the shortest path from every source to every target, the same as <code>MapGraph.distanceMatrix</code>. Bucket based
+     * many-to-many: an upward search backward from every target leaves its distance in a bucket at each vertex it settles, then an upward
+     * search forward from every source, in parallel, only has to scan the buckets of the vertices it settles.
+     *
+     * @param sources
+     * @param targets
+     * @return <code>matrix[i][j]</code> is the cost from <code>sources.get(i)</code> to <code>targets.get(j)</code>, infinity if there is
+     * no path.
+     */
+    public double[][] distanceMatrix(List<GeographicPoint> sources, List<GeographicPoint> targets) {
+        Optional.ofNullable(sources).orElseThrow(() -> new IllegalArgumentException("nul sources."));
+        Optional.ofNullable(targets).orElseThrow(() -> new IllegalArgumentException("nul targets."));
+        int[] sourceIds = ids(sources);
+        int[] targetIds = ids(targets);
+        // bucket entries, (vertex, target, distance) in the order the backward searches settle them.
+        int size = 0;
+        int[] entryVertex = new int[Math.max(16, targetIds.length * 64)];
+        int[] entryTarget = new int[entryVertex.length];
+        double[] entryDistance = new double[entryVertex.length];
+        for (int j = 0; j < targetIds.length; j++) {
+            SearchContext backward = acquire();
+            try {
+                int settled = sweep(backward, targetIds[j], false);
+                if (size + settled > entryVertex.length) {
+                    int capacity = Math.max(entryVertex.length * 2, size + settled);
+                    entryVertex = Arrays.copyOf(entryVertex, capacity);
+                    entryTarget = Arrays.copyOf(entryTarget, capacity);
+                    entryDistance = Arrays.copyOf(entryDistance, capacity);
+                }
+                for (int i = 0; i < settled; i++) {
+                    int v = backward.queue[i];
+                    entryVertex[size] = v;
+                    entryTarget[size] = j;
+                    entryDistance[size] = backward.distance(v);
+                    size++;
+                }
+            } finally {
+                release(backward);
+            }
+        }
+        // counting sort of the entries by vertex, the buckets of v are bucket[bucketOffsets[v] .. bucketOffsets[v + 1]).
+        int[] bucketOffsets = new int[lat.length + 1];
+        for (int i = 0; i < size; i++) {
+            bucketOffsets[entryVertex[i] + 1]++;
+        }
+        for (int v = 0; v < lat.length; v++) {
+            bucketOffsets[v + 1] += bucketOffsets[v];
+        }
+        int[] bucketTarget = new int[size];
+        double[] bucketDistance = new double[size];
+        int[] next = Arrays.copyOf(bucketOffsets, lat.length);
+        for (int i = 0; i < size; i++) {
+            int slot = next[entryVertex[i]]++;
+            bucketTarget[slot] = entryTarget[i];
+            bucketDistance[slot] = entryDistance[i];
+        }
+        double[][] matrix = new double[sourceIds.length][targetIds.length];
+        IntStream.range(0, sourceIds.length).parallel().forEach(i -> {
+            long started = System.nanoTime();
+            SearchContext forward = acquire();
+            try {
+                int settled = sweep(forward, sourceIds[i], true);
+                double[] row = matrix[i];
+                Arrays.fill(row, Double.POSITIVE_INFINITY);
+                for (int k = 0; k < settled; k++) {
+                    int v = forward.queue[k];
+                    double distance = forward.distance(v);
+                    for (int b = bucketOffsets[v]; b < bucketOffsets[v + 1]; b++) {
+                        row[bucketTarget[b]] = Math.min(row[bucketTarget[b]], distance + bucketDistance[b]);
+                    }
+                }
+                metrics.record(forward.stats(SearchStats.Algorithm.MANY_TO_MANY, System.nanoTime() - started));
+            } finally {
+                release(forward);
+            }
+        });
+        return matrix;
+    }
+
+    private int[] ids(List<GeographicPoint> points) {
+        int[] ids = new int[points.size()];
+        for (int i = 0; i < ids.length; i++) {
+            GeographicPoint point = points.get(i);
+            ids[i] = idOf(Optional.ofNullable(point).orElseThrow(() -> new IllegalArgumentException("nul point.")));
+            if (ids[i] < 0) {
+                throw new IllegalArgumentException("The point:" + point.toString() + " is not in the hierarchy.");
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Upward Dijkstra from <code>source</code> over the whole search space, forward or backward.
+     *
+     * @return The number of settled vertices, listed in <code>context.queue</code>.
+     */
+    private int sweep(SearchContext context, int source, boolean isForward) {
+        int[] offsets = isForward ? upOffsets : downOffsets;
+        int[] arcs = isForward ? upArcs : downArcs;
+        context.update(source, 0, -1);
+        context.heap.offer(source, 0);
+        int settled = 0;
+        while (!context.heap.isEmpty()) {
+            int current = context.heap.poll();
+            context.settle(current);
+            context.queue[settled++] = current;
+            for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+                int arc = arcs[i];
+                int next = isForward ? arcTo[arc] : arcFrom[arc];
+                context.relaxedEdges++;
+                double tmp = context.distance(current) + arcWeight[arc];
+                if (tmp < context.distance(next)) {
+                    context.update(next, tmp, arc);
+                    context.heap.offer(next, tmp);
+                    context.heapPushes++;
+                    context.peakFrontier = Math.max(context.peakFrontier, context.heap.size());
+                }
+            }
+        }
+        context.settledNodes = settled;
+        return settled;
+    }
+
+    /**
+     * Upward Dijkstra from both ends. A side stops once its smallest key reaches the best connection, nothing above it can improve it.
+     * The parent of a vertex is the arc it was reached through.
+     *
+     * @return The highest vertex of the shortest path, or -1 if there is none.
+     */
+    private int search(SearchContext forward, SearchContext backward, int source, int target) {
+        long started = System.nanoTime();
+        forward.update(source, 0, -1);
+        forward.heap.offer(source, 0);
+        backward.update(target, 0, -1);
+        backward.heap.offer(target, 0);
+        double best = Double.POSITIVE_INFINITY;
+        int meeting = -1;
+        boolean isForward = true;
+        while (true) {
+            boolean forwardOpen = !forward.heap.isEmpty() && forward.heap.peekKey() < best;
+            boolean backwardOpen = !backward.heap.isEmpty() && backward.heap.peekKey() < best;
+            if (!forwardOpen && !backwardOpen) {
+                break;
+            }
+            isForward = forwardOpen && (!backwardOpen || !isForward);
+            SearchContext side = isForward ? forward : backward;
+            SearchContext other = isForward ? backward : forward;
+            int current = side.heap.poll();
+            side.settle(current);
+            side.settledNodes++;
+            if (other.isReached(current) && side.distance(current) + other.distance(current) < best) {
+                best = side.distance(current) + other.distance(current);
+                meeting = current;
+            }
+            int[] offsets = isForward ? upOffsets : downOffsets;
+            int[] arcs = isForward ? upArcs : downArcs;
+            for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+                int arc = arcs[i];
+                int next = isForward ? arcTo[arc] : arcFrom[arc];
+                side.relaxedEdges++;
+                double tmp = side.distance(current) + arcWeight[arc];
+                if (tmp < side.distance(next)) {
+                    side.update(next, tmp, arc);
+                    side.heap.offer(next, tmp);
+                    side.heapPushes++;
+                }
+            }
+            forward.peakFrontier = Math.max(forward.peakFrontier, forward.heap.size() + backward.heap.size());
+        }
+        metrics.record(new SearchStats(SearchStats.Algorithm.CONTRACTION_HIERARCHY,
+                                       forward.settledNodes + backward.settledNodes,
+                                       forward.relaxedEdges + backward.relaxedEdges,
+                                       forward.heapPushes + backward.heapPushes,
+                                       forward.peakFrontier,
+                                       System.nanoTime() - started));
+        return meeting;
+    }
+
+    /**
+     * Appends the intersections of <code>arc</code>, without its first one, to <code>path</code>.
+     */
+    private void unpack(int arc, List<GeographicPoint> path) {
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(arc);
+        while (!stack.isEmpty()) {
+            int a = stack.pop();
+            if (arcChild1[a] < 0) {
+                path.add(point(arcTo[a]));
+            } else {
+                stack.push(arcChild2[a]);
+                stack.push(arcChild1[a]);
+            }
+        }
+    }
+
+    private GeographicPoint point(int v) {
+        return new GeographicPoint(lat[v], lon[v]);
+    }
+
+    private int idOf(GeographicPoint point) {
+        Map<GeographicPoint, Integer> ids = index;
+        if (ids == null) {
+            ids = new HashMap<>(lat.length * 4 / 3 + 1);
+            for (int v = 0; v < lat.length; v++) {
+                ids.put(point(v), v);
+            }
+            index = ids;
+        }
+        Integer id = ids.get(point);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Borrows the search state of the calling thread, reset for a new query, as <code>CompactGraph.acquire</code>. Must be given back with
+     * <code>release</code>.
+     *
+     * @return A context no other query is using.
+     */
+    private SearchContext acquire() {
+        ThreadLocal<SearchContext> local = contexts;
+        if (local == null) {
+            local = ThreadLocal.withInitial(() -> new SearchContext(lat.length));
+            contexts = local;
+        }
+        SearchContext context = local.get();
+        if (context.inUse) {
+            // nested query from a SearchMetrics listener, do not clobber the outer one.
+            context = new SearchContext(lat.length);
+        }
+        context.inUse = true;
+        context.reset();
+        return context;
+    }
+
+    private static void release(SearchContext context) {
+        context.inUse = false;
+    }
+
+    /**
+     * Writes the hierarchy, so the next startup can <code>load</code> it instead of preprocessing the graph again.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void save(OutputStream out) throws IOException {
+        ObjectOutputStream stream = new ObjectOutputStream(out);
+        stream.writeObject(this);
+        stream.flush();
+    }
+
+    /**
+     * @param in
+     * @return The hierarchy written by <code>save</code>.
+     * @throws IOException If the stream does not hold a hierarchy.
+     */
+    public static ContractionHierarchy load(InputStream in) throws IOException {
+        try {
+            return (ContractionHierarchy)new ObjectInputStream(in).readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a contraction hierarchy.", e);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        metrics = SearchMetrics.global();
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.util.Arrays;
+
+/**
+ * Preprocessing of a <code>ContractionHierarchy</code>: contracts the vertices of a <code>CompactGraph</code> one by one, cheapest first,
+ * adding a shortcut arc <code>u -> w</code> whenever the path <code>u -> v -> w</code> through the contracted vertex <code>v</code> is the
+ * only shortest one.
+ * <p>
+ * The order is the classic lazy edge-difference heuristic: shortcuts added minus arcs removed, plus the number of neighbors already
+ * contracted to spread the contraction over the graph. Witness searches are bounded by cost and by settled nodes, missing a witness only
+ * adds a redundant shortcut.
+ *
+ * @author dayler
+ */
+final class ContractionHierarchyBuilder {
+
+    /**
+     * Max nodes settled by a witness search.
+     */
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+
+    private final CompactGraph graph;
+
+    private final int numVertices;
+
+    private int numArcs;
+
+    private int[] arcFrom;
+
+    private int[] arcTo;
+
+    private double[] arcWeight;
+
+    /**
+     * First and second half of each shortcut, -1 for the original edges.
+     */
+    private int[] arcChild1;
+
+    private int[] arcChild2;
+
+    /**
+     * Arc ids leaving and entering every vertex, the arcs to contracted vertices are skipped lazily.
+     */
+    private final int[][] out;
+
+    private final int[] outSize;
+
+    private final int[][] in;
+
+    private final int[] inSize;
+
+    private final boolean[] contracted;
+
+    private final int[] contractedNeighbors;
+
+    private final SearchContext witness;
+
+    ContractionHierarchyBuilder(CompactGraph graph, CostProfile profile) {
+        this.graph = graph;
+        numVertices = graph.numVertices();
+        int capacity = Math.max(16, graph.numEdges() * 2);
+        arcFrom = new int[capacity];
+        arcTo = new int[capacity];
+        arcWeight = new double[capacity];
+        arcChild1 = new int[capacity];
+        arcChild2 = new int[capacity];
+        out = new int[numVertices][];
+        outSize = new int[numVertices];
+        in = new int[numVertices][];
+        inSize = new int[numVertices];
+        for (int v = 0; v < numVertices; v++) {
+            out[v] = new int[Math.max(2, graph.endEdge(v) - graph.firstEdge(v))];
+            in[v] = new int[Math.max(2, graph.endReverseEdge(v) - graph.firstReverseEdge(v))];
+        }
+        contracted = new boolean[numVertices];
+        contractedNeighbors = new int[numVertices];
+        witness = new SearchContext(numVertices);
+        CostTable weights = graph.costs(profile);
+        for (int v = 0; v < numVertices; v++) {
+            for (int e = graph.firstEdge(v), end = graph.endEdge(v); e < end; e++) {
+                if (graph.target(e) != v) {
+                    // self loops are never on a shortest path.
+                    addArc(v, graph.target(e), weights.get(e), -1, -1);
+                }
+            }
+        }
+    }
+
+    ContractionHierarchy build() {
+        IndexedMinHeap queue = new IndexedMinHeap(numVertices);
+        for (int v = 0; v < numVertices; v++) {
+            queue.offer(v, priority(v));
+        }
+        int[] rank = new int[numVertices];
+        int next = 0;
+        while (!queue.isEmpty()) {
+            int v = queue.poll();
+            double priority = priority(v);
+            if (!queue.isEmpty() && priority > queue.peekKey()) {
+                // lazy update, the priority went up since it was queued.
+                queue.offer(v, priority);
+                continue;
+            }
+            contract(v, true);
+            contracted[v] = true;
+            rank[v] = next++;
+            for (int i = 0; i < outSize[v]; i++) {
+                contractedNeighbors[arcTo[out[v][i]]]++;
+            }
+            for (int i = 0; i < inSize[v]; i++) {
+                contractedNeighbors[arcFrom[in[v][i]]]++;
+            }
+        }
+        return buildHierarchy(rank);
+    }
+
+    private double priority(int v) {
+        int degree = 0;
+        for (int i = 0; i < outSize[v]; i++) {
+            degree += contracted[arcTo[out[v][i]]] ? 0 : 1;
+        }
+        for (int i = 0; i < inSize[v]; i++) {
+            degree += contracted[arcFrom[in[v][i]]] ? 0 : 1;
+        }
+        return contract(v, false) - degree + contractedNeighbors[v];
+    }
+
+    /**
+     * Finds the shortcuts needed to contract <code>v</code>.
+     *
+     * @param v
+     * @param apply Whether to add the shortcuts or just count them.
+     * @return The number of shortcuts.
+     */
+    private int contract(int v, boolean apply) {
+        double maxOut = 0;
+        for (int i = 0; i < outSize[v]; i++) {
+            int b = out[v][i];
+            if (!contracted[arcTo[b]]) {
+                maxOut = Math.max(maxOut, arcWeight[b]);
+            }
+        }
+        int shortcuts = 0;
+        // arcs added while contracting v are between its neighbors, never around v itself.
+        int numIn = inSize[v];
+        int numOut = outSize[v];
+        for (int i = 0; i < numIn; i++) {
+            int a = in[v][i];
+            int u = arcFrom[a];
+            if (contracted[u]) {
+                continue;
+            }
+            witnessSearch(u, v, arcWeight[a] + maxOut);
+            for (int j = 0; j < numOut; j++) {
+                int b = out[v][j];
+                int w = arcTo[b];
+                if (contracted[w] || w == u) {
+                    continue;
+                }
+                double via = arcWeight[a] + arcWeight[b];
+                if (witness.distance(w) > via) {
+                    shortcuts++;
+                    if (apply) {
+                        addArc(u, w, via, a, b);
+                    }
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    /**
+     * Dijkstra from <code>source</code> that avoids <code>excluded</code> and stops past <code>limit</code>.
+     */
+    private void witnessSearch(int source, int excluded, double limit) {
+        witness.reset();
+        IndexedMinHeap heap = witness.heap;
+        witness.update(source, 0, -1);
+        heap.offer(source, 0);
+        int settled = 0;
+        while (!heap.isEmpty() && heap.peekKey() <= limit && settled++ < WITNESS_SETTLE_LIMIT) {
+            int u = heap.poll();
+            witness.settle(u);
+            for (int i = 0; i < outSize[u]; i++) {
+                int a = out[u][i];
+                int w = arcTo[a];
+                if (w == excluded || contracted[w] || witness.isSettled(w)) {
+                    continue;
+                }
+                double tmp = witness.distance(u) + arcWeight[a];
+                if (tmp < witness.distance(w)) {
+                    witness.update(w, tmp, u);
+                    heap.offer(w, tmp);
+                }
+            }
+        }
+    }
+
+    private void addArc(int from, int to, double weight, int child1, int child2) {
+        if (numArcs == arcFrom.length) {
+            int capacity = numArcs * 2;
+            arcFrom = Arrays.copyOf(arcFrom, capacity);
+            arcTo = Arrays.copyOf(arcTo, capacity);
+            arcWeight = Arrays.copyOf(arcWeight, capacity);
+            arcChild1 = Arrays.copyOf(arcChild1, capacity);
+            arcChild2 = Arrays.copyOf(arcChild2, capacity);
+        }
+        int a = numArcs++;
+        arcFrom[a] = from;
+        arcTo[a] = to;
+        arcWeight[a] = weight;
+        arcChild1[a] = child1;
+        arcChild2[a] = child2;
+        if (outSize[from] == out[from].length) {
+            out[from] = Arrays.copyOf(out[from], outSize[from] * 2);
+        }
+        out[from][outSize[from]++] = a;
+        if (inSize[to] == in[to].length) {
+            in[to] = Arrays.copyOf(in[to], inSize[to] * 2);
+        }
+        in[to][inSize[to]++] = a;
+    }
+
+    /**
+     * Splits the arcs into the upward graph, searched forward from the start, and the downward graph, searched backward from the goal. Both
+     * only lead to higher ranked vertices.
+     */
+    private ContractionHierarchy buildHierarchy(int[] rank) {
+        int[] upOffsets = new int[numVertices + 1];
+        int[] downOffsets = new int[numVertices + 1];
+        for (int a = 0; a < numArcs; a++) {
+            if (rank[arcTo[a]] > rank[arcFrom[a]]) {
+                upOffsets[arcFrom[a] + 1]++;
+            } else {
+                downOffsets[arcTo[a] + 1]++;
+            }
+        }
+        for (int v = 0; v < numVertices; v++) {
+            upOffsets[v + 1] += upOffsets[v];
+            downOffsets[v + 1] += downOffsets[v];
+        }
+        int[] upArcs = new int[upOffsets[numVertices]];
+        int[] downArcs = new int[downOffsets[numVertices]];
+        int[] upNext = Arrays.copyOf(upOffsets, numVertices);
+        int[] downNext = Arrays.copyOf(downOffsets, numVertices);
+        for (int a = 0; a < numArcs; a++) {
+            if (rank[arcTo[a]] > rank[arcFrom[a]]) {
+                upArcs[upNext[arcFrom[a]]++] = a;
+            } else {
+                downArcs[downNext[arcTo[a]]++] = a;
+            }
+        }
+        double[] lat = new double[numVertices];
+        double[] lon = new double[numVertices];
+        for (int v = 0; v < numVertices; v++) {
+            lat[v] = graph.lat(v);
+            lon[v] = graph.lon(v);
+        }
+        return new ContractionHierarchy(lat, lon,
+                                        Arrays.copyOf(arcFrom, numArcs),
+                                        Arrays.copyOf(arcTo, numArcs),
+                                        Arrays.copyOf(arcWeight, numArcs),
+                                        Arrays.copyOf(arcChild1, numArcs),
+                                        Arrays.copyOf(arcChild2, numArcs),
+                                        upOffsets, upArcs, downOffsets, downArcs);
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ *
+ */
+package roadgraph;
+
+/**
+ * Edge cost a query is optimized for. The cost of every edge under every profile is materialized once when the graph is frozen, see
+ * <code>CompactGraph.cost</code>, so the searches never call a <code>WeightBuilder</code> while relaxing edges.
+ *
+ * @author dayler
+ */
+public enum CostProfile {
+    /**
+     * Length of the road in km, see <code>ByLengthBuilder</code>.
+     */
+    LENGTH("length") {
+        @Override
+        WeightBuilder builder(String roadType) {
+            return new ByLengthBuilder();
+        }
+    },
+    /**
+     * Travel time in minutes at the speed limit of the road type, see <code>ByDurationBuilder</code>.
+     */
+    DURATION("duration") {
+        @Override
+        WeightBuilder builder(String roadType) {
+            return new ByDurationBuilder(roadType);
+        }
+    },
+    ;
+
+    private String label;
+
+    private CostProfile(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @param roadType
+     * @return The builder of the cost of the roads of <code>roadType</code> from their length.
+     */
+    abstract WeightBuilder builder(String roadType);
+
+    /**
+     * Cost of a km on the cheapest road type. Scaling a distance in km by it gives a lower bound of the cost, which keeps A* exact.
+     *
+     * @return The minimal cost per km.
+     */
+    public double getMinCostPerKm() {
+        double min = Double.POSITIVE_INFINITY;
+        for (SpeedLimit speedLimit : SpeedLimit.values()) {
+            min = Math.min(min, builder(speedLimit.getName()).getValue(1.0D));
+        }
+        return min;
+    }
+}
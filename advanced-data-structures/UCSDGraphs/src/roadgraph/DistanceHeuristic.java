@@ -0,0 +1,41 @@
+package roadgraph;
+
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+import geography.DistanceKernel;
+import geography.GeographicPoint;
+
+/**
+ * A* heuristic from the distance to the goal scaled to the cheapest cost per km of a profile, so it never overestimates as long as the
+ * kernel does not exceed the great-circle distance.
+ * <p>
+ * As a <code>Heuristic</code> it reads the coordinates of the vertex ids straight from the graph, no point is created per estimate.
+ *
+ * @author dayler
+ */
+public final class DistanceHeuristic implements Heuristic, BiFunction<GeographicPoint, GeographicPoint, Double> {
+
+    private final DistanceKernel kernel;
+
+    private final double minCostPerKm;
+
+    /**
+     * @param kernel E.g. <code>DistanceKernel.HAVERSINE</code> or <code>CompactGraph.equirectangular()</code>.
+     * @param profile The cost the search minimizes.
+     */
+    public DistanceHeuristic(DistanceKernel kernel, CostProfile profile) {
+        this.kernel = Objects.requireNonNull(kernel, "kernel");
+        this.minCostPerKm = Objects.requireNonNull(profile, "profile").getMinCostPerKm();
+    }
+
+    @Override
+    public double estimate(CompactGraph graph, int v, int target) {
+        return kernel.distance(graph.lat(v), graph.lon(v), graph.lat(target), graph.lon(target)) * minCostPerKm;
+    }
+
+    @Override
+    public Double apply(GeographicPoint point, GeographicPoint goal) {
+        return kernel.distance(point.getX(), point.getY(), goal.getX(), goal.getY()) * minCostPerKm;
+    }
+}
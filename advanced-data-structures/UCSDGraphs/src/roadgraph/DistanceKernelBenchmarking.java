@@ -0,0 +1,208 @@
+package roadgraph;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import geography.DistanceKernel;
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/** A class for comparing the distance kernels of the A* heuristic: the
+ * error of the equirectangular distance against the great-circle one
+ * between random vertices of every map, which must never be above it,
+ * the nanoseconds per call one by one and batched, and then A* itself
+ * with each kernel, which must find paths of the same cost.
+ *
+ * @author dayler
+ *
+ */
+public class DistanceKernelBenchmarking {
+
+	public static void main(String [] args) {
+
+		// Number of random vertex pairs per map.
+		int pairs = 100000;
+
+		// Times every kernel goes over the pairs.
+		int rounds = 50;
+
+		// Number of random start/goal pairs of the A* runs.
+		int queries = 500;
+
+		// Fixed seed so every run measures the same pairs.
+		long seed = 20171119L;
+
+		File[] maps = new File("data/maps").listFiles((dir, name) -> name.endsWith(".map"));
+		Arrays.sort(maps, (a, b) -> Long.compare(a.length(), b.length()));
+
+		System.out.println("map\tmax error %\tmean error %\thaversine ns\tequirectangular ns\thaversine batched ns\tequirectangular batched ns");
+		for (File map : maps) {
+			MapGraph mapGraph = new MapGraph();
+			GraphLoader.loadRoadMap(map.getPath(), mapGraph);
+			CompactGraph graph = mapGraph.freeze();
+			DistanceKernel equirectangular = graph.equirectangular();
+
+			Random random = new Random(seed);
+			double[][] from = new double[2][pairs];
+			double[][] to = new double[2][pairs];
+			for (int i = 0; i < pairs; i++) {
+				int u = random.nextInt(graph.numVertices());
+				int v = random.nextInt(graph.numVertices());
+				from[0][i] = graph.lat(u);
+				from[1][i] = graph.lon(u);
+				to[0][i] = graph.lat(v);
+				to[1][i] = graph.lon(v);
+			}
+
+			double maxError = 0;
+			double sumError = 0;
+			int measured = 0;
+			for (int i = 0; i < pairs; i++) {
+				double exact = DistanceKernel.HAVERSINE.distance(from[0][i], from[1][i], to[0][i], to[1][i]);
+				double flat = equirectangular.distance(from[0][i], from[1][i], to[0][i], to[1][i]);
+				if (flat > exact) {
+					throw new IllegalStateException("equirectangular overestimates on " + map + ": " + flat + " > " + exact);
+				}
+				if (exact > 0) {
+					double error = (exact - flat) / exact;
+					maxError = Math.max(maxError, error);
+					sumError += error;
+					measured++;
+				}
+			}
+
+			// Warm up every kernel before timing.
+			double[] distances = new double[pairs];
+			for (int r = 0; r < rounds; r++) {
+				perCall(DistanceKernel.HAVERSINE, from, to);
+				perCall(equirectangular, from, to);
+				batched(DistanceKernel.HAVERSINE, from, to, distances);
+				batched(equirectangular, from, to, distances);
+			}
+
+			System.out.println(map.getPath() + "\t" + String.format("%.4f", 100 * maxError)
+					+ "\t" + String.format("%.4f", measured == 0 ? 0 : 100 * sumError / measured)
+					+ "\t" + String.format("%.1f", timePerCall(DistanceKernel.HAVERSINE, from, to, rounds))
+					+ "\t" + String.format("%.1f", timePerCall(equirectangular, from, to, rounds))
+					+ "\t" + String.format("%.1f", timeBatched(DistanceKernel.HAVERSINE, from, to, distances, rounds))
+					+ "\t" + String.format("%.1f", timeBatched(equirectangular, from, to, distances, rounds)));
+		}
+
+		System.out.println();
+		System.out.println("map\tkernel\tsettled/query\tus/query");
+		for (String map : new String[] { "data/maps/new_york.map", "data/maps/san_diego.map" }) {
+			MapGraph mapGraph = new MapGraph();
+			GraphLoader.loadRoadMap(map, mapGraph);
+			CompactGraph graph = mapGraph.freeze();
+			GeographicPoint[][] odPairs = randomPairs(graph, queries, seed);
+
+			// Warm up both before timing.
+			route(mapGraph, odPairs, DistanceKernel.HAVERSINE);
+			route(mapGraph, odPairs, graph.equirectangular());
+
+			SearchMetrics metrics = new SearchMetrics();
+			mapGraph.setSearchMetrics(metrics);
+			double[] exact = route(mapGraph, odPairs, DistanceKernel.HAVERSINE);
+			print(map, "haversine", metrics, queries);
+
+			metrics = new SearchMetrics();
+			mapGraph.setSearchMetrics(metrics);
+			double[] flat = route(mapGraph, odPairs, graph.equirectangular());
+			print(map, "equirectangular", metrics, queries);
+
+			for (int i = 0; i < queries; i++) {
+				if (Math.abs(exact[i] - flat[i]) > 1e-9 * Math.max(1, exact[i])) {
+					throw new IllegalStateException("path costs differ on " + map + ": " + exact[i] + " != " + flat[i]);
+				}
+			}
+		}
+	}
+
+	private static void print(String map, String kernel, SearchMetrics metrics, int queries) {
+		long settled = metrics.getSettledNodes(SearchStats.Algorithm.A_STAR).getSum();
+		long micros = metrics.getWallMicros(SearchStats.Algorithm.A_STAR).getSum();
+		System.out.println(map + "\t" + kernel + "\t" + (settled / queries) + "\t" + String.format("%.1f", (double)micros / queries));
+	}
+
+	private static double timePerCall(DistanceKernel kernel, double[][] from, double[][] to, int rounds) {
+		long start = System.nanoTime();
+		double sum = 0;
+		for (int r = 0; r < rounds; r++) {
+			sum += perCall(kernel, from, to);
+		}
+		long elapsed = System.nanoTime() - start;
+		keep(sum);
+		return (double)elapsed / rounds / from[0].length;
+	}
+
+	private static double timeBatched(DistanceKernel kernel, double[][] from, double[][] to, double[] distances, int rounds) {
+		long start = System.nanoTime();
+		double sum = 0;
+		for (int r = 0; r < rounds; r++) {
+			sum += batched(kernel, from, to, distances);
+		}
+		long elapsed = System.nanoTime() - start;
+		keep(sum);
+		return (double)elapsed / rounds / from[0].length;
+	}
+
+	private static double perCall(DistanceKernel kernel, double[][] from, double[][] to) {
+		double sum = 0;
+		for (int i = 0; i < from[0].length; i++) {
+			sum += kernel.distance(from[0][i], from[1][i], to[0][i], to[1][i]);
+		}
+		return sum;
+	}
+
+	// One point to all the others, as a whole array.
+	private static double batched(DistanceKernel kernel, double[][] from, double[][] to, double[] distances) {
+		kernel.distances(from[0][0], from[1][0], to[0], to[1], distances);
+		return distances[distances.length - 1];
+	}
+
+	// Keeps the JIT from dropping the loops whose result is not used.
+	private static void keep(double sum) {
+		if (sum == 42) {
+			System.out.println(sum);
+		}
+	}
+
+	// Cost of the path found for every pair, by travel time.
+	private static double[] route(MapGraph mapGraph, GeographicPoint[][] pairs, DistanceKernel kernel) {
+		CompactGraph graph = mapGraph.freeze();
+		double[] costs = new double[pairs.length];
+		for (int i = 0; i < pairs.length; i++) {
+			List<GeographicPoint> path = mapGraph.aStarSearch(pairs[i][0], pairs[i][1], CostProfile.DURATION, kernel);
+			costs[i] = path == null ? Double.POSITIVE_INFINITY : cost(graph, path);
+		}
+		return costs;
+	}
+
+	private static double cost(CompactGraph graph, List<GeographicPoint> path) {
+		double cost = 0;
+		for (int i = 0; i + 1 < path.size(); i++) {
+			int u = graph.idOf(path.get(i));
+			int v = graph.idOf(path.get(i + 1));
+			double best = Double.POSITIVE_INFINITY;
+			for (int e = graph.firstEdge(u); e < graph.endEdge(u); e++) {
+				if (graph.target(e) == v) {
+					best = Math.min(best, graph.cost(CostProfile.DURATION, e));
+				}
+			}
+			cost += best;
+		}
+		return cost;
+	}
+
+	private static GeographicPoint[][] randomPairs(CompactGraph graph, int queries, long seed) {
+		Random random = new Random(seed);
+		GeographicPoint[][] pairs = new GeographicPoint[queries][2];
+		for (GeographicPoint[] pair : pairs) {
+			pair[0] = graph.point(random.nextInt(graph.numVertices()));
+			pair[1] = graph.point(random.nextInt(graph.numVertices()));
+		}
+		return pairs;
+	}
+}
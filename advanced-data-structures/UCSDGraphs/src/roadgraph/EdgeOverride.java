@@ -0,0 +1,85 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.util.Arrays;
+
+/**
+ * Live change of the cost of an edge made through <code>MapGraph</code>: the road may be closed, and the cost under any profile may be
+ * replaced. Immutable, every change makes a new override.
+ *
+ * @author dayler
+ */
+final class EdgeOverride {
+
+    /**
+     * No change, the edge has the cost of its length and road type.
+     */
+    static final EdgeOverride NONE = new EdgeOverride(false, emptyCosts());
+
+    private final boolean closed;
+
+    /**
+     * Cost under every profile by ordinal, <code>NaN</code> where it is not replaced.
+     */
+    private final double[] costs;
+
+    private EdgeOverride(boolean closed, double[] costs) {
+        this.closed = closed;
+        this.costs = costs;
+    }
+
+    private static double[] emptyCosts() {
+        double[] costs = new double[CostProfile.values().length];
+        Arrays.fill(costs, Double.NaN);
+        return costs;
+    }
+
+    /**
+     * @param closed
+     * @return The override with the road closed or open, the replaced costs are kept for when it opens.
+     */
+    EdgeOverride withClosed(boolean closed) {
+        return new EdgeOverride(closed, costs);
+    }
+
+    /**
+     * @param profile
+     * @param cost
+     * @return The override with the cost under <code>profile</code> replaced.
+     */
+    EdgeOverride withCost(CostProfile profile, double cost) {
+        double[] copy = costs.clone();
+        copy[profile.ordinal()] = cost;
+        return new EdgeOverride(closed, copy);
+    }
+
+    /**
+     * @return true if it changes nothing.
+     */
+    boolean isEmpty() {
+        if (closed) {
+            return false;
+        }
+        for (double cost : costs) {
+            if (!Double.isNaN(cost)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param profile
+     * @param baseCost Cost of the edge from its length and road type.
+     * @return The cost of the edge with this override, infinite if the road is closed so no search ever relaxes it.
+     */
+    double cost(CostProfile profile, double baseCost) {
+        if (closed) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double cost = costs[profile.ordinal()];
+        return Double.isNaN(cost) ? baseCost : cost;
+    }
+}
@@ -0,0 +1,206 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/** A class for timing MapGraph.facilities against one search per
+ * facility: the time to label every intersection with its k nearest
+ * facilities, to add facilities one by one with addFacility rather than
+ * building again, and to look a point up.  The labels must be the k
+ * cheapest costs of the searches from every facility, and the ones of
+ * the index built with all the facilities at once.
+ *
+ * @author dayler
+ *
+ */
+public class FacilityBenchmarking {
+
+	public static void main(String [] args) {
+
+		// Number of facilities labelled at once, then added one by one.
+		int numFacilities = 50;
+		int numAdded = 10;
+
+		// Facilities kept per intersection.
+		int k = 3;
+
+		// Random roads closed before checking the labels again.
+		int closedRoads = 100;
+
+		// Rounds of every timing, averaged.
+		int repeats = 20;
+
+		// Number of random lookups.
+		int lookups = 1000000;
+
+		// Fixed seed so every run picks the same facilities.
+		long seed = 20171119L;
+
+		String[] maps = { "data/maps/new_york.map", "data/maps/san_diego.map" };
+
+		System.out.println("map\tvertices\tfacilities\tk\tindex ms\tper facility ms\tadd us\trebuild ms\tlookup ns\treached");
+		for (String map : maps) {
+			MapGraph graph = new MapGraph();
+			GraphLoader.loadRoadMap(map, graph);
+			CompactGraph frozen = graph.freeze();
+			Random random = new Random(seed);
+			List<GeographicPoint> facilities = new ArrayList<GeographicPoint>();
+			while (facilities.size() < numFacilities + numAdded) {
+				GeographicPoint point = frozen.point(random.nextInt(frozen.numVertices()));
+				if (!facilities.contains(point)) {
+					facilities.add(point);
+				}
+			}
+			List<GeographicPoint> initial = facilities.subList(0, numFacilities);
+			List<GeographicPoint> added = facilities.subList(numFacilities, facilities.size());
+
+			MapGraph reverse = reverse(frozen);
+
+			// Warm up before timing.
+			for (int i = 0; i < repeats; i++) {
+				graph.facilities(facilities, k);
+				perFacility(reverse, facilities);
+			}
+
+			long indexNanos = 0;
+			long perFacilityNanos = 0;
+			long addNanos = 0;
+			long rebuildNanos = 0;
+			FacilityIndex index = null;
+			for (int i = 0; i < repeats; i++) {
+				long start = System.nanoTime();
+				index = graph.facilities(initial, k);
+				indexNanos += System.nanoTime() - start;
+
+				start = System.nanoTime();
+				Map<GeographicPoint, Isochrone> searches = perFacility(reverse, initial);
+				perFacilityNanos += System.nanoTime() - start;
+				if (i == 0) {
+					check(map, frozen, index, searches, k);
+				}
+
+				start = System.nanoTime();
+				for (GeographicPoint facility : added) {
+					index.addFacility(facility);
+				}
+				addNanos += System.nanoTime() - start;
+
+				start = System.nanoTime();
+				FacilityIndex rebuilt = graph.facilities(facilities, k);
+				rebuildNanos += System.nanoTime() - start;
+				if (i == 0) {
+					check(map, frozen, index, rebuilt);
+					check(map, frozen, rebuilt, perFacility(reverse, facilities), k);
+				}
+			}
+
+			GeographicPoint[] points = new GeographicPoint[1024];
+			for (int i = 0; i < points.length; i++) {
+				points[i] = frozen.point(random.nextInt(frozen.numVertices()));
+			}
+			int found = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) {
+				if (index.nearest(points[i & (points.length - 1)]) != null) {
+					found++;
+				}
+			}
+			long lookupNanos = System.nanoTime() - start;
+
+			System.out.println(map + "\t" + frozen.numVertices() + "\t" + numFacilities + "\t" + k
+					+ "\t" + String.format("%.2f", indexNanos / 1e6 / repeats) + "\t" + String.format("%.2f", perFacilityNanos / 1e6 / repeats)
+					+ "\t" + String.format("%.1f", addNanos / 1000.0 / numAdded / repeats) + "\t" + String.format("%.2f", rebuildNanos / 1e6 / repeats)
+					+ "\t" + String.format("%.1f", (double) lookupNanos / lookups)
+					+ "\t" + String.format("%.0f%%", 100.0 * found / lookups));
+
+			// Closed roads: no label may go through one, built at once or facility by facility.
+			Random closures = new Random(seed);
+			for (int i = 0; i < closedRoads; i++) {
+				int source;
+				do {
+					source = closures.nextInt(frozen.numVertices());
+				} while (frozen.firstEdge(source) == frozen.endEdge(source));
+				int e = frozen.firstEdge(source) + closures.nextInt(frozen.endEdge(source) - frozen.firstEdge(source));
+				graph.closeRoad(frozen.point(source), frozen.point(frozen.target(e)));
+				reverse.closeRoad(frozen.point(frozen.target(e)), frozen.point(source));
+			}
+			FacilityIndex closed = graph.facilities(facilities, k);
+			check(map, frozen, closed, perFacility(reverse, facilities), k);
+			FacilityIndex closedAdded = graph.facilities(initial, k);
+			for (GeographicPoint facility : added) {
+				closedAdded.addFacility(facility);
+			}
+			check(map, frozen, closedAdded, closed);
+		}
+	}
+
+	// The same roads, turned around.
+	private static MapGraph reverse(CompactGraph frozen) {
+		MapGraph reverse = new MapGraph();
+		for (int v = 0; v < frozen.numVertices(); v++) {
+			reverse.addVertex(frozen.point(v));
+		}
+		for (int v = 0; v < frozen.numVertices(); v++) {
+			for (int e = frozen.firstEdge(v); e < frozen.endEdge(v); e++) {
+				reverse.addEdge(frozen.point(frozen.target(e)), frozen.point(v), frozen.roadName(e), frozen.roadType(e), frozen.length(e));
+			}
+		}
+		return reverse;
+	}
+
+	// The reference: a search over the whole graph from each facility, the
+	// isochrone of an unbounded budget on the reversed roads.
+	private static Map<GeographicPoint, Isochrone> perFacility(MapGraph reverse, List<GeographicPoint> facilities) {
+		Map<GeographicPoint, Isochrone> searches = new LinkedHashMap<GeographicPoint, Isochrone>();
+		for (GeographicPoint facility : facilities) {
+			searches.put(facility, reverse.isochrone(facility, Double.POSITIVE_INFINITY));
+		}
+		return searches;
+	}
+
+	// Every point has the k cheapest costs over the searches of every facility.
+	private static void check(String map, CompactGraph frozen, FacilityIndex index, Map<GeographicPoint, Isochrone> searches, int k) {
+		double[] all = new double[searches.size()];
+		for (int v = 0; v < frozen.numVertices(); v++) {
+			GeographicPoint point = frozen.point(v);
+			int reachable = 0;
+			for (Isochrone search : searches.values()) {
+				double cost = search.getCost(point);
+				if (cost != Double.POSITIVE_INFINITY) {
+					all[reachable++] = cost;
+				}
+			}
+			Arrays.sort(all, 0, reachable);
+			double[] expected = Arrays.copyOf(all, Math.min(k, reachable));
+			double[] costs = index.costs(point);
+			if (!Arrays.equals(costs, expected)) {
+				throw new IllegalStateException("labels differ on " + map + " at " + point + ": " + Arrays.toString(costs) + " != "
+						+ Arrays.toString(expected));
+			}
+			List<GeographicPoint> nearest = index.kNearest(point);
+			for (int i = 0; i < nearest.size(); i++) {
+				if (searches.get(nearest.get(i)).getCost(point) != costs[i]) {
+					throw new IllegalStateException("facility " + nearest.get(i) + " does not cost " + costs[i] + " on " + map + " at " + point);
+				}
+			}
+		}
+	}
+
+	// Adding the facilities one by one gives the labels of building with all of them.
+	private static void check(String map, CompactGraph frozen, FacilityIndex index, FacilityIndex rebuilt) {
+		for (int v = 0; v < frozen.numVertices(); v++) {
+			GeographicPoint point = frozen.point(v);
+			if (!Arrays.equals(index.costs(point), rebuilt.costs(point))) {
+				throw new IllegalStateException("added labels differ on " + map + " at " + point + ": " + Arrays.toString(index.costs(point))
+						+ " != " + Arrays.toString(rebuilt.costs(point)));
+			}
+		}
+	}
+}
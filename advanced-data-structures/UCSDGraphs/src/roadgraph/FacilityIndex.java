@@ -0,0 +1,333 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import geography.GeographicPoint;
+
+/**
+ * The <code>k</code> nearest facilities of every intersection by travel cost, e.g. the closest stores or depots of each customer, computed
+ * for all of them at once so each lookup is a couple of array reads.
+ * <p>
+ * The cost of a facility is the one of the shortest path from the intersection to the facility, so the search runs from the facilities over
+ * the reverse edges. It is a multi-source Dijkstra where every vertex is settled up to <code>k</code> times, once per facility, and a label
+ * only spreads from a vertex where it made it into the <code>k</code> nearest: a facility that is not among the <code>k</code> nearest of a
+ * vertex is not among them for any vertex whose path to it goes through that vertex. With <code>k = 1</code> the labels are the Voronoi
+ * partition of the road network. <code>addFacility</code> updates the labels with a single search from the new facility, pruned the same way.
+ * <p>
+ * The index is a snapshot of the version of the graph it was built on, see <code>getVersion</code>: it does not see the roads changed or
+ * added afterwards. It is thread-safe.
+ *
+ * @author dayler
+ */
+public final class FacilityIndex {
+
+    private final CompactGraph graph;
+
+    private final CostProfile profile;
+
+    private final int k;
+
+    /**
+     * Facility points by facility id, and facility id by vertex id.
+     */
+    private final List<GeographicPoint> facilities = new ArrayList<>();
+
+    private final Map<Integer, Integer> facilityOf = new HashMap<>();
+
+    /**
+     * Labels of vertex <code>v</code> are <code>[v * k, v * k + count[v])</code>, cheapest first. Guarded by <code>this</code>.
+     */
+    private final int[] labelFacility;
+
+    private final double[] labelCost;
+
+    private final int[] count;
+
+    /**
+     * Counters of the build, for the stats.
+     */
+    private int settledNodes;
+
+    private int relaxedEdges;
+
+    private int heapPushes;
+
+    private int peakFrontier;
+
+    FacilityIndex(CompactGraph graph, CostProfile profile, int k, List<GeographicPoint> facilities) {
+        this.graph = graph;
+        this.profile = profile;
+        this.k = k;
+        int numVertices = graph.numVertices();
+        labelFacility = new int[numVertices * k];
+        labelCost = new double[numVertices * k];
+        count = new int[numVertices];
+        LabelHeap heap = new LabelHeap();
+        for (GeographicPoint facility : facilities) {
+            int vertex = vertexOf(facility);
+            if (!facilityOf.containsKey(vertex)) {
+                heap.offer(0, vertex, register(facility, vertex));
+                heapPushes++;
+            }
+        }
+        CostTable weights = graph.costs(profile);
+        while (!heap.isEmpty()) {
+            double cost = heap.peekCost();
+            int vertex = heap.peekVertex();
+            int facility = heap.peekFacility();
+            heap.poll();
+            if (!label(vertex, facility, cost)) {
+                continue;
+            }
+            settledNodes++;
+            for (int r = graph.firstReverseEdge(vertex), end = graph.endReverseEdge(vertex); r < end; r++) {
+                relaxedEdges++;
+                double tmp = cost + weights.get(graph.reverseEdge(r));
+                if (tmp == Double.POSITIVE_INFINITY) {
+                    // closed road.
+                    continue;
+                }
+                heap.offer(tmp, graph.reverseSource(r), facility);
+                heapPushes++;
+                peakFrontier = Math.max(peakFrontier, heap.size);
+            }
+        }
+    }
+
+    private int vertexOf(GeographicPoint facility) {
+        Optional.ofNullable(facility).orElseThrow(() -> new IllegalArgumentException("nul facility."));
+        int vertex = graph.idOf(facility);
+        if (vertex < 0) {
+            throw new IllegalArgumentException("The point:" + facility.toString() + " is not in the Graph.");
+        }
+        return vertex;
+    }
+
+    private int register(GeographicPoint facility, int vertex) {
+        int id = facilities.size();
+        facilities.add(facility);
+        facilityOf.put(vertex, id);
+        return id;
+    }
+
+    /**
+     * Inserts the label of <code>facility</code> at <code>vertex</code> in cost order, unless the vertex already has it or <code>k</code>
+     * cheaper ones, or the facility cannot be reached from it.
+     *
+     * @return true if the label was inserted.
+     */
+    private boolean label(int vertex, int facility, double cost) {
+        int first = vertex * k;
+        int n = count[vertex];
+        if (cost == Double.POSITIVE_INFINITY || n == k && labelCost[first + k - 1] <= cost) {
+            return false;
+        }
+        for (int i = first; i < first + n; i++) {
+            if (labelFacility[i] == facility) {
+                return false;
+            }
+        }
+        int i = first + Math.min(n, k - 1);
+        // shift the more expensive labels one slot, dropping the last one if it is full.
+        while (i > first && labelCost[i - 1] > cost) {
+            labelFacility[i] = labelFacility[i - 1];
+            labelCost[i] = labelCost[i - 1];
+            i--;
+        }
+        labelFacility[i] = facility;
+        labelCost[i] = cost;
+        count[vertex] = Math.min(n + 1, k);
+        return true;
+    }
+
+    /**
+     * @param wallNanos
+     * @return The counters of the build, a vertex is settled once per label.
+     */
+    SearchStats stats(long wallNanos) {
+        return new SearchStats(SearchStats.Algorithm.FACILITIES, settledNodes, relaxedEdges, heapPushes, peakFrontier, wallNanos);
+    }
+
+    /**
+     * Adds a facility and updates the labels of the vertices it is now among the <code>k</code> nearest of, with one search from it that
+     * stops wherever it does not make it into the labels.
+     *
+     * @param facility
+     * @return true if it was added, false if it already was a facility.
+     * @throws IllegalArgumentException If the point is null or not in the graph.
+     */
+    public synchronized boolean addFacility(GeographicPoint facility) throws IllegalArgumentException {
+        int source = vertexOf(facility);
+        if (facilityOf.containsKey(source)) {
+            return false;
+        }
+        int id = register(facility, source);
+        CostTable weights = graph.costs(profile);
+        SearchContext context = graph.acquire();
+        try {
+            context.update(source, 0, source);
+            IndexedMinHeap unsettle = context.heap;
+            unsettle.offer(source, 0);
+            while (!unsettle.isEmpty()) {
+                int current = unsettle.poll();
+                context.settle(current);
+                if (!label(current, id, context.distance(current))) {
+                    continue;
+                }
+                for (int r = graph.firstReverseEdge(current), end = graph.endReverseEdge(current); r < end; r++) {
+                    int next = graph.reverseSource(r);
+                    if (context.isSettled(next)) {
+                        continue;
+                    }
+                    double tmp = context.distance(current) + weights.get(graph.reverseEdge(r));
+                    if (tmp < context.distance(next)) {
+                        context.update(next, tmp, current);
+                        unsettle.offer(next, tmp);
+                    }
+                }
+            }
+        } finally {
+            graph.release(context);
+        }
+        return true;
+    }
+
+    /**
+     * @return The facilities, in the order they were added.
+     */
+    public synchronized List<GeographicPoint> getFacilities() {
+        return Collections.unmodifiableList(new ArrayList<>(facilities));
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public CostProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return The version of the graph the labels were computed on.
+     */
+    public long getVersion() {
+        return graph.version();
+    }
+
+    /**
+     * @param point
+     * @return The facility closest to <code>point</code>, or <code>null</code> if none can be reached from it.
+     * @throws IllegalArgumentException If the point is null or not in the graph.
+     */
+    public synchronized GeographicPoint nearest(GeographicPoint point) throws IllegalArgumentException {
+        int vertex = vertexOf(point);
+        return count[vertex] == 0 ? null : facilities.get(labelFacility[vertex * k]);
+    }
+
+    /**
+     * @param point
+     * @return The <code>k</code> closest facilities of <code>point</code>, closest first, fewer if fewer can be reached from it.
+     * @throws IllegalArgumentException If the point is null or not in the graph.
+     */
+    public synchronized List<GeographicPoint> kNearest(GeographicPoint point) throws IllegalArgumentException {
+        int vertex = vertexOf(point);
+        List<GeographicPoint> nearest = new ArrayList<>(count[vertex]);
+        for (int i = vertex * k; i < vertex * k + count[vertex]; i++) {
+            nearest.add(facilities.get(labelFacility[i]));
+        }
+        return nearest;
+    }
+
+    /**
+     * @param point
+     * @return The cost from <code>point</code> to each of its <code>kNearest</code> facilities, in the same order.
+     * @throws IllegalArgumentException If the point is null or not in the graph.
+     */
+    public synchronized double[] costs(GeographicPoint point) throws IllegalArgumentException {
+        int vertex = vertexOf(point);
+        return Arrays.copyOfRange(labelCost, vertex * k, vertex * k + count[vertex]);
+    }
+
+    /**
+     * Binary min-heap of (cost, vertex, facility) labels to settle, a vertex can be in it many times.
+     */
+    private static final class LabelHeap {
+
+        private double[] costs = new double[64];
+
+        private int[] vertices = new int[64];
+
+        private int[] facilities = new int[64];
+
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double peekCost() {
+            return costs[0];
+        }
+
+        int peekVertex() {
+            return vertices[0];
+        }
+
+        int peekFacility() {
+            return facilities[0];
+        }
+
+        void offer(double cost, int vertex, int facility) {
+            if (size == costs.length) {
+                costs = Arrays.copyOf(costs, 2 * size);
+                vertices = Arrays.copyOf(vertices, 2 * size);
+                facilities = Arrays.copyOf(facilities, 2 * size);
+            }
+            int i = size++;
+            while (i > 0 && costs[(i - 1) >>> 1] > cost) {
+                move((i - 1) >>> 1, i);
+                i = (i - 1) >>> 1;
+            }
+            set(i, cost, vertex, facility);
+        }
+
+        /**
+         * Removes the minimum label.
+         */
+        void poll() {
+            size--;
+            double cost = costs[size];
+            int vertex = vertices[size];
+            int facility = facilities[size];
+            int i = 0;
+            int child;
+            while ((child = 2 * i + 1) < size) {
+                if (child + 1 < size && costs[child + 1] < costs[child]) {
+                    child++;
+                }
+                if (costs[child] >= cost) {
+                    break;
+                }
+                move(child, i);
+                i = child;
+            }
+            set(i, cost, vertex, facility);
+        }
+
+        private void move(int from, int to) {
+            set(to, costs[from], vertices[from], facilities[from]);
+        }
+
+        private void set(int i, double cost, int vertex, int facility) {
+            costs[i] = cost;
+            vertices[i] = vertex;
+            facilities[i] = facility;
+        }
+    }
+}
@@ -8,7 +8,8 @@ import java.util.Objects;
 import geography.GeographicPoint;
 
 /**
- * Used to add weight to the <code>GeographicPoint</code>.
+ * Vertex of a <code>MapGraph</code>. It holds no search state, the tentative distances of a query live in its own
+ * <code>SearchContext</code> so concurrent searches do not interfere.
  * 
  * @author dayler
  */
@@ -16,32 +17,10 @@ public class GeographicPointNode extends GeographicPoint {
 
     private static final long serialVersionUID = 20171119L;
     
-    /**
-     * Accumulated weight for the point..
-     */
-    private double weight = Integer.MAX_VALUE;
-    
     private GeographicPointNode(GeographicPoint gp) {
         super(gp.getX(), gp.getY());
     }
     
-    public double getWeight() {
-        return weight;
-    }
-    
-    public void setWeight(double weight) {
-        this.weight = weight;
-    }
-    
-    @Override
-    public String toString() {
-        return super.toString() + " W:" + weight;
-    }
-    
-    public void clear() {
-        weight = Integer.MAX_VALUE;
-    }
-    
     public static GeographicPointNode of(GeographicPoint gp) {
         Objects.requireNonNull(gp, "null GP");
         return gp instanceof GeographicPointNode ? (GeographicPointNode)gp : new GeographicPointNode(gp);
@@ -0,0 +1,112 @@
+package roadgraph;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.PriorityBlockingQueue;
+
+import util.GraphLoader;
+
+/** A class for timing the Dijkstra priority queue: the indexed min-heap
+ * used by MapGraph against the PriorityBlockingQueue it used to have,
+ * in settled nodes per second over the same random queries.
+ *
+ * @author dayler
+ *
+ */
+public class HeapBenchmarking {
+
+	public static void main(String [] args) {
+
+		// Number of random start/goal pairs per map.
+		int queries = 500;
+
+		// Fixed seed so every run times the same queries.
+		long seed = 20171119L;
+
+		String[] maps = { "data/maps/new_york.map", "data/maps/san_diego.map" };
+
+		System.out.println("map\tqueue\tsettled\tms\tsettled/s");
+		for (String map : maps) {
+			MapGraph mapGraph = new MapGraph();
+			GraphLoader.loadRoadMap(map, mapGraph);
+			CompactGraph graph = mapGraph.freeze();
+			int[][] pairs = randomPairs(graph.numVertices(), queries, seed);
+
+			// Warm up both queues before timing.
+			runBlockingQueue(graph, pairs);
+			runIndexedHeap(graph, pairs);
+
+			long start = System.nanoTime();
+			long settled = runBlockingQueue(graph, pairs);
+			print(map, "PriorityBlockingQueue", settled, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			settled = runIndexedHeap(graph, pairs);
+			print(map, "IndexedMinHeap", settled, System.nanoTime() - start);
+		}
+	}
+
+	private static void print(String map, String queue, long settled, long nanos) {
+		System.out.println(map + "\t" + queue + "\t" + settled + "\t" + (nanos / 1000000.0)
+				+ "\t" + (long)(settled * 1e9 / nanos));
+	}
+
+	private static int[][] randomPairs(int numVertices, int queries, long seed) {
+		Random random = new Random(seed);
+		int[][] pairs = new int[queries][2];
+		for (int[] pair : pairs) {
+			pair[0] = random.nextInt(numVertices);
+			pair[1] = random.nextInt(numVertices);
+		}
+		return pairs;
+	}
+
+	private static long runIndexedHeap(CompactGraph graph, int[][] pairs) {
+		long settled = 0;
+		for (int[] pair : pairs) {
+			SearchContext context = graph.acquire();
+			settled += MapGraph.search(graph, CostProfile.DURATION, context, pair[0], pair[1], (x) -> {}, Heuristic.NONE);
+			graph.release(context);
+		}
+		return settled;
+	}
+
+	// The former findPath loop: a locking queue with duplicate entries
+	// and keys mutated while queued.
+	private static long runBlockingQueue(CompactGraph graph, int[][] pairs) {
+		long settledCount = 0;
+		double[] weight = new double[graph.numVertices()];
+		boolean[] settled = new boolean[graph.numVertices()];
+		for (int[] pair : pairs) {
+			Arrays.fill(weight, Integer.MAX_VALUE);
+			Arrays.fill(settled, false);
+			weight[pair[0]] = 0;
+			Queue<Integer> unsettle = new PriorityBlockingQueue<>(1024, Comparator.comparingDouble(v -> weight[v]));
+			unsettle.add(pair[0]);
+			while (!unsettle.isEmpty()) {
+				int current = unsettle.poll();
+				if (current == pair[1]) {
+					break;
+				}
+				for (int e = graph.firstEdge(current), end = graph.endEdge(current); e < end; e++) {
+					int next = graph.target(e);
+					if (settled[next]) {
+						continue;
+					}
+					double tmp = weight[current] + graph.weight(e);
+					if (tmp < weight[next]) {
+						weight[next] = tmp;
+					}
+					unsettle.add(next);
+				}
+				if (!settled[current]) {
+					settled[current] = true;
+					settledCount++;
+				}
+			}
+		}
+		return settledCount;
+	}
+}
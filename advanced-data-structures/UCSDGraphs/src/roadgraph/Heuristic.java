@@ -0,0 +1,46 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+import geography.GeographicPoint;
+
+/**
+ * Estimate of the remaining cost that guides A*, on the vertex ids of a <code>CompactGraph</code>.
+ * <p>
+ * A <code>moveCost</code> handed to <code>MapGraph.findPath</code> that also implements this interface is called through
+ * <code>estimate</code>, so the search does not create a point per relaxation just to look it up again.
+ *
+ * @author dayler
+ */
+@FunctionalInterface
+public interface Heuristic {
+
+    /**
+     * No estimate, turns A* into Dijkstra.
+     */
+    Heuristic NONE = (graph, v, target) -> 0.0D;
+
+    /**
+     * @param graph The graph the ids belong to.
+     * @param v Vertex id.
+     * @param target Vertex id of the goal.
+     * @return A lower bound of the cost from <code>v</code> to <code>target</code>.
+     */
+    double estimate(CompactGraph graph, int v, int target);
+
+    /**
+     * @param moveCost
+     * @return <code>moveCost</code> itself if it is a <code>Heuristic</code>, otherwise a heuristic calling it with the points of the vertices.
+     */
+    static Heuristic of(BiFunction<GeographicPoint, GeographicPoint, Double> moveCost) {
+        Objects.requireNonNull(moveCost, "moveCost");
+        if (moveCost instanceof Heuristic) {
+            return (Heuristic)moveCost;
+        }
+        return (graph, v, target) -> moveCost.apply(graph.point(v), graph.point(target));
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of vertex ids keyed by primitive <code>double</code> priorities, with a position index so offering a queued vertex again (decrease-key) moves
+ * the vertex in place instead of inserting a duplicate.
+ * <p>
+ * Not thread-safe, each <code>SearchContext</code> owns one.
+ *
+ * @author dayler
+ */
+final class IndexedMinHeap {
+
+    /**
+     * Vertex id stored at each heap slot.
+     */
+    private final int[] heap;
+
+    /**
+     * Priority of the vertex stored at each heap slot, kept next to the slot so sift loops do not chase the vertex id.
+     */
+    private final double[] keys;
+
+    /**
+     * Heap slot of each vertex id, or -1 if the vertex is not in the heap.
+     */
+    private final int[] position;
+
+    private int size;
+
+    IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        keys = new double[capacity];
+        position = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int v) {
+        return position[v] >= 0;
+    }
+
+    /**
+     * Inserts <code>v</code>, or lowers its priority if it is already in the heap. A higher priority is ignored.
+     *
+     * @param v
+     * @param key
+     * @return true if <code>v</code> was inserted, false if it was already in the heap.
+     */
+    boolean offer(int v, double key) {
+        int slot = position[v];
+        if (slot >= 0) {
+            if (key < keys[slot]) {
+                siftUp(slot, v, key);
+            }
+            return false;
+        }
+        siftUp(size++, v, key);
+        return true;
+    }
+
+    /**
+     * @return The priority of the minimum vertex. The heap must not be empty.
+     */
+    double peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * Removes the vertex with the lowest priority. The heap must not be empty.
+     *
+     * @return The removed vertex id.
+     */
+    int poll() {
+        int min = heap[0];
+        position[min] = -1;
+        if (--size > 0) {
+            siftDown(0, heap[size], keys[size]);
+        }
+        return min;
+    }
+
+    /**
+     * Empties the heap in O(size), so it can be reused by the next query.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int slot, int v, double key) {
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            move(heap[parent], keys[parent], slot);
+            slot = parent;
+        }
+        move(v, key, slot);
+    }
+
+    private void siftDown(int slot, int v, double key) {
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            int right = child + 1;
+            if (right < size && keys[right] < keys[child]) {
+                child = right;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            move(heap[child], keys[child], slot);
+            slot = child;
+        }
+        move(v, key, slot);
+    }
+
+    private void move(int v, double key, int slot) {
+        heap[slot] = v;
+        keys[slot] = key;
+        position[v] = slot;
+    }
+}
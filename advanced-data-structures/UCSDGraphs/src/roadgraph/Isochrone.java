@@ -0,0 +1,103 @@
+package roadgraph;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import geography.GeographicPoint;
+import geography.Hull;
+
+/**
+ * Immutable result of <code>MapGraph.isochrone</code>: the intersections reachable from a source within a cost budget, e.g. everything
+ * within 10 minutes, each one with the cost of its shortest path, and the polygons around them for a map.
+ *
+ * @author dayler
+ */
+public final class Isochrone {
+
+    private final GeographicPoint source;
+
+    private final CostProfile profile;
+
+    private final double budget;
+
+    /**
+     * Reached points, cheapest first.
+     */
+    private final GeographicPoint[] points;
+
+    private final Map<GeographicPoint, Double> reached;
+
+    Isochrone(GeographicPoint source, CostProfile profile, double budget, GeographicPoint[] points, double[] costs) {
+        this.source = source;
+        this.profile = profile;
+        this.budget = budget;
+        this.points = points;
+        Map<GeographicPoint, Double> reached = new LinkedHashMap<>(points.length * 4 / 3 + 1);
+        for (int i = 0; i < points.length; i++) {
+            reached.put(points[i], costs[i]);
+        }
+        this.reached = Collections.unmodifiableMap(reached);
+    }
+
+    public GeographicPoint getSource() {
+        return source;
+    }
+
+    public CostProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return The most a reached point costs, in the unit of <code>getProfile</code>, e.g. minutes.
+     */
+    public double getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return The number of reached points, the source included.
+     */
+    public int size() {
+        return points.length;
+    }
+
+    /**
+     * @return The reached points and the cost of their shortest path from the source, cheapest first.
+     */
+    public Map<GeographicPoint, Double> getReached() {
+        return reached;
+    }
+
+    /**
+     * @param point
+     * @return The cost of the shortest path from the source to <code>point</code>, or infinity if it is not within the budget.
+     */
+    public double getCost(GeographicPoint point) {
+        Double cost = reached.get(point);
+        return cost == null ? Double.POSITIVE_INFINITY : cost;
+    }
+
+    /**
+     * @return The convex polygon around the reached points, counterclockwise, see <code>Hull.convex</code>.
+     */
+    public List<GeographicPoint> convexHull() {
+        return Hull.convex(Arrays.asList(points));
+    }
+
+    /**
+     * @param maxEdge Length in km above which an edge of the polygon is dug into, e.g. a few blocks.
+     * @return A tighter polygon around the reached points that follows the gaps of the road network, counterclockwise, see
+     * <code>Hull.concave</code>. It is the convex hull where it cannot dig.
+     */
+    public List<GeographicPoint> concaveHull(double maxEdge) {
+        return Hull.concave(Arrays.asList(points), maxEdge);
+    }
+
+    @Override
+    public String toString() {
+        return "Isochrone [source=" + source + ", budget=" + budget + " " + profile + ", reached=" + points.length + "]";
+    }
+}
@@ -0,0 +1,136 @@
+package roadgraph;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/** A class for timing MapGraph.isochrone with growing budgets against a
+ * search over the whole graph from the same random sources: the points
+ * reached, the time per query and the size of the convex and concave
+ * hulls.  The costs must be the ones of the whole search, every point
+ * it finds within the budget must be reached, and both hulls must hold
+ * every reached point.
+ *
+ * @author dayler
+ *
+ */
+public class IsochroneBenchmarking {
+
+	public static void main(String [] args) {
+
+		// Number of random sources per map.
+		int queries = 200;
+
+		// Budgets in minutes of travel.
+		double[] budgets = { 1, 2, 5, 10 };
+
+		// Edges of the concave hull above this length in km are dug into.
+		double maxEdge = 0.5;
+
+		// Fixed seed so every run starts from the same sources.
+		long seed = 20171119L;
+
+		String[] maps = { "data/maps/new_york.map", "data/maps/san_diego.map" };
+
+		System.out.println("map\tbudget min\treached\tisochrone us\twhole graph us\tconvex corners\tconcave corners\thull us");
+		for (String map : maps) {
+			MapGraph graph = new MapGraph();
+			GraphLoader.loadRoadMap(map, graph);
+			CompactGraph frozen = graph.freeze();
+			Random random = new Random(seed);
+			GeographicPoint[] sources = new GeographicPoint[queries];
+			for (int i = 0; i < queries; i++) {
+				sources[i] = frozen.point(random.nextInt(frozen.numVertices()));
+			}
+
+			// Warm up before timing.
+			for (GeographicPoint source : sources) {
+				graph.isochrone(source, Double.POSITIVE_INFINITY).concaveHull(maxEdge);
+			}
+
+			long start = System.nanoTime();
+			Isochrone[] whole = new Isochrone[queries];
+			for (int i = 0; i < queries; i++) {
+				whole[i] = graph.isochrone(sources[i], Double.POSITIVE_INFINITY);
+			}
+			long wholeNanos = System.nanoTime() - start;
+
+			for (double budget : budgets) {
+				start = System.nanoTime();
+				Isochrone[] bounded = new Isochrone[queries];
+				for (int i = 0; i < queries; i++) {
+					bounded[i] = graph.isochrone(sources[i], budget);
+				}
+				long boundedNanos = System.nanoTime() - start;
+
+				long reached = 0;
+				long convexCorners = 0;
+				long concaveCorners = 0;
+				long hullNanos = 0;
+				for (int i = 0; i < queries; i++) {
+					check(map, whole[i], bounded[i], budget);
+					reached += bounded[i].size();
+					start = System.nanoTime();
+					List<GeographicPoint> convex = bounded[i].convexHull();
+					List<GeographicPoint> concave = bounded[i].concaveHull(maxEdge);
+					hullNanos += System.nanoTime() - start;
+					checkHull(map, "convex", convex, bounded[i]);
+					checkHull(map, "concave", concave, bounded[i]);
+					convexCorners += convex.size();
+					concaveCorners += concave.size();
+				}
+				System.out.println(map + "\t" + budget + "\t" + (reached / queries)
+						+ "\t" + String.format("%.1f", boundedNanos / 1000.0 / queries)
+						+ "\t" + String.format("%.1f", wholeNanos / 1000.0 / queries)
+						+ "\t" + (convexCorners / queries) + "\t" + (concaveCorners / queries)
+						+ "\t" + String.format("%.1f", hullNanos / 1000.0 / queries));
+			}
+		}
+	}
+
+	// The isochrone is the whole search cut at the budget.
+	private static void check(String map, Isochrone whole, Isochrone bounded, double budget) {
+		for (Map.Entry<GeographicPoint, Double> entry : whole.getReached().entrySet()) {
+			boolean within = entry.getValue() <= budget;
+			double cost = bounded.getCost(entry.getKey());
+			if (within ? cost != entry.getValue() : cost != Double.POSITIVE_INFINITY) {
+				throw new IllegalStateException("isochrone of " + budget + " differs on " + map + " at " + entry.getKey() + ": " + cost
+						+ " != " + entry.getValue());
+			}
+		}
+	}
+
+	// Every reached point is inside the polygon or on its border.
+	private static void checkHull(String map, String kind, List<GeographicPoint> hull, Isochrone isochrone) {
+		if (hull.size() < 3) {
+			return;
+		}
+		for (GeographicPoint point : isochrone.getReached().keySet()) {
+			if (!hull.contains(point) && !isInside(hull, point)) {
+				throw new IllegalStateException(kind + " hull misses " + point + " on " + map + " from " + isochrone.getSource());
+			}
+		}
+	}
+
+	// Ray casting, with the points on an edge counted as inside.
+	private static boolean isInside(List<GeographicPoint> polygon, GeographicPoint point) {
+		boolean inside = false;
+		for (int i = 0, j = polygon.size() - 1; i < polygon.size(); j = i++) {
+			GeographicPoint a = polygon.get(i);
+			GeographicPoint b = polygon.get(j);
+			double cross = (b.getY() - a.getY()) * (point.getX() - a.getX()) - (b.getX() - a.getX()) * (point.getY() - a.getY());
+			if (cross == 0 && Math.min(a.getX(), b.getX()) <= point.getX() && point.getX() <= Math.max(a.getX(), b.getX())
+					&& Math.min(a.getY(), b.getY()) <= point.getY() && point.getY() <= Math.max(a.getY(), b.getY())) {
+				return true;
+			}
+			if ((a.getX() > point.getX()) != (b.getX() > point.getX())
+					&& point.getY() < (b.getY() - a.getY()) * (point.getX() - a.getX()) / (b.getX() - a.getX()) + a.getY()) {
+				inside = !inside;
+			}
+		}
+		return inside;
+	}
+}
@@ -0,0 +1,91 @@
+package roadgraph;
+
+import java.util.Random;
+import java.util.function.BiFunction;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/** A class for measuring how much the ALT heuristic cuts the search:
+ * settled nodes per query of Dijkstra, of A* with the great-circle
+ * distance and of A* with an increasing number of landmarks, over the
+ * same random queries.
+ *
+ * @author dayler
+ *
+ */
+public class LandmarkBenchmarking {
+
+	public static void main(String [] args) {
+
+		// Number of random start/goal pairs per map.
+		int queries = 500;
+
+		// Fixed seed so every run times the same queries.
+		long seed = 20171119L;
+
+		// Landmark counts to compare.
+		int[] counts = { 1, 2, 4, 8, 16 };
+
+		String[] maps = { "data/maps/new_york.map", "data/maps/san_diego.map" };
+
+		System.out.println("map\theuristic\tsettled/query\treduction\tms/query\tpreprocess ms");
+		for (String map : maps) {
+			MapGraph graph = new MapGraph();
+			GraphLoader.loadRoadMap(map, graph);
+			GeographicPoint[][] pairs = randomPairs(graph.freeze(), queries, seed);
+
+			// Warm up before timing.
+			run(graph, pairs, (gp, goal) -> 0.0D);
+
+			SearchMetrics metrics = run(graph, pairs, (gp, goal) -> 0.0D);
+			double dijkstra = settled(metrics, queries);
+			print(map, "dijkstra", metrics, dijkstra, queries, 0);
+
+			double minCostPerKm = CostProfile.DURATION.getMinCostPerKm();
+			metrics = run(graph, pairs, (gp, goal) -> gp.distance(goal) * minCostPerKm);
+			print(map, "great-circle", metrics, dijkstra, queries, 0);
+
+			for (int count : counts) {
+				long start = System.nanoTime();
+				Landmarks landmarks = graph.landmarks(count);
+				long preprocess = System.nanoTime() - start;
+				metrics = run(graph, pairs, landmarks);
+				print(map, "landmarks=" + count, metrics, dijkstra, queries, preprocess);
+			}
+		}
+	}
+
+	private static void print(String map, String heuristic, SearchMetrics metrics, double dijkstra, int queries, long preprocess) {
+		double settled = settled(metrics, queries);
+		long micros = metrics.getWallMicros(SearchStats.Algorithm.A_STAR).getSum();
+		System.out.println(map + "\t" + heuristic + "\t" + (long)settled + "\t" + String.format("%.1fx", dijkstra / settled)
+				+ "\t" + (micros / 1000.0 / queries) + "\t" + (preprocess / 1000000));
+	}
+
+	private static double settled(SearchMetrics metrics, int queries) {
+		return (double)metrics.getSettledNodes(SearchStats.Algorithm.A_STAR).getSum() / queries;
+	}
+
+	private static GeographicPoint[][] randomPairs(CompactGraph graph, int queries, long seed) {
+		Random random = new Random(seed);
+		GeographicPoint[][] pairs = new GeographicPoint[queries][2];
+		for (GeographicPoint[] pair : pairs) {
+			pair[0] = graph.point(random.nextInt(graph.numVertices()));
+			pair[1] = graph.point(random.nextInt(graph.numVertices()));
+		}
+		return pairs;
+	}
+
+	// Runs every query through findPath, so a zero moveCost is Dijkstra
+	// counted as A*, and returns the metrics of that run alone.
+	private static SearchMetrics run(MapGraph graph, GeographicPoint[][] pairs,
+			BiFunction<GeographicPoint, GeographicPoint, Double> moveCost) {
+		SearchMetrics metrics = new SearchMetrics();
+		graph.setSearchMetrics(metrics);
+		for (GeographicPoint[] pair : pairs) {
+			graph.findPath(pair[0], pair[1], (x) -> {}, moveCost);
+		}
+		return metrics;
+	}
+}
@@ -0,0 +1,215 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+import geography.DistanceKernel;
+import geography.GeographicPoint;
+
+/**
+ * ALT heuristic (A*, landmarks and triangle inequality). A few landmarks are picked far from each other and the cost from every landmark
+ * to every vertex and back is stored, then by the triangle inequality
+ * <code>d(v, t) >= max(d(L, t) - d(L, v), d(v, L) - d(t, L))</code> for every landmark <code>L</code>. The bound holds for any edge costs,
+ * so unlike the great-circle distance at the top speed limit it stays tight on travel times of slower roads.
+ * <p>
+ * It is a <code>moveCost</code> for <code>MapGraph.findPath</code> and <code>MapGraph.bidirectionalAStarSearch</code>. The bound holds as
+ * long as the costs of the graph it was built from do not go down: closed roads keep it, but once a road is reopened or reset, or gets a
+ * faster <code>MapGraph.setSpeed</code> or a lower <code>MapGraph.setCost</code>, the estimates fall back to the
+ * <code>DistanceHeuristic</code> of the profile until new landmarks are built.
+ *
+ * @author dayler
+ */
+public final class Landmarks implements Heuristic, BiFunction<GeographicPoint, GeographicPoint, Double> {
+
+    private final CompactGraph graph;
+
+    private final CostProfile profile;
+
+    private final int[] landmarks;
+
+    /**
+     * Cost from landmark <code>l</code> to vertex <code>v</code> at <code>from[v * k + l]</code>, vertex major so an estimate reads
+     * consecutive values.
+     */
+    private final double[] from;
+
+    /**
+     * Cost from vertex <code>v</code> to landmark <code>l</code> at <code>to[v * k + l]</code>.
+     */
+    private final double[] to;
+
+    /**
+     * Estimate on the graphs the landmarks do not bound, see <code>bounds</code>.
+     */
+    private final DistanceHeuristic fallback;
+
+    private Landmarks(CompactGraph graph, CostProfile profile, int[] landmarks, double[] from, double[] to) {
+        this.graph = graph;
+        this.profile = profile;
+        this.fallback = new DistanceHeuristic(DistanceKernel.HAVERSINE, profile);
+        this.landmarks = landmarks;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Picks <code>count</code> landmarks by farthest selection: the first one is the vertex farthest from vertex 0, each next one the vertex
+     * farthest from the landmarks picked so far. It runs two full Dijkstra searches per landmark.
+     *
+     * @param graph
+     * @param count Number of landmarks, 16 is plenty for a city.
+     * @param profile Cost of the edges, the estimates only bound the queries with the same profile.
+     * @return The landmarks of <code>graph</code>.
+     */
+    public static Landmarks of(CompactGraph graph, int count, CostProfile profile) {
+        Objects.requireNonNull(graph, "graph");
+        Objects.requireNonNull(profile, "profile");
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be positive: " + count);
+        }
+        int numVertices = graph.numVertices();
+        int k = Math.min(count, numVertices);
+        int[] landmarks = new int[k];
+        double[] from = new double[numVertices * k];
+        double[] to = new double[numVertices * k];
+        if (k == 0) {
+            return new Landmarks(graph, profile, landmarks, from, to);
+        }
+        CostTable weights = graph.costs(profile);
+        SearchContext context = new SearchContext(numVertices);
+        // cost to the closest landmark of every vertex, in either direction, to pick the next one.
+        double[] nearest = new double[numVertices];
+        shortestPaths(graph, weights, context, 0, false);
+        for (int v = 0; v < numVertices; v++) {
+            nearest[v] = context.distance(v);
+        }
+        int landmark = farthest(nearest);
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        for (int l = 0; l < k; l++) {
+            landmarks[l] = landmark;
+            shortestPaths(graph, weights, context, landmark, false);
+            for (int v = 0; v < numVertices; v++) {
+                from[v * k + l] = context.distance(v);
+            }
+            shortestPaths(graph, weights, context, landmark, true);
+            for (int v = 0; v < numVertices; v++) {
+                to[v * k + l] = context.distance(v);
+                nearest[v] = Math.min(nearest[v], Math.min(from[v * k + l], to[v * k + l]));
+            }
+            landmark = farthest(nearest);
+        }
+        return new Landmarks(graph, profile, landmarks, from, to);
+    }
+
+    /**
+     * Full Dijkstra from <code>source</code>, over the reverse edges if <code>reverse</code>, so it gives the costs to the source.
+     */
+    private static void shortestPaths(CompactGraph graph, CostTable weights, SearchContext context, int source, boolean reverse) {
+        context.reset();
+        IndexedMinHeap heap = context.heap;
+        context.update(source, 0, source);
+        heap.offer(source, 0);
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            context.settle(current);
+            int first = reverse ? graph.firstReverseEdge(current) : graph.firstEdge(current);
+            int end = reverse ? graph.endReverseEdge(current) : graph.endEdge(current);
+            for (int i = first; i < end; i++) {
+                int e = reverse ? graph.reverseEdge(i) : i;
+                int next = reverse ? graph.reverseSource(i) : graph.target(e);
+                double tmp = context.distance(current) + weights.get(e);
+                if (tmp < context.distance(next)) {
+                    context.update(next, tmp, current);
+                    heap.offer(next, tmp);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The vertex with the largest finite <code>distance</code>, the vertices no landmark reaches or is reached from are skipped.
+     */
+    private static int farthest(double[] distance) {
+        int best = 0;
+        double bestDistance = -1;
+        for (int v = 0; v < distance.length; v++) {
+            if (distance[v] > bestDistance && distance[v] != Double.POSITIVE_INFINITY) {
+                best = v;
+                bestDistance = distance[v];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return The number of landmarks.
+     */
+    public int size() {
+        return landmarks.length;
+    }
+
+    /**
+     * @return The cost the landmarks were built for.
+     */
+    public CostProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return The landmark vertices.
+     */
+    public GeographicPoint[] getLandmarks() {
+        GeographicPoint[] points = new GeographicPoint[landmarks.length];
+        for (int l = 0; l < landmarks.length; l++) {
+            points[l] = graph.point(landmarks[l]);
+        }
+        return points;
+    }
+
+    /**
+     * @param graph
+     * @return true if no cost of <code>graph</code> is lower than in the graph the landmarks were built from.
+     */
+    private boolean bounds(CompactGraph graph) {
+        long built = this.graph.version();
+        // versions before the build may have had lower costs, a rebuilt graph may have new edges.
+        return graph.sameVertices(this.graph) && graph.version() >= built && graph.decreaseVersion() <= built;
+    }
+
+    @Override
+    public double estimate(CompactGraph graph, int v, int target) {
+        if (!bounds(graph)) {
+            return fallback.estimate(graph, v, target);
+        }
+        int k = landmarks.length;
+        int vk = v * k;
+        int tk = target * k;
+        double best = 0;
+        for (int l = 0; l < k; l++) {
+            // unreachable pairs give no bound.
+            double forward = from[tk + l] - from[vk + l];
+            if (forward > best && forward != Double.POSITIVE_INFINITY) {
+                best = forward;
+            }
+            double backward = to[vk + l] - to[tk + l];
+            if (backward > best && backward != Double.POSITIVE_INFINITY) {
+                best = backward;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return The estimate between two points on the graph the landmarks were built from, 0 if any of them is not in it.
+     */
+    @Override
+    public Double apply(GeographicPoint point, GeographicPoint goal) {
+        int v = graph.idOf(point);
+        int target = graph.idOf(goal);
+        return v < 0 || target < 0 ? 0.0D : estimate(graph, v, target);
+    }
+}
@@ -3,8 +3,12 @@
  */
 package roadgraph;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
+import geography.GeographicPoint;
+
 /**
  * Represent an edge of vertex point.
  *  
@@ -34,6 +38,11 @@ public class MapEdge {
     
     private WeightBuilder builder;
     
+    /**
+     * Latitude and longitude of the intermediate points of the road, interleaved.
+     */
+    private double[] geometry;
+    
     /**
      * MapEdge's Constructor.
      * @param toPoint
@@ -42,6 +51,19 @@ public class MapEdge {
      * @param type
      */
     public MapEdge(GeographicPointNode toPoint, double value, String name, String type, WeightBuilder builder) {
+        this(toPoint, value, name, type, builder, new double[0]);
+    }
+    
+    /**
+     * MapEdge's Constructor.
+     * @param toPoint
+     * @param value
+     * @param name
+     * @param type
+     * @param builder
+     * @param geometry Latitude and longitude of the points the road goes through between the two vertices, interleaved.
+     */
+    MapEdge(GeographicPointNode toPoint, double value, String name, String type, WeightBuilder builder, double[] geometry) {
         Objects.requireNonNull(toPoint);
         Objects.requireNonNull(builder, "builder");
         //  
@@ -50,6 +72,7 @@ public class MapEdge {
         this.name = name;
         this.type = type;
         this.builder = builder;
+        this.geometry = geometry;
     }
     
     public GeographicPointNode getToPoint() {
@@ -64,10 +87,35 @@ public class MapEdge {
         return type;
     }
     
+    /**
+     * @return The raw value of the edge (its length in km), before the <code>WeightBuilder</code> is applied.
+     */
+    public double getLength() {
+        return value;
+    }
+    
     public double getValue() {
         return builder.getValue(value);
     }
     
+    /**
+     * @return The points the road goes through between the two vertices.
+     */
+    public List<GeographicPoint> getGeometry() {
+        List<GeographicPoint> points = new ArrayList<>(geometry.length / 2);
+        for (int i = 0; i < geometry.length; i += 2) {
+            points.add(new GeographicPoint(geometry[i], geometry[i + 1]));
+        }
+        return points;
+    }
+    
+    /**
+     * @return The interleaved geometry, must not be modified.
+     */
+    double[] geometry() {
+        return geometry;
+    }
+    
     @Override
     public String toString() {
         return name + "[" + toPoint + "]";
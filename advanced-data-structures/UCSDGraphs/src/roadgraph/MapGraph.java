@@ -7,23 +7,26 @@
  */
 package roadgraph;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import geography.BoundingBox;
+import geography.DistanceKernel;
 import geography.GeographicPoint;
 import util.GraphLoader;
 
@@ -36,9 +39,101 @@ import util.GraphLoader;
 public class MapGraph {
 
 	/**
-	 * Vertices registered in the graph.
+	 * Canonical vertex index, interns every registered point to its vertex id so a lookup is O(1).
 	 */
-    private Map<GeographicPointNode, Set<MapEdge>> vertices = new HashMap<>();
+    private Map<GeographicPoint, Integer> index;
+
+    /**
+     * Vertices registered in the graph, by vertex id. <code>null</code> with <code>index</code> and <code>edges</code> until a graph created
+     * from a <code>CompactGraph</code> is thawed.
+     */
+    private List<GeographicPointNode> vertices;
+
+    /**
+     * Outgoing edges of every vertex, by vertex id.
+     */
+    private List<List<MapEdge>> edges;
+
+    /**
+     * Number of edges registered in the graph.
+     */
+    private int numEdges;
+
+    /**
+     * Frozen CSR form of <code>edges</code> used by the searches, <code>null</code> while it has to be rebuilt.
+     */
+    private volatile CompactGraph frozen;
+
+    /**
+     * Live changes of the edge costs by <code>edgeKey</code>, applied again to every rebuilt frozen graph. Guarded by <code>this</code>.
+     */
+    private final Map<Long, EdgeOverride> overrides = new HashMap<>();
+
+    /**
+     * Version of the last frozen graph. Guarded by <code>this</code>.
+     */
+    private long version;
+
+    /**
+     * Registry the stats of every query are published to.
+     */
+    private volatile SearchMetrics metrics = SearchMetrics.global();
+
+    /**
+     * Create a new empty MapGraph
+     */
+    public MapGraph() {
+        index = new HashMap<>();
+        vertices = new ArrayList<>();
+        edges = new ArrayList<>();
+    }
+
+    /**
+     * Create a MapGraph over a frozen graph, e.g. one opened with <code>CompactGraph.load</code>. The searches run on <code>graph</code>
+     * directly, the editable vertices and edges are only rebuilt the first time the graph is changed.
+     * 
+     * @param graph
+     */
+    public MapGraph(CompactGraph graph) {
+        frozen = Objects.requireNonNull(graph, "graph");
+        numEdges = graph.numEdges();
+        version = graph.version();
+    }
+
+    /**
+     * Rebuilds the editable vertices and edges from the frozen graph, once.
+     */
+    private synchronized void thaw() {
+        if (vertices != null) {
+            return;
+        }
+        CompactGraph graph = frozen;
+        int numVertices = graph.numVertices();
+        Map<GeographicPoint, Integer> ids = new HashMap<>(numVertices * 4 / 3 + 1);
+        List<GeographicPointNode> points = new ArrayList<>(numVertices);
+        for (int v = 0; v < numVertices; v++) {
+            GeographicPointNode node = GeographicPointNode.of(graph.point(v));
+            ids.put(node, v);
+            points.add(node);
+        }
+        List<List<MapEdge>> outgoing = new ArrayList<>(numVertices);
+        for (int v = 0; v < numVertices; v++) {
+            List<MapEdge> list = new ArrayList<>(Math.max(4, graph.endEdge(v) - graph.firstEdge(v)));
+            for (int e = graph.firstEdge(v), end = graph.endEdge(v); e < end; e++) {
+                double[] geometry = new double[2 * (graph.endGeometryPoint(e) - graph.firstGeometryPoint(e))];
+                for (int i = graph.firstGeometryPoint(e), j = 0; i < graph.endGeometryPoint(e); i++) {
+                    geometry[j++] = graph.geometryLat(i);
+                    geometry[j++] = graph.geometryLon(i);
+                }
+                list.add(new MapEdge(points.get(graph.target(e)), graph.length(e), graph.roadName(e), graph.roadType(e),
+                                     new ByDurationBuilder(graph.roadType(e)), geometry));
+            }
+            outgoing.add(list);
+        }
+        index = ids;
+        edges = outgoing;
+        vertices = points;
+    }
 
     /**
      * Get the number of vertices (road intersections) in the graph
@@ -46,7 +141,7 @@ public class MapGraph {
      * @return The number of vertices in the graph.
      */
     public int getNumVertices() {
-        return vertices.size();
+        return vertices == null ? frozen.numVertices() : vertices.size();
     }
 
     /**
@@ -55,7 +150,10 @@ public class MapGraph {
      * @return The vertices in this graph as GeographicPoints
      */
     public Set<GeographicPoint> getVertices() {
-        return Collections.unmodifiableSet(vertices.keySet());
+        if (vertices == null) {
+            return frozen.points();
+        }
+        return Collections.unmodifiableSet(index.keySet());
     }
 
     /**
@@ -64,7 +162,7 @@ public class MapGraph {
      * @return The number of edges in the graph.
      */
     public int getNumEdges() {
-        return (int)vertices.values().stream().flatMap(Set::stream).collect(Collectors.toSet()).size();
+        return numEdges;
     }
 
     /**
@@ -74,10 +172,22 @@ public class MapGraph {
      * @param location The location of the intersection
      * @return true if a node was added, false if it was not (the node was already in the graph, or the parameter is null).
      */
-    public boolean addVertex(GeographicPoint location) {
+    public synchronized boolean addVertex(GeographicPoint location) {
         Objects.requireNonNull(location);
+        if (vertices == null) {
+            thaw();
+        }
+        if (index.containsKey(location)) {
+            return false;
+        }
         // 
-        return vertices.putIfAbsent(GeographicPointNode.of(location), new HashSet<>()) == null;
+        GeographicPointNode node = GeographicPointNode.of(location);
+        index.put(node, vertices.size());
+        vertices.add(node);
+        edges.add(new ArrayList<>(4));
+        // rebuilt by the next search, once the vertex is in.
+        frozen = null;
+        return true;
     }
 
     /**
@@ -92,31 +202,398 @@ public class MapGraph {
      * length is less than 0.
      */
     public void addEdge(GeographicPoint from, GeographicPoint to, String roadName, String roadType, double length) throws IllegalArgumentException {
+        addEdge(from, to, roadName, roadType, length, Collections.emptyList());
+    }
+
+    /**
+     * Adds a directed edge to the graph from pt1 to pt2, with the geometry of its road. Precondition: Both GeographicPoints have already been
+     * added to the graph
+     * 
+     * @param from The starting point of the edge
+     * @param to The ending point of the edge
+     * @param roadName The name of the road
+     * @param roadType The type of the road
+     * @param length The length of the road, in km
+     * @param geometry The points the road goes through between <code>from</code> and <code>to</code>, in order.
+     * @throws IllegalArgumentException If the points have not already been added as nodes to the graph, if any of the arguments is null, or if the
+     * length is less than 0.
+     */
+    public synchronized void addEdge(GeographicPoint from, GeographicPoint to, String roadName, String roadType, double length,
+                                     List<GeographicPoint> geometry) throws IllegalArgumentException {
         Optional.ofNullable(from).orElseThrow(() -> new IllegalArgumentException("nul from point."));
         Optional.ofNullable(to).orElseThrow(() -> new IllegalArgumentException("nul to point."));
         Optional.ofNullable(roadName).orElseThrow(() -> new IllegalArgumentException("nul roadName."));
         Optional.ofNullable(roadType).orElseThrow(() -> new IllegalArgumentException("nul roadType."));
+        Optional.ofNullable(geometry).orElseThrow(() -> new IllegalArgumentException("nul geometry."));
         if (Double.compare(length, 0.0D) < 0) {
         	    // safe way to check negative length.
             throw new IllegalArgumentException("negative length.");
         }
+        if (vertices == null) {
+            thaw();
+        }
         // check if "from" and "to" have been register.
-        checkIfPointIsInGraph(from);
+        int fromId = checkIfPointIsInGraph(from);
+        GeographicPointNode toPoint = vertices.get(checkIfPointIsInGraph(to));
         // Add new edge for "from".
-        vertices.get(from).add(new MapEdge(checkIfPointIsInGraph(to), length, roadName, roadType, new ByDurationBuilder(roadType)));
-        
+        double[] points = new double[2 * geometry.size()];
+        int i = 0;
+        for (GeographicPoint point : geometry) {
+            points[i++] = point.getX();
+            points[i++] = point.getY();
+        }
+        edges.get(fromId).add(new MapEdge(toPoint, length, roadName, roadType, new ByDurationBuilder(roadType), points));
+        numEdges++;
+        frozen = null;
     }
     
     /**
-     * Checks if <code>GeographicPoint</code> has been register in the <code>vertices</code> map,
+     * @return The registry the <code>SearchStats</code> of every query on this graph are published to.
+     */
+    public SearchMetrics getSearchMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics Registry for the <code>SearchStats</code> of the next queries on this graph.
+     */
+    public void setSearchMetrics(SearchMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+    }
+
+    /**
+     * Returns the immutable CSR form of this graph, building it if the graph changed since the last call. All the searches run against it,
+     * keeping their tentative distances in a per-thread <code>SearchContext</code>, so concurrent queries on a loaded graph are safe. A query
+     * reads it once and runs on that version to the end, whatever <code>closeRoad</code> or <code>setSpeed</code> change meanwhile.
+     * It is built under the same lock as <code>addVertex</code> and <code>addEdge</code>, so it never sees half of a change.
+     * 
+     * @return The frozen graph.
+     */
+    public CompactGraph freeze() {
+        CompactGraph graph = frozen;
+        if (graph == null) {
+            synchronized (this) {
+                graph = frozen;
+                if (graph == null) {
+                    graph = buildCompactGraph();
+                    frozen = graph;
+                }
+            }
+        }
+        return graph;
+    }
+
+    private CompactGraph buildCompactGraph() {
+        int numVertices = vertices.size();
+        double[] lat = new double[numVertices];
+        double[] lon = new double[numVertices];
+        int[] offsets = new int[numVertices + 1];
+        for (int id = 0; id < numVertices; id++) {
+            GeographicPointNode point = vertices.get(id);
+            lat[id] = point.getX();
+            lon[id] = point.getY();
+            offsets[id + 1] = offsets[id] + edges.get(id).size();
+        }
+        int[] targets = new int[numEdges];
+        double[] lengths = new double[numEdges];
+        int[] nameIds = new int[numEdges];
+        int[] typeIds = new int[numEdges];
+        int[] geometryOffsets = new int[numEdges + 1];
+        Map<String, Integer> names = new HashMap<>();
+        Map<String, Integer> types = new HashMap<>();
+        int e = 0;
+        for (List<MapEdge> outgoing : edges) {
+            for (MapEdge edge : outgoing) {
+                targets[e] = index.get(edge.getToPoint());
+                lengths[e] = edge.getLength();
+                nameIds[e] = names.computeIfAbsent(edge.getName(), key -> names.size());
+                typeIds[e] = types.computeIfAbsent(edge.getType(), key -> types.size());
+                geometryOffsets[e + 1] = geometryOffsets[e] + edge.geometry().length / 2;
+                e++;
+            }
+        }
+        double[] geometryLat = new double[geometryOffsets[numEdges]];
+        double[] geometryLon = new double[geometryOffsets[numEdges]];
+        int i = 0;
+        for (List<MapEdge> outgoing : edges) {
+            for (MapEdge edge : outgoing) {
+                double[] geometry = edge.geometry();
+                for (int j = 0; j < geometry.length; j += 2, i++) {
+                    geometryLat[i] = geometry[j];
+                    geometryLon[i] = geometry[j + 1];
+                }
+            }
+        }
+        return withOverrides(new CompactGraph(lat, lon, offsets, targets, lengths, nameIds, typeIds, toTable(names), toTable(types),
+                                                  geometryOffsets, geometryLat, geometryLon));
+    }
+
+    /**
+     * @return The next version of a rebuilt graph, with the costs of <code>overrides</code>.
+     */
+    private CompactGraph withOverrides(CompactGraph graph) {
+        // the edges keep their position in the list of their source, so the overrides still find them.
+        int[] changed = new int[overrides.size()];
+        double[][] costs = new double[CostProfile.values().length][overrides.size()];
+        int i = 0;
+        for (Map.Entry<Long, EdgeOverride> entry : overrides.entrySet()) {
+            long key = entry.getKey();
+            int edge = graph.firstEdge((int) (key >>> 32)) + (int) key;
+            changed[i] = edge;
+            for (CostProfile profile : CostProfile.values()) {
+                costs[profile.ordinal()][i] = entry.getValue().cost(profile, graph.baseCost(profile, edge));
+            }
+            i++;
+        }
+        return graph.withCosts(changed, costs, ++version);
+    }
+
+    private static String[] toTable(Map<String, Integer> interned) {
+        String[] table = new String[interned.size()];
+        interned.forEach((value, id) -> table[id] = value);
+        return table;
+    }
+
+    /**
+     * Preprocesses this graph into a <code>ContractionHierarchy</code>, which answers <code>dijkstra</code> queries without scanning the whole
+     * graph. The hierarchy is a snapshot, it does not see the vertices and edges added afterwards.
+     * 
+     * @return The contraction hierarchy of the current graph, by travel time.
+     */
+    public ContractionHierarchy contract() {
+        return contract(CostProfile.DURATION);
+    }
+
+    /**
+     * @param profile Cost the hierarchy is built for.
+     * @return The contraction hierarchy of the current graph.
+     */
+    public ContractionHierarchy contract(CostProfile profile) {
+        return ContractionHierarchy.of(freeze(), profile);
+    }
+
+    /**
+     * Preprocesses the landmarks of the ALT heuristic, pass them as the <code>moveCost</code> of <code>findPath</code>. Like the contraction
+     * hierarchy they are a snapshot of the current graph.
+     *
+     * @param count Number of landmarks.
+     * @return The landmarks of the current graph, by travel time.
+     */
+    public Landmarks landmarks(int count) {
+        return landmarks(count, CostProfile.DURATION);
+    }
+
+    /**
+     * @param count Number of landmarks.
+     * @param profile Cost the landmarks are built for, they only bound the queries with the same profile.
+     * @return The landmarks of the current graph.
+     */
+    public Landmarks landmarks(int count, CostProfile profile) {
+        return Landmarks.of(freeze(), count, profile);
+    }
+
+    /**
+     * Snaps a location, e.g. a click on the map, to the closest intersection. It walks the k-d tree of the frozen graph, built with it, so it
+     * does not scan the vertices.
+     * 
+     * @param point The location
+     * @return The vertex closest to <code>point</code> by great-circle distance, null if the graph is empty.
+     */
+    public GeographicPoint nearestVertex(GeographicPoint point) {
+        Optional.ofNullable(point).orElseThrow(() -> new IllegalArgumentException("nul point."));
+        CompactGraph graph = freeze();
+        int v = graph.spatialIndex().nearest(point.getX(), point.getY());
+        return v < 0 ? null : graph.point(v);
+    }
+
+    /**
+     * @param point The location
+     * @param k The number of vertices
+     * @return The <code>k</code> vertices closest to <code>point</code>, closest first, all of them if the graph has fewer.
+     */
+    public List<GeographicPoint> kNearest(GeographicPoint point, int k) {
+        Optional.ofNullable(point).orElseThrow(() -> new IllegalArgumentException("nul point."));
+        CompactGraph graph = freeze();
+        return points(graph, graph.spatialIndex().kNearest(point.getX(), point.getY(), k));
+    }
+
+    /**
+     * @param bbox The area
+     * @return The vertices inside <code>bbox</code> or on its border, in no particular order.
+     */
+    public List<GeographicPoint> verticesWithin(BoundingBox bbox) {
+        Optional.ofNullable(bbox).orElseThrow(() -> new IllegalArgumentException("nul bbox."));
+        CompactGraph graph = freeze();
+        return points(graph, graph.spatialIndex().within(bbox));
+    }
+
+    private static List<GeographicPoint> points(CompactGraph graph, int[] ids) {
+        List<GeographicPoint> points = new ArrayList<>(ids.length);
+        for (int v : ids) {
+            points.add(graph.point(v));
+        }
+        return points;
+    }
+
+    /**
+     * @return The version of the graph the next query runs on. It changes on every road closed, reopened or with a new cost, and on the first
+     * query after vertices or edges are added.
+     */
+    public long getVersion() {
+        return freeze().version();
+    }
+
+    /**
+     * Closes the road from <code>from</code> to <code>to</code>, no path goes through it until it is reopened. The queries already running
+     * keep the version of the graph they started on, the next ones see the road closed. It only copies the cost pages of the road, there is
+     * no rebuild.
+     * 
+     * @param from The starting point of the road
+     * @param to The ending point of the road
+     * @throws IllegalArgumentException If any of the points is null or not in the graph, or there is no edge between them.
+     */
+    public void closeRoad(GeographicPoint from, GeographicPoint to) throws IllegalArgumentException {
+        override(from, to, (graph, e, current) -> current.withClosed(true));
+    }
+
+    /**
+     * Reopens a road closed by <code>closeRoad</code>, with the costs it had before.
+     * 
+     * @param from The starting point of the road
+     * @param to The ending point of the road
+     * @throws IllegalArgumentException If any of the points is null or not in the graph, or there is no edge between them.
+     */
+    public void reopenRoad(GeographicPoint from, GeographicPoint to) throws IllegalArgumentException {
+        override(from, to, (graph, e, current) -> current.withClosed(false));
+    }
+
+    /**
+     * Overrides the speed of the road from <code>from</code> to <code>to</code>, e.g. for works or a traffic jam. Only the travel time, the
+     * <code>CostProfile.DURATION</code> cost, changes.
+     * 
+     * @param from The starting point of the road
+     * @param to The ending point of the road
+     * @param kmPerHour The new speed, at most the fastest <code>SpeedLimit</code> so A* stays exact.
+     * @throws IllegalArgumentException If any of the points is null or not in the graph, there is no edge between them, or the speed is out
+     * of range.
+     */
+    public void setSpeed(GeographicPoint from, GeographicPoint to, double kmPerHour) throws IllegalArgumentException {
+        double maxSpeed = 0;
+        for (SpeedLimit speedLimit : SpeedLimit.values()) {
+            maxSpeed = Math.max(maxSpeed, speedLimit.getValue());
+        }
+        if (!(kmPerHour > 0) || kmPerHour > maxSpeed) {
+            throw new IllegalArgumentException("speed out of (0, " + maxSpeed + "]: " + kmPerHour);
+        }
+        override(from, to, (graph, e, current) -> current.withCost(CostProfile.DURATION, graph.length(e) * 60 / kmPerHour));
+    }
+
+    /**
+     * Overrides the cost of the road from <code>from</code> to <code>to</code> under <code>profile</code>.
+     * 
+     * @param from The starting point of the road
+     * @param to The ending point of the road
+     * @param profile
+     * @param cost The new cost, at least the length of the road times <code>profile.getMinCostPerKm()</code> so A* stays exact.
+     * @throws IllegalArgumentException If any of the points is null or not in the graph, there is no edge between them, or the cost is out
+     * of range.
+     */
+    public void setCost(GeographicPoint from, GeographicPoint to, CostProfile profile, double cost) throws IllegalArgumentException {
+        Optional.ofNullable(profile).orElseThrow(() -> new IllegalArgumentException("nul profile."));
+        double minCostPerKm = profile.getMinCostPerKm();
+        override(from, to, (graph, e, current) -> {
+            if (!(cost >= graph.length(e) * minCostPerKm)) {
+                throw new IllegalArgumentException("cost below the " + profile.getLabel() + " lower bound of the road: " + cost);
+            }
+            return current.withCost(profile, cost);
+        });
+    }
+
+    /**
+     * Drops every change made to the road from <code>from</code> to <code>to</code>, it gets back the costs of its length and road type.
+     * 
+     * @param from The starting point of the road
+     * @param to The ending point of the road
+     * @throws IllegalArgumentException If any of the points is null or not in the graph, or there is no edge between them.
+     */
+    public void resetRoad(GeographicPoint from, GeographicPoint to) throws IllegalArgumentException {
+        override(from, to, (graph, e, current) -> EdgeOverride.NONE);
+    }
+
+    /**
+     * Change of the override of an edge.
+     */
+    @FunctionalInterface
+    private interface EdgeChange {
+        EdgeOverride apply(CompactGraph graph, int e, EdgeOverride current);
+    }
+
+    /**
+     * Applies <code>change</code> to every edge from <code>from</code> to <code>to</code> and publishes a new version of the frozen graph
+     * with their costs, nothing changes if <code>change</code> throws.
+     */
+    private synchronized void override(GeographicPoint from, GeographicPoint to, EdgeChange change) {
+        Optional.ofNullable(from).orElseThrow(() -> new IllegalArgumentException("nul from point."));
+        Optional.ofNullable(to).orElseThrow(() -> new IllegalArgumentException("nul to point."));
+        CompactGraph graph = freeze();
+        int source = graph.idOf(from);
+        int target = graph.idOf(to);
+        if (source < 0 || target < 0) {
+            throw new IllegalArgumentException("The point:" + (source < 0 ? from : to) + " is not in the Graph.");
+        }
+        int first = graph.firstEdge(source);
+        int end = graph.endEdge(source);
+        int count = 0;
+        for (int e = first; e < end; e++) {
+            if (graph.target(e) == target) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("There is no road from " + from + " to " + to + ".");
+        }
+        int[] changed = new int[count];
+        EdgeOverride[] changes = new EdgeOverride[count];
+        double[][] costs = new double[CostProfile.values().length][count];
+        int i = 0;
+        for (int e = first; e < end; e++) {
+            if (graph.target(e) == target) {
+                changed[i] = e;
+                changes[i] = change.apply(graph, e, overrides.getOrDefault(edgeKey(source, e - first), EdgeOverride.NONE));
+                for (CostProfile profile : CostProfile.values()) {
+                    costs[profile.ordinal()][i] = changes[i].cost(profile, graph.baseCost(profile, e));
+                }
+                i++;
+            }
+        }
+        for (i = 0; i < count; i++) {
+            long key = edgeKey(source, changed[i] - first);
+            if (changes[i].isEmpty()) {
+                overrides.remove(key);
+            } else {
+                overrides.put(key, changes[i]);
+            }
+        }
+        frozen = graph.withCosts(changed, costs, ++version);
+    }
+
+    /**
+     * @return The key of the override of the edge at <code>position</code> in the outgoing edges of <code>source</code>, which does not
+     * change when the frozen graph is rebuilt.
+     */
+    private static long edgeKey(int source, int position) {
+        return ((long) source << 32) | position;
+    }
+
+    /**
+     * Checks if <code>GeographicPoint</code> has been register in the <code>index</code> map,
      * if it is not registered throws an <code>IllegalArgumentException</code>.
      * @param point
+     * @return The vertex id of the point.
      */
-    private GeographicPointNode checkIfPointIsInGraph(GeographicPoint point) {
-        return vertices.keySet().stream()
-                                .filter(key -> key.equals(point))
-                                .findAny()
-                                .orElseThrow(() -> new IllegalArgumentException("The point:" + point.toString() + " is not in the Graph."));
+    private int checkIfPointIsInGraph(GeographicPoint point) {
+        return Optional.ofNullable(index.get(point))
+                       .orElseThrow(() -> new IllegalArgumentException("The point:" + point.toString() + " is not in the Graph."));
     }
     
     /**
@@ -136,64 +613,223 @@ public class MapGraph {
      * @param start The starting location
      * @param goal The goal location
      * @param nodeSearched A hook for visualization. See assignment instructions for how to use it.
-     * @return The list of intersections that form the shortest (unweighted) path from start to goal (including both start and goal).
+     * @return The list of intersections that form the shortest (unweighted) path from start to goal (including both start and goal), or
+     * <code>null</code> if there is no such path. Closed roads are not taken.
      */
     public List<GeographicPoint> bfs(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched) {
         Optional.ofNullable(start).orElseThrow(() -> new IllegalArgumentException("nul start."));
-        Optional.ofNullable(start).orElseThrow(() -> new IllegalArgumentException("nul goal."));
-        Optional.ofNullable(start).orElseThrow(() -> new IllegalArgumentException("nul nodeSearched."));
+        Optional.ofNullable(goal).orElseThrow(() -> new IllegalArgumentException("nul goal."));
+        Optional.ofNullable(nodeSearched).orElseThrow(() -> new IllegalArgumentException("nul nodeSearched."));
         // 
         if (start.equals(goal)) {
             // start are the same o goal.
             return Arrays.asList(start);
         }
-        // BFS implementation.
-        Map<GeographicPointNode, GeographicPointNode>parent = new HashMap<>();
-        Queue<GeographicPointNode>queue = new LinkedList<>(); // point to be visited.
-        queue.add(GeographicPointNode.of(start));
-        Set<GeographicPointNode>visited = new HashSet<>(); // have been visit points.
-        do {
-            GeographicPointNode current = queue.poll();
-            // look for vizualization.
-            nodeSearched.accept(current);
-            if (current.equals(goal)) {
-                // was find element.
-                break;
-            }
-            // goes through all neighbors nodes. 
-            for (MapEdge edge : vertices.get(current)) {
-                if (visited.contains(edge.getToPoint())) {
-                    // do nothing.
-                    continue;
+        return bfs(start, goal, nodeSearched, MapGraph::buildPath);
+    }
+
+    private <T> T bfs(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched, PathBuilder<T> builder) {
+        CompactGraph graph = freeze();
+        int source = graph.idOf(start);
+        int target = graph.idOf(goal);
+        if (source < 0 || target < 0) {
+            return null;
+        }
+        // BFS implementation, closed roads cost infinity in every profile.
+        CostTable weights = graph.costs(CostProfile.LENGTH);
+        long started = System.nanoTime();
+        SearchContext context = graph.acquire();
+        try {
+            int[] queue = context.queue; // point to be visited, each vertex is enqueued at most once.
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = source;
+            context.update(source, 0, source); // have been visit points.
+            context.heapPushes++;
+            context.peakFrontier = 1;
+            while (head < tail) {
+                int current = queue[head++];
+                context.settledNodes++;
+                // look for vizualization.
+                nodeSearched.accept(graph.point(current));
+                if (current == target) {
+                    // was find element.
+                    break;
+                }
+                // goes through all neighbors nodes. 
+                for (int e = graph.firstEdge(current), end = graph.endEdge(current); e < end; e++) {
+                    int next = graph.target(e);
+                    context.relaxedEdges++;
+                    if (context.isReached(next) || weights.get(e) == Double.POSITIVE_INFINITY) {
+                        // do nothing.
+                        continue;
+                    }
+                    // visit vertex.
+                    context.update(next, context.distance(current) + 1, current, e);
+                    queue[tail++] = next;
+                    context.heapPushes++;
+                    context.peakFrontier = Math.max(context.peakFrontier, tail - head);
                 }
-                // visit vertex.
-                visited.add(edge.getToPoint());
-                parent.put(edge.getToPoint(), current);
-                queue.offer(edge.getToPoint());
             }
-        } while (!queue.isEmpty());
-        // build path.
-        return parent.isEmpty() ? Collections.emptyList() : buildPath(parent, start, goal);
+            metrics.record(context.stats(SearchStats.Algorithm.BFS, System.nanoTime() - started));
+            // build path.
+            return builder.build(graph, context, source, target);
+        } finally {
+            graph.release(context);
+        }
     }
     
     /**
-     * @param parent
-     * @param start
-     * @param goal
-     * @return Builds the path to get the "goal" point based on the BFS implementation.
+     * @param graph
+     * @param context State of the search that reached <code>target</code>.
+     * @param source
+     * @param target
+     * @return Builds the path to get the "target" vertex, or <code>null</code> if it was not reached.
      */
-    private static List<GeographicPoint> buildPath(Map<GeographicPointNode, GeographicPointNode>parent, GeographicPoint start, GeographicPoint goal) {
-        LinkedList<GeographicPoint>path = new LinkedList<>();
-        GeographicPoint current = goal;
-        // while (!current.equals(start)) {
-        while (!start.equals(current)) {
-            path.addFirst(current);
-            current = parent.get(current);
+    private static List<GeographicPoint> buildPath(CompactGraph graph, SearchContext context, int source, int target) {
+        if (!context.isReached(target)) {
+            return null;
+        }
+        List<GeographicPoint>path = new ArrayList<>();
+        for (int current = target; current != source; current = context.parent(current)) {
+            path.add(graph.point(current));
         }
         // add start.
-        path.addFirst(start);
+        path.add(graph.point(source));
+        Collections.reverse(path);
         return path;
     }
+
+    /**
+     * @param graph
+     * @param context State of the search that reached <code>target</code>, with the parent edges.
+     * @param profile
+     * @param source
+     * @param target
+     * @return The route along the parent edges to <code>target</code>, or <code>null</code> if it was not reached.
+     */
+    private static Route buildRoute(CompactGraph graph, SearchContext context, CostProfile profile, int source, int target) {
+        if (!context.isReached(target)) {
+            return null;
+        }
+        int count = 0;
+        for (int current = target; current != source; current = context.parent(current)) {
+            count++;
+        }
+        int[] edges = new int[count];
+        for (int current = target; current != source; current = context.parent(current)) {
+            edges[--count] = context.parentEdge(current);
+        }
+        return Route.of(graph, profile, source, edges);
+    }
+
+    /**
+     * Find the route from start to goal using A-Star search, by travel time.
+     * 
+     * @param start The starting location
+     * @param goal The goal location
+     * @return The route, or <code>null</code> if there is no path or a location is not an intersection of the graph.
+     */
+    public Route route(GeographicPoint start, GeographicPoint goal) {
+        return route(start, goal, SearchStats.Algorithm.A_STAR, CostProfile.DURATION, (x) -> {});
+    }
+
+    /**
+     * Find the route from start to goal, with its cost, length, road names and geometry, taken straight from the edges the search chose.
+     * 
+     * @param start The starting location
+     * @param goal The goal location
+     * @param algorithm <code>BFS</code>, <code>DIJKSTRA</code> or <code>A_STAR</code>.
+     * @param profile Cost to minimize, BFS minimizes the number of edges and only totals it.
+     * @param nodeSearched A hook for visualization.
+     * @return The route, or <code>null</code> if there is no path or a location is not an intersection of the graph.
+     * @throws IllegalArgumentException If the algorithm is not one of those.
+     */
+    public Route route(GeographicPoint start, GeographicPoint goal, SearchStats.Algorithm algorithm, CostProfile profile,
+                       Consumer<GeographicPoint> nodeSearched) throws IllegalArgumentException {
+        Optional.ofNullable(start).orElseThrow(() -> new IllegalArgumentException("nul start."));
+        Optional.ofNullable(goal).orElseThrow(() -> new IllegalArgumentException("nul goal."));
+        Optional.ofNullable(algorithm).orElseThrow(() -> new IllegalArgumentException("nul algorithm."));
+        Optional.ofNullable(profile).orElseThrow(() -> new IllegalArgumentException("nul profile."));
+        Optional.ofNullable(nodeSearched).orElseThrow(() -> new IllegalArgumentException("nul nodeSearched."));
+        PathBuilder<Route> builder = (graph, context, source, target) -> buildRoute(graph, context, profile, source, target);
+        switch (algorithm) {
+        case BFS:
+            return bfs(start, goal, nodeSearched, builder);
+        case DIJKSTRA:
+            return findPath(start, goal, nodeSearched, Heuristic.NONE, profile, algorithm, builder);
+        case A_STAR:
+            Heuristic moveCost = new DistanceHeuristic(DistanceKernel.HAVERSINE, profile);
+            return findPath(start, goal, nodeSearched, moveCost, profile, algorithm, builder);
+        default:
+            throw new IllegalArgumentException("No route by " + algorithm.getLabel() + ".");
+        }
+    }
+
+    /**
+     * @param algorithm
+     * @return true if <code>route</code> finds routes by <code>algorithm</code>.
+     */
+    static boolean canRoute(SearchStats.Algorithm algorithm) {
+        return algorithm == SearchStats.Algorithm.BFS || algorithm == SearchStats.Algorithm.DIJKSTRA
+               || algorithm == SearchStats.Algorithm.A_STAR;
+    }
+
+    /**
+     * Routes a batch of requests on the common fork-join pool, see <code>routeAll(List, Executor)</code>.
+     */
+    public List<RouteResult> routeAll(List<RouteRequest> requests) {
+        return routeAll(requests, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Routes a batch of independent requests concurrently, one task per request on <code>executor</code>. The searches only read the frozen
+     * graph and each thread reuses its own search state, so the requests share nothing but the graph. A request that fails does not fail
+     * the batch, its result holds the error.
+     * 
+     * @param requests
+     * @param executor Runs the requests, e.g. a fixed thread pool or a <code>ForkJoinPool</code> sized to the cores to use.
+     * @return The result of every request, in the order of <code>requests</code>, once all of them are done.
+     * @throws IllegalArgumentException If any argument or request is null.
+     */
+    public List<RouteResult> routeAll(List<RouteRequest> requests, Executor executor) throws IllegalArgumentException {
+        Optional.ofNullable(requests).orElseThrow(() -> new IllegalArgumentException("nul requests."));
+        Optional.ofNullable(executor).orElseThrow(() -> new IllegalArgumentException("nul executor."));
+        RouteRequest[] batch = requests.toArray(new RouteRequest[requests.size()]);
+        for (RouteRequest request : batch) {
+            Optional.ofNullable(request).orElseThrow(() -> new IllegalArgumentException("nul request."));
+        }
+        RouteResult[] results = new RouteResult[batch.length];
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[batch.length];
+        for (int i = 0; i < batch.length; i++) {
+            int slot = i;
+            tasks[i] = CompletableFuture.runAsync(() -> results[slot] = route(batch[slot]), executor);
+        }
+        CompletableFuture.allOf(tasks).join();
+        return Arrays.asList(results);
+    }
+
+    private RouteResult route(RouteRequest request) {
+        long started = System.nanoTime();
+        try {
+            Route route = route(request.getStart(), request.getGoal(), request.getAlgorithm(), request.getProfile(), (x) -> {});
+            return new RouteResult(request, route, null, System.nanoTime() - started);
+        } catch (RuntimeException e) {
+            return new RouteResult(request, null, e, System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Makes the result of a query from the state of its search.
+     */
+    @FunctionalInterface
+    private interface PathBuilder<T> {
+
+        /**
+         * @return The path to <code>target</code>, or <code>null</code> if it was not reached.
+         */
+        T build(CompactGraph graph, SearchContext context, int source, int target);
+    }
     
     /**
      * Find the path from start to goal using Dijkstra's algorithm
@@ -217,7 +853,18 @@ public class MapGraph {
      * @return The list of intersections that form the shortest path from start to goal (including both start and goal).
      */
     public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched) {
-        return findPath(start, goal, nodeSearched, (gpStart, gpGoal) -> 0.0D);
+        return findPath(start, goal, nodeSearched, Heuristic.NONE, CostProfile.DURATION, SearchStats.Algorithm.DIJKSTRA);
+    }
+
+    /**
+     * Find the path from start to goal using Dijkstra's algorithm
+     * @param start The starting location
+     * @param goal The goal location
+     * @param profile Cost to minimize.
+     * @return The list of intersections that form the shortest path from start to goal (including both start and goal).
+     */
+    public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal, CostProfile profile) {
+        return findPath(start, goal, (x) -> {}, Heuristic.NONE, profile, SearchStats.Algorithm.DIJKSTRA);
     }
     
     /**
@@ -225,57 +872,126 @@ public class MapGraph {
      * @param start
      * @param goal
      * @param nodeSearched
-     * @param moveCost
-     * @return The minimal path between <code>start</code> and <code>goal</code> node.
+     * @param moveCost Estimate of the remaining cost from a point to the goal, e.g. <code>Landmarks</code>. A <code>Heuristic</code> is
+     * called with vertex ids.
+     * @return The minimal path between <code>start</code> and <code>goal</code> node, by travel time.
      */
     public List<GeographicPoint> findPath(GeographicPoint start,
                                           GeographicPoint goal,
                                           Consumer<GeographicPoint> nodeSearched,
                                           BiFunction<GeographicPoint, GeographicPoint, Double>moveCost) {
+        return findPath(start, goal, nodeSearched, moveCost, CostProfile.DURATION);
+    }
+
+    /**
+     * 
+     * @param start
+     * @param goal
+     * @param nodeSearched
+     * @param moveCost Estimate of the remaining cost from a point to the goal, it must not exceed the real cost under <code>profile</code>
+     * for the path to be the shortest one.
+     * @param profile Cost to minimize.
+     * @return The minimal path between <code>start</code> and <code>goal</code> node.
+     */
+    public List<GeographicPoint> findPath(GeographicPoint start,
+                                          GeographicPoint goal,
+                                          Consumer<GeographicPoint> nodeSearched,
+                                          BiFunction<GeographicPoint, GeographicPoint, Double>moveCost,
+                                          CostProfile profile) {
+        return findPath(start, goal, nodeSearched, Heuristic.of(moveCost), profile, SearchStats.Algorithm.A_STAR);
+    }
+
+    private List<GeographicPoint> findPath(GeographicPoint start,
+                                           GeographicPoint goal,
+                                           Consumer<GeographicPoint> nodeSearched,
+                                           Heuristic moveCost,
+                                           CostProfile profile,
+                                           SearchStats.Algorithm algorithm) {
         Objects.requireNonNull(moveCost, "moveCost");
+        Objects.requireNonNull(profile, "profile");
         // 
         if (start.equals(goal)) {
             return Collections.emptyList();
         }
-        // clean weight of all nodes.
-        vertices.keySet().forEach(GeographicPointNode::clear);
-        vertices.values().stream().flatMap(Set::stream).map(MapEdge::getToPoint).forEach(GeographicPointNode::clear);
+        return findPath(start, goal, nodeSearched, moveCost, profile, algorithm, MapGraph::buildPath);
+    }
+
+    private <T> T findPath(GeographicPoint start,
+                           GeographicPoint goal,
+                           Consumer<GeographicPoint> nodeSearched,
+                           Heuristic moveCost,
+                           CostProfile profile,
+                           SearchStats.Algorithm algorithm,
+                           PathBuilder<T> builder) {
+        CompactGraph graph = freeze();
+        int source = graph.idOf(start);
+        int target = graph.idOf(goal);
+        if (source < 0 || target < 0) {
+            return null;
+        }
         // find path.
-        GeographicPointNode source = GeographicPointNode.of(start);
-        source.setWeight(0);
-        Set<GeographicPointNode>settled = new HashSet<>();
-        Map<GeographicPointNode, GeographicPointNode>parentMap = new HashMap<>();
-        Queue<GeographicPointNode>unsettle = new PriorityBlockingQueue<>(1024, Comparator.comparing(GeographicPointNode::getWeight));
-        unsettle.add(source);
+        long started = System.nanoTime();
+        SearchContext context = graph.acquire();
+        try {
+            search(graph, profile, context, source, target, nodeSearched, moveCost);
+            metrics.record(context.stats(algorithm, System.nanoTime() - started));
+            // build and get path.
+            return builder.build(graph, context, source, target);
+        } finally {
+            graph.release(context);
+        }
+    }
+
+    /**
+     * Runs Dijkstra, or A* when <code>moveCost</code> estimates the remaining cost, from <code>source</code> until <code>target</code> is
+     * settled. The queue is an indexed heap keyed by the estimated total cost, so every vertex is queued and settled at most once.
+     * 
+     * @param graph
+     * @param profile Cost of the edges.
+     * @param context Fresh context that receives the distances and parents.
+     * @param source
+     * @param target
+     * @param nodeSearched
+     * @param moveCost
+     * @return The number of settled vertices.
+     */
+    static int search(CompactGraph graph, CostProfile profile, SearchContext context, int source, int target,
+                      Consumer<GeographicPoint> nodeSearched, Heuristic moveCost) {
+        CostTable weights = graph.costs(profile);
+        context.update(source, 0, source);
+        IndexedMinHeap unsettle = context.heap;
+        unsettle.offer(source, moveCost.estimate(graph, source, target));
+        context.heapPushes++;
+        context.peakFrontier = 1;
         // iterate till unsettle nodes.
         while (!unsettle.isEmpty()) {
-            GeographicPointNode current = unsettle.poll(); // get lowest distance.
-            if (current.equals(goal)) {
+            int current = unsettle.poll(); // get lowest estimated distance.
+            context.settle(current);
+            context.settledNodes++;
+            // hook visualization.
+            nodeSearched.accept(graph.point(current));
+            if (current == target) {
                 // stop, is not needed find more paths.
                 break;
             }
-            for (MapEdge edge : vertices.get(current)) {
-                GeographicPointNode gp = edge.getToPoint();
-                if (settled.contains(gp)) {
+            for (int e = graph.firstEdge(current), end = graph.endEdge(current); e < end; e++) {
+                int next = graph.target(e);
+                context.relaxedEdges++;
+                if (context.isSettled(next)) {
                     continue;
                 }
-                // TODO 
-                // weight between current source and goal point. 
-                double tmp = current.getWeight() + edge.getValue() + moveCost.apply(gp, goal);
-                if (tmp < gp.getWeight()) { // if tmp is less than current weight.
-                    parentMap.put(gp, current);
-                    // update weight.
-                    gp.setWeight(tmp);
+                // weight between source and next point. 
+                double tmp = context.distance(current) + weights.get(e);
+                if (tmp < context.distance(next)) { // if tmp is less than current weight.
+                    // update weight and parent, the queue is keyed by the estimated total through next.
+                    context.update(next, tmp, current, e);
+                    unsettle.offer(next, tmp + moveCost.estimate(graph, next, target));
+                    context.heapPushes++;
+                    context.peakFrontier = Math.max(context.peakFrontier, unsettle.size());
                 }
-                unsettle.add(gp);
             }
-            settled.add(current);
-            // hook visualization.
-            nodeSearched.accept(current);
         }
-        System.out.println("settled:" + settled.size());
-        // build and get path.
-        return parentMap.isEmpty() ? Collections.emptyList() : buildPath(parentMap, start, goal);
+        return context.settledNodes;
     }
 
     /**
@@ -303,9 +1019,422 @@ public class MapGraph {
      *         goal (including both start and goal).
      */
     public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched) {
-        return findPath(start, goal, nodeSearched, (gp, gpGoal) -> gp.distance(gpGoal));
+        return findPath(start, goal, nodeSearched, new DistanceHeuristic(DistanceKernel.HAVERSINE, CostProfile.DURATION));
+    }
+
+    /**
+     * Find the path from start to goal using A-Star search
+     * 
+     * @param start The starting location
+     * @param goal The goal location
+     * @param profile Cost to minimize.
+     * @return The list of intersections that form the shortest path from start to goal (including both start and goal).
+     */
+    public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal, CostProfile profile) {
+        return aStarSearch(start, goal, profile, DistanceKernel.HAVERSINE);
+    }
+
+    /**
+     * Find the path from start to goal using A-Star search, guided by the distance to the goal measured with <code>kernel</code>.
+     * <code>freeze().equirectangular()</code> gives the same paths as the great-circle distance for a fraction of the cost per estimate.
+     * 
+     * @param start The starting location
+     * @param goal The goal location
+     * @param profile Cost to minimize.
+     * @param kernel Distance between two vertices, it must not exceed the great-circle distance for the path to be the shortest one.
+     * @return The list of intersections that form the shortest path from start to goal (including both start and goal).
+     */
+    public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal, CostProfile profile, DistanceKernel kernel) {
+        return findPath(start, goal, (x) -> {}, new DistanceHeuristic(kernel, profile), profile);
     }
     
+    /**
+     * Find the path from start to goal using bidirectional Dijkstra: one search grows from the start, another one from the goal over the
+     * reverse edges, and they stop once they meet on the shortest path.
+     * 
+     * @param start The starting location
+     * @param goal The goal location
+     * @return The list of intersections that form the shortest path from start to goal (including both start and goal).
+     */
+    public List<GeographicPoint> bidirectionalDijkstra(GeographicPoint start, GeographicPoint goal) {
+        Consumer<GeographicPoint> temp = (x) -> {};
+        return bidirectionalDijkstra(start, goal, temp);
+    }
+
+    /**
+     * Find the path from start to goal using bidirectional Dijkstra.
+     * 
+     * @param start The starting location
+     * @param goal The goal location
+     * @param nodeSearched A hook for visualization, called for the nodes settled by both frontiers.
+     * @return The list of intersections that form the shortest path from start to goal (including both start and goal).
+     */
+    public List<GeographicPoint> bidirectionalDijkstra(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched) {
+        return bidirectionalPath(start, goal, nodeSearched, Heuristic.NONE, CostProfile.DURATION, SearchStats.Algorithm.BIDIRECTIONAL_DIJKSTRA);
+    }
+
+    /**
+     * Find the path from start to goal using bidirectional A-Star search.
+     * 
+     * @param start The starting location
+     * @param goal The goal location
+     * @return The list of intersections that form the shortest path from start to goal (including both start and goal).
+     */
+    public List<GeographicPoint> bidirectionalAStarSearch(GeographicPoint start, GeographicPoint goal) {
+        Consumer<GeographicPoint> temp = (x) -> {};
+        return bidirectionalAStarSearch(start, goal, temp);
+    }
+
+    /**
+     * Find the path from start to goal using bidirectional A-Star search. Both frontiers use the average of the forward and backward
+     * estimates as potential, which keeps them consistent with each other so the meet-in-the-middle stop is still exact.
+     * 
+     * @param start The starting location
+     * @param goal The goal location
+     * @param nodeSearched A hook for visualization, called for the nodes settled by both frontiers.
+     * @return The list of intersections that form the shortest path from start to goal (including both start and goal).
+     */
+    public List<GeographicPoint> bidirectionalAStarSearch(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched) {
+        return bidirectionalAStarSearch(start, goal, nodeSearched, new DistanceHeuristic(DistanceKernel.HAVERSINE, CostProfile.DURATION));
+    }
+
+    /**
+     * Find the path from start to goal using bidirectional A-Star search guided by <code>moveCost</code>, e.g. <code>Landmarks</code>.
+     * 
+     * @param start The starting location
+     * @param goal The goal location
+     * @param nodeSearched A hook for visualization, called for the nodes settled by both frontiers.
+     * @param moveCost Estimate of the cost between two points.
+     * @return The list of intersections that form the shortest path from start to goal (including both start and goal).
+     */
+    public List<GeographicPoint> bidirectionalAStarSearch(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched,
+                                                          BiFunction<GeographicPoint, GeographicPoint, Double>moveCost) {
+        return bidirectionalPath(start, goal, nodeSearched, Heuristic.of(moveCost), CostProfile.DURATION,
+                                 SearchStats.Algorithm.BIDIRECTIONAL_A_STAR);
+    }
+
+    private List<GeographicPoint> bidirectionalPath(GeographicPoint start,
+                                                    GeographicPoint goal,
+                                                    Consumer<GeographicPoint> nodeSearched,
+                                                    Heuristic moveCost,
+                                                    CostProfile profile,
+                                                    SearchStats.Algorithm algorithm) {
+        Optional.ofNullable(start).orElseThrow(() -> new IllegalArgumentException("nul start."));
+        Optional.ofNullable(goal).orElseThrow(() -> new IllegalArgumentException("nul goal."));
+        Optional.ofNullable(nodeSearched).orElseThrow(() -> new IllegalArgumentException("nul nodeSearched."));
+        // 
+        if (start.equals(goal)) {
+            return Collections.emptyList();
+        }
+        CompactGraph graph = freeze();
+        int source = graph.idOf(start);
+        int target = graph.idOf(goal);
+        if (source < 0 || target < 0) {
+            return null;
+        }
+        long started = System.nanoTime();
+        SearchContext forward = graph.acquire();
+        try {
+            SearchContext backward = forward.backward();
+            int meeting = bidirectionalSearch(graph, profile, forward, backward, source, target, nodeSearched, moveCost);
+            metrics.record(new SearchStats(algorithm,
+                                           forward.settledNodes + backward.settledNodes,
+                                           forward.relaxedEdges + backward.relaxedEdges,
+                                           forward.heapPushes + backward.heapPushes,
+                                           forward.peakFrontier,
+                                           System.nanoTime() - started));
+            if (meeting < 0) {
+                return null;
+            }
+            // start -> meeting from the forward parents, then meeting -> goal from the backward ones.
+            List<GeographicPoint> path = buildPath(graph, forward, source, meeting);
+            for (int current = meeting; current != target; ) {
+                current = backward.parent(current);
+                path.add(graph.point(current));
+            }
+            return path;
+        } finally {
+            graph.release(forward);
+        }
+    }
+
+    /**
+     * Runs a forward search from <code>source</code> and a backward search from <code>target</code> over the reverse edges, always expanding
+     * the smaller frontier, until the sum of both frontier keys proves no shorter connection is left.
+     * <p>
+     * With a <code>moveCost</code> estimate the forward keys use the potential <code>p(v) = (h(v, goal) - h(start, v)) / 2</code> and the
+     * backward keys use <code>-p(v)</code>, so the stop condition stays the same as for plain Dijkstra.
+     * 
+     * @param graph
+     * @param profile Cost of the edges.
+     * @param forward Fresh context for the forward frontier, it also tracks the peak size of both frontiers.
+     * @param backward Fresh context for the backward frontier.
+     * @param source
+     * @param target
+     * @param nodeSearched
+     * @param moveCost
+     * @return The vertex where the shortest path crosses from one search to the other, or -1 if <code>target</code> is not reachable.
+     */
+    static int bidirectionalSearch(CompactGraph graph, CostProfile profile, SearchContext forward, SearchContext backward, int source,
+                                   int target, Consumer<GeographicPoint> nodeSearched, Heuristic moveCost) {
+        CostTable weights = graph.costs(profile);
+        forward.update(source, 0, source);
+        forward.heap.offer(source, potential(graph, source, source, target, moveCost));
+        backward.update(target, 0, target);
+        backward.heap.offer(target, -potential(graph, target, source, target, moveCost));
+        forward.heapPushes++;
+        backward.heapPushes++;
+        forward.peakFrontier = 2;
+        double best = Double.POSITIVE_INFINITY;
+        int meeting = -1;
+        while (!forward.heap.isEmpty() && !backward.heap.isEmpty()) {
+            if (forward.heap.peekKey() + backward.heap.peekKey() >= best) {
+                // no connection through the frontiers can beat the best one.
+                break;
+            }
+            boolean isForward = forward.heap.size() <= backward.heap.size();
+            SearchContext side = isForward ? forward : backward;
+            SearchContext other = isForward ? backward : forward;
+            int current = side.heap.poll();
+            side.settle(current);
+            side.settledNodes++;
+            // hook visualization.
+            nodeSearched.accept(graph.point(current));
+            int first = isForward ? graph.firstEdge(current) : graph.firstReverseEdge(current);
+            int end = isForward ? graph.endEdge(current) : graph.endReverseEdge(current);
+            for (int e = first; e < end; e++) {
+                int next = isForward ? graph.target(e) : graph.reverseSource(e);
+                side.relaxedEdges++;
+                if (side.isSettled(next)) {
+                    continue;
+                }
+                double tmp = side.distance(current) + weights.get(isForward ? e : graph.reverseEdge(e));
+                if (tmp < side.distance(next)) {
+                    side.update(next, tmp, current, isForward ? e : graph.reverseEdge(e));
+                    double p = potential(graph, next, source, target, moveCost);
+                    side.heap.offer(next, tmp + (isForward ? p : -p));
+                    side.heapPushes++;
+                    forward.peakFrontier = Math.max(forward.peakFrontier, forward.heap.size() + backward.heap.size());
+                }
+                if (other.isReached(next) && tmp + other.distance(next) < best) {
+                    best = tmp + other.distance(next);
+                    meeting = next;
+                }
+            }
+        }
+        return meeting;
+    }
+
+    private static double potential(CompactGraph graph, int v, int source, int target, Heuristic moveCost) {
+        return (moveCost.estimate(graph, v, target) - moveCost.estimate(graph, source, v)) / 2;
+    }
+
+    /**
+     * Cost of the shortest path from every source to every target, without building the paths. Runs one Dijkstra per source, in parallel,
+     * each one stopping as soon as all the targets are settled.
+     * 
+     * @param sources
+     * @param targets
+     * @return <code>matrix[i][j]</code> is the travel time from <code>sources.get(i)</code> to <code>targets.get(j)</code>, infinity if
+     * there is no path.
+     */
+    public double[][] distanceMatrix(List<GeographicPoint> sources, List<GeographicPoint> targets) {
+        return distanceMatrix(sources, targets, CostProfile.DURATION);
+    }
+
+    /**
+     * @param sources
+     * @param targets
+     * @param profile Cost to minimize.
+     * @return <code>matrix[i][j]</code> is the cost from <code>sources.get(i)</code> to <code>targets.get(j)</code>, infinity if there is
+     * no path.
+     */
+    public double[][] distanceMatrix(List<GeographicPoint> sources, List<GeographicPoint> targets, CostProfile profile) {
+        Objects.requireNonNull(profile, "profile");
+        Optional.ofNullable(sources).orElseThrow(() -> new IllegalArgumentException("nul sources."));
+        Optional.ofNullable(targets).orElseThrow(() -> new IllegalArgumentException("nul targets."));
+        CompactGraph graph = freeze();
+        int[] sourceIds = ids(graph, sources);
+        int[] targetIds = ids(graph, targets);
+        boolean[] isTarget = new boolean[graph.numVertices()];
+        int distinct = 0;
+        for (int target : targetIds) {
+            distinct += isTarget[target] ? 0 : 1;
+            isTarget[target] = true;
+        }
+        int numTargets = distinct;
+        double[][] matrix = new double[sourceIds.length][targetIds.length];
+        IntStream.range(0, sourceIds.length).parallel().forEach(i -> {
+            long started = System.nanoTime();
+            SearchContext context = graph.acquire();
+            try {
+                oneToMany(graph, profile, context, sourceIds[i], isTarget, numTargets);
+                for (int j = 0; j < targetIds.length; j++) {
+                    matrix[i][j] = context.distance(targetIds[j]);
+                }
+                metrics.record(context.stats(SearchStats.Algorithm.ONE_TO_MANY, System.nanoTime() - started));
+            } finally {
+                graph.release(context);
+            }
+        });
+        return matrix;
+    }
+
+    /**
+     * Everything reachable from <code>source</code> within <code>budget</code> minutes of travel, see
+     * <code>isochrone(GeographicPoint, double, CostProfile)</code>.
+     */
+    public Isochrone isochrone(GeographicPoint source, double budget) throws IllegalArgumentException {
+        return isochrone(source, budget, CostProfile.DURATION);
+    }
+
+    /**
+     * Finds the intersections reachable from <code>source</code> within a cost budget, e.g. a service area. Runs Dijkstra from the source and
+     * stops as soon as the next vertex to settle costs more than the budget, so the work stays around the source however big the graph.
+     * 
+     * @param source The starting location
+     * @param budget Highest cost of a reached point under <code>profile</code>, minutes for <code>CostProfile.DURATION</code>.
+     * @param profile Cost of the edges.
+     * @return The reached intersections with their costs, the source included.
+     * @throws IllegalArgumentException If any argument is null, the budget is negative or the source is not in the graph.
+     */
+    public Isochrone isochrone(GeographicPoint source, double budget, CostProfile profile) throws IllegalArgumentException {
+        Optional.ofNullable(source).orElseThrow(() -> new IllegalArgumentException("nul source."));
+        Optional.ofNullable(profile).orElseThrow(() -> new IllegalArgumentException("nul profile."));
+        if (!(budget >= 0)) {
+            throw new IllegalArgumentException("negative budget: " + budget);
+        }
+        CompactGraph graph = freeze();
+        int sourceId = graph.idOf(source);
+        if (sourceId < 0) {
+            throw new IllegalArgumentException("The point:" + source.toString() + " is not in the Graph.");
+        }
+        long started = System.nanoTime();
+        SearchContext context = graph.acquire();
+        try {
+            int reached = withinBudget(graph, profile, context, sourceId, budget);
+            GeographicPoint[] points = new GeographicPoint[reached];
+            double[] costs = new double[reached];
+            for (int i = 0; i < reached; i++) {
+                // the settled vertices, in order.
+                points[i] = graph.point(context.queue[i]);
+                costs[i] = context.distance(context.queue[i]);
+            }
+            metrics.record(context.stats(SearchStats.Algorithm.ISOCHRONE, System.nanoTime() - started));
+            return new Isochrone(source, profile, budget, points, costs);
+        } finally {
+            graph.release(context);
+        }
+    }
+
+    /**
+     * The <code>k</code> nearest facilities of every intersection by minutes of travel, see
+     * <code>facilities(Collection, int, CostProfile)</code>.
+     */
+    public FacilityIndex facilities(Collection<GeographicPoint> facilities, int k) throws IllegalArgumentException {
+        return facilities(facilities, k, CostProfile.DURATION);
+    }
+
+    /**
+     * Finds the <code>k</code> nearest facilities of every intersection by the cost of the path to them, e.g. the closest stores of each
+     * customer, with one multi-source search instead of one search per facility. The lookups of the index are then constant time.
+     *
+     * @param facilities Intersections of the facilities, duplicates are ignored.
+     * @param k Number of facilities kept per intersection.
+     * @param profile Cost of the edges.
+     * @return The labels of every intersection, on the current version of the graph.
+     * @throws IllegalArgumentException If any argument is null, <code>k</code> is not positive or a facility is not in the graph.
+     */
+    public FacilityIndex facilities(Collection<GeographicPoint> facilities, int k, CostProfile profile) throws IllegalArgumentException {
+        Optional.ofNullable(facilities).orElseThrow(() -> new IllegalArgumentException("nul facilities."));
+        Optional.ofNullable(profile).orElseThrow(() -> new IllegalArgumentException("nul profile."));
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        CompactGraph graph = freeze();
+        long started = System.nanoTime();
+        FacilityIndex index = new FacilityIndex(graph, profile, k, new ArrayList<>(facilities));
+        metrics.record(index.stats(System.nanoTime() - started));
+        return index;
+    }
+
+    private static int[] ids(CompactGraph graph, List<GeographicPoint> points) {
+        int[] ids = new int[points.size()];
+        for (int i = 0; i < ids.length; i++) {
+            GeographicPoint point = points.get(i);
+            ids[i] = graph.idOf(Optional.ofNullable(point).orElseThrow(() -> new IllegalArgumentException("nul point.")));
+            if (ids[i] < 0) {
+                throw new IllegalArgumentException("The point:" + point.toString() + " is not in the Graph.");
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Dijkstra from <code>source</code> until the <code>numTargets</code> vertices flagged in <code>isTarget</code> are settled, or there is
+     * nothing left to settle.
+     */
+    static void oneToMany(CompactGraph graph, CostProfile profile, SearchContext context, int source, boolean[] isTarget, int numTargets) {
+        CostTable weights = graph.costs(profile);
+        context.update(source, 0, source);
+        IndexedMinHeap unsettle = context.heap;
+        unsettle.offer(source, 0);
+        context.heapPushes++;
+        int remaining = numTargets;
+        while (!unsettle.isEmpty() && remaining > 0) {
+            int current = unsettle.poll();
+            context.settle(current);
+            context.settledNodes++;
+            if (isTarget[current]) {
+                remaining--;
+            }
+            for (int e = graph.firstEdge(current), end = graph.endEdge(current); e < end; e++) {
+                int next = graph.target(e);
+                context.relaxedEdges++;
+                double tmp = context.distance(current) + weights.get(e);
+                if (tmp < context.distance(next)) {
+                    context.update(next, tmp, current);
+                    unsettle.offer(next, tmp);
+                    context.heapPushes++;
+                    context.peakFrontier = Math.max(context.peakFrontier, unsettle.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * Dijkstra from <code>source</code> that settles the vertices with a cost up to <code>budget</code> and no other one.
+     * 
+     * @return The number of settled vertices, which are the first ones of <code>context.queue</code> in the order they were settled.
+     */
+    static int withinBudget(CompactGraph graph, CostProfile profile, SearchContext context, int source, double budget) {
+        CostTable weights = graph.costs(profile);
+        context.update(source, 0, source);
+        IndexedMinHeap unsettle = context.heap;
+        unsettle.offer(source, 0);
+        context.heapPushes++;
+        int settled = 0;
+        // only vertices within the budget are queued, the search ends with the last of them.
+        while (!unsettle.isEmpty()) {
+            int current = unsettle.poll();
+            context.settle(current);
+            context.settledNodes++;
+            context.queue[settled++] = current;
+            for (int e = graph.firstEdge(current), end = graph.endEdge(current); e < end; e++) {
+                int next = graph.target(e);
+                context.relaxedEdges++;
+                double tmp = context.distance(current) + weights.get(e);
+                if (tmp <= budget && tmp < context.distance(next)) {
+                    context.update(next, tmp, current, e);
+                    unsettle.offer(next, tmp);
+                    context.heapPushes++;
+                    context.peakFrontier = Math.max(context.peakFrontier, unsettle.size());
+                }
+            }
+        }
+        return settled;
+    }
+
     public static void main2(String[] args) {
         System.out.print("Making a new map...");
         MapGraph firstMap = new MapGraph();
@@ -377,7 +1506,12 @@ public class MapGraph {
     }
 
     public static void main3(String[] args) {
+        // print the settled nodes of every query.
+        SearchMetrics metrics = new SearchMetrics();
+        metrics.addListener(System.out::println);
+
         MapGraph simpleTestMap = new MapGraph();
+        simpleTestMap.setSearchMetrics(metrics);
         GraphLoader.loadRoadMap("data/testdata/simpletest.map", simpleTestMap);
 
         GeographicPoint testStart = new GeographicPoint(1.0, 1.0);
@@ -388,6 +1522,7 @@ public class MapGraph {
         List<GeographicPoint> testroute2 = simpleTestMap.aStarSearch(testStart, testEnd);
 
         MapGraph testMap = new MapGraph();
+        testMap.setSearchMetrics(metrics);
         GraphLoader.loadRoadMap("data/maps/utc.map", testMap);
 
         // A very simple test using real data
@@ -0,0 +1,185 @@
+package roadgraph;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import geography.BoundingBox;
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/** A class for timing the spatial queries of MapGraph, backed by a k-d
+ * tree, against a linear scan of getVertices(), in microseconds per
+ * query over the same random locations in the area of every map.  Both
+ * must give the same distances and the same vertices.
+ *
+ * @author dayler
+ *
+ */
+public class NearestBenchmarking {
+
+	public static void main(String [] args) {
+
+		// Number of random locations per map.
+		int queries = 10000;
+
+		// Number of neighbours of the kNearest queries.
+		int k = 8;
+
+		// Fixed seed so every run times the same queries.
+		long seed = 20171119L;
+
+		File[] maps = new File("data/maps").listFiles((dir, name) -> name.endsWith(".map"));
+		Arrays.sort(maps, (a, b) -> Long.compare(a.length(), b.length()));
+
+		System.out.println("map\tvertices\tquery\tscan us\tk-d tree us\tspeedup");
+		for (File map : maps) {
+			MapGraph graph = new MapGraph();
+			GraphLoader.loadRoadMap(map.getPath(), graph);
+			List<GeographicPoint> vertices = new ArrayList<GeographicPoint>(graph.getVertices());
+			GeographicPoint[] points = randomPoints(vertices, queries, seed);
+			BoundingBox[] boxes = randomBoxes(points, vertices);
+
+			// Warm up both ways before timing.
+			for (int i = 0; i < queries; i++) {
+				scanNearest(vertices, points[i]);
+				graph.nearestVertex(points[i]);
+			}
+
+			long start = System.nanoTime();
+			GeographicPoint[] scanned = new GeographicPoint[queries];
+			for (int i = 0; i < queries; i++) {
+				scanned[i] = scanNearest(vertices, points[i]);
+			}
+			long scan = System.nanoTime() - start;
+			start = System.nanoTime();
+			GeographicPoint[] found = new GeographicPoint[queries];
+			for (int i = 0; i < queries; i++) {
+				found[i] = graph.nearestVertex(points[i]);
+			}
+			long tree = System.nanoTime() - start;
+			for (int i = 0; i < queries; i++) {
+				if (scanned[i].distance(points[i]) != found[i].distance(points[i])) {
+					throw new IllegalStateException("nearestVertex differs on " + map + " at " + points[i]);
+				}
+			}
+			print(map, vertices.size(), "nearestVertex", scan, tree, queries);
+
+			int rounds = queries / 10;
+			start = System.nanoTime();
+			List<List<GeographicPoint>> scannedK = new ArrayList<List<GeographicPoint>>();
+			for (int i = 0; i < rounds; i++) {
+				scannedK.add(scanKNearest(vertices, points[i], k));
+			}
+			scan = System.nanoTime() - start;
+			start = System.nanoTime();
+			List<List<GeographicPoint>> foundK = new ArrayList<List<GeographicPoint>>();
+			for (int i = 0; i < rounds; i++) {
+				foundK.add(graph.kNearest(points[i], k));
+			}
+			tree = System.nanoTime() - start;
+			for (int i = 0; i < rounds; i++) {
+				for (int j = 0; j < scannedK.get(i).size(); j++) {
+					if (scannedK.get(i).get(j).distance(points[i]) != foundK.get(i).get(j).distance(points[i])) {
+						throw new IllegalStateException("kNearest differs on " + map + " at " + points[i]);
+					}
+				}
+			}
+			print(map, vertices.size(), "kNearest k=" + k, scan, tree, rounds);
+
+			start = System.nanoTime();
+			List<List<GeographicPoint>> scannedBox = new ArrayList<List<GeographicPoint>>();
+			for (int i = 0; i < rounds; i++) {
+				scannedBox.add(scanWithin(vertices, boxes[i]));
+			}
+			scan = System.nanoTime() - start;
+			start = System.nanoTime();
+			List<List<GeographicPoint>> foundBox = new ArrayList<List<GeographicPoint>>();
+			for (int i = 0; i < rounds; i++) {
+				foundBox.add(graph.verticesWithin(boxes[i]));
+			}
+			tree = System.nanoTime() - start;
+			for (int i = 0; i < rounds; i++) {
+				if (!new HashSet<GeographicPoint>(scannedBox.get(i)).equals(new HashSet<GeographicPoint>(foundBox.get(i)))) {
+					throw new IllegalStateException("verticesWithin differs on " + map + " in " + boxes[i]);
+				}
+			}
+			print(map, vertices.size(), "verticesWithin", scan, tree, rounds);
+		}
+	}
+
+	private static void print(File map, int vertices, String query, long scan, long tree, int queries) {
+		System.out.println(map.getPath() + "\t" + vertices + "\t" + query + "\t" + String.format("%.2f", scan / 1000.0 / queries)
+				+ "\t" + String.format("%.2f", tree / 1000.0 / queries) + "\t" + String.format("%.1fx", (double)scan / tree));
+	}
+
+	private static GeographicPoint scanNearest(List<GeographicPoint> vertices, GeographicPoint point) {
+		GeographicPoint nearest = null;
+		double best = Double.POSITIVE_INFINITY;
+		for (GeographicPoint vertex : vertices) {
+			double distance = vertex.distance(point);
+			if (distance < best) {
+				best = distance;
+				nearest = vertex;
+			}
+		}
+		return nearest;
+	}
+
+	private static List<GeographicPoint> scanKNearest(List<GeographicPoint> vertices, GeographicPoint point, int k) {
+		List<GeographicPoint> sorted = new ArrayList<GeographicPoint>(vertices);
+		sorted.sort((a, b) -> Double.compare(a.distance(point), b.distance(point)));
+		return sorted.subList(0, Math.min(k, sorted.size()));
+	}
+
+	private static List<GeographicPoint> scanWithin(List<GeographicPoint> vertices, BoundingBox box) {
+		List<GeographicPoint> within = new ArrayList<GeographicPoint>();
+		for (GeographicPoint vertex : vertices) {
+			if (box.contains(vertex)) {
+				within.add(vertex);
+			}
+		}
+		return within;
+	}
+
+	// Random locations in the box of the vertices, grown by a tenth on every side.
+	private static GeographicPoint[] randomPoints(List<GeographicPoint> vertices, int count, long seed) {
+		BoundingBox area = area(vertices);
+		double latMargin = (area.getMaxLat() - area.getMinLat()) / 10;
+		double lonMargin = (area.getMaxLon() - area.getMinLon()) / 10;
+		Random random = new Random(seed);
+		GeographicPoint[] points = new GeographicPoint[count];
+		for (int i = 0; i < count; i++) {
+			double lat = area.getMinLat() - latMargin + random.nextDouble() * (area.getMaxLat() - area.getMinLat() + 2 * latMargin);
+			double lon = area.getMinLon() - lonMargin + random.nextDouble() * (area.getMaxLon() - area.getMinLon() + 2 * lonMargin);
+			points[i] = new GeographicPoint(lat, lon);
+		}
+		return points;
+	}
+
+	// A box a fifth of the size of the area around each point.
+	private static BoundingBox[] randomBoxes(GeographicPoint[] points, List<GeographicPoint> vertices) {
+		BoundingBox area = area(vertices);
+		double halfLat = (area.getMaxLat() - area.getMinLat()) / 10;
+		double halfLon = (area.getMaxLon() - area.getMinLon()) / 10;
+		BoundingBox[] boxes = new BoundingBox[points.length];
+		for (int i = 0; i < points.length; i++) {
+			boxes[i] = new BoundingBox(points[i].getX() - halfLat, points[i].getY() - halfLon, points[i].getX() + halfLat,
+					points[i].getY() + halfLon);
+		}
+		return boxes;
+	}
+
+	private static BoundingBox area(List<GeographicPoint> vertices) {
+		GeographicPoint first = vertices.get(0);
+		BoundingBox area = BoundingBox.of(first, first);
+		for (GeographicPoint vertex : vertices) {
+			area = new BoundingBox(Math.min(area.getMinLat(), vertex.getX()), Math.min(area.getMinLon(), vertex.getY()),
+					Math.max(area.getMaxLat(), vertex.getX()), Math.max(area.getMaxLon(), vertex.getY()));
+		}
+		return area;
+	}
+}
@@ -0,0 +1,144 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import geography.GeographicPoint;
+
+/**
+ * Immutable result of a route query: the edges the search chose, with everything needed to show the route already computed from them, the
+ * total cost and length, the road name of every edge and the whole geometry of the road, so no caller has to look the road segments up
+ * again.
+ *
+ * @author dayler
+ */
+public final class Route {
+
+    private final CostProfile profile;
+
+    private final long version;
+
+    private final double cost;
+
+    private final double length;
+
+    private final int[] edges;
+
+    private final List<GeographicPoint> vertices;
+
+    private final List<String> roadNames;
+
+    private final List<GeographicPoint> geometry;
+
+    private Route(CostProfile profile, long version, double cost, double length, int[] edges, List<GeographicPoint> vertices,
+                  List<String> roadNames, List<GeographicPoint> geometry) {
+        this.profile = profile;
+        this.version = version;
+        this.cost = cost;
+        this.length = length;
+        this.edges = edges;
+        this.vertices = vertices;
+        this.roadNames = roadNames;
+        this.geometry = geometry;
+    }
+
+    /**
+     * @param graph The version of the graph the edges were found on.
+     * @param profile The cost to total.
+     * @param source Vertex id of the start.
+     * @param edges Edge ids from <code>source</code> to the goal, in order.
+     * @return The route along <code>edges</code>.
+     */
+    static Route of(CompactGraph graph, CostProfile profile, int source, int[] edges) {
+        CostTable costs = graph.costs(profile);
+        double cost = 0;
+        double length = 0;
+        List<GeographicPoint> vertices = new ArrayList<>(edges.length + 1);
+        List<String> roadNames = new ArrayList<>(edges.length);
+        List<GeographicPoint> geometry = new ArrayList<>();
+        vertices.add(graph.point(source));
+        geometry.add(graph.point(source));
+        for (int e : edges) {
+            cost += costs.get(e);
+            length += graph.length(e);
+            roadNames.add(graph.roadName(e));
+            for (int i = graph.firstGeometryPoint(e); i < graph.endGeometryPoint(e); i++) {
+                geometry.add(new GeographicPoint(graph.geometryLat(i), graph.geometryLon(i)));
+            }
+            GeographicPoint target = graph.point(graph.target(e));
+            vertices.add(target);
+            geometry.add(target);
+        }
+        return new Route(profile, graph.version(), cost, length, edges, Collections.unmodifiableList(vertices),
+                         Collections.unmodifiableList(roadNames), Collections.unmodifiableList(geometry));
+    }
+
+    /**
+     * @return The profile of <code>getCost</code>.
+     */
+    public CostProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return The version of the graph the route was found on, see <code>MapGraph.getVersion</code>.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return The total cost of the edges under <code>getProfile</code>, e.g. minutes for <code>CostProfile.DURATION</code>.
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    /**
+     * @return The total length in km.
+     */
+    public double getLength() {
+        return length;
+    }
+
+    /**
+     * @return The edge ids of the route in the <code>CompactGraph</code> of its version, from start to goal.
+     */
+    public int[] getEdges() {
+        return edges.clone();
+    }
+
+    /**
+     * @return The number of edges, 0 if the start is the goal.
+     */
+    public int getNumEdges() {
+        return edges.length;
+    }
+
+    /**
+     * @return The intersections from start to goal, both included, as <code>MapGraph.dijkstra</code> returns them.
+     */
+    public List<GeographicPoint> getVertices() {
+        return vertices;
+    }
+
+    /**
+     * @return The road name of every edge, in order.
+     */
+    public List<String> getRoadNames() {
+        return roadNames;
+    }
+
+    /**
+     * @return Every point of the road from start to goal, the intersections and the points of the road between them, to draw the route.
+     */
+    public List<GeographicPoint> getGeometry() {
+        return geometry;
+    }
+
+    @Override
+    public String toString() {
+        return "Route [cost=" + cost + " " + profile + ", length=" + length + " km, edges=" + edges.length + "]";
+    }
+}
@@ -0,0 +1,309 @@
+package roadgraph;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import geography.GeographicPoint;
+
+/**
+ * Bounded cache of the routes of a <code>MapGraph</code>, for traffic that asks for the same start and goal again and again. It answers
+ * <code>route</code> and the paths of <code>bfs</code>, <code>dijkstra</code> and <code>aStarSearch</code>, the same as the graph does, and
+ * a path shares its entry with the route of the same algorithm and profile.
+ * <p>
+ * Entries are keyed by the vertex ids of the start and the goal, the algorithm and the cost profile, and evicted least recently used first.
+ * The cache remembers the version of the graph its entries were found on, see <code>MapGraph.getVersion</code>: any change of the graph, a
+ * vertex or an edge added, a road closed or a speed changed, makes a new version and the next lookup drops every entry. A query that ran
+ * while the graph changed is returned but not kept. "No path" answers are cached too.
+ *
+ * @author dayler
+ */
+public final class RouteCache {
+
+    private static final Consumer<GeographicPoint> NO_HOOK = (x) -> {};
+
+    private final MapGraph graph;
+
+    private final int capacity;
+
+    /**
+     * Routes by key, in access order. Guarded by <code>this</code>.
+     */
+    private final LinkedHashMap<Key, Optional<Route>> routes;
+
+    /**
+     * Version of the graph of every entry. Guarded by <code>this</code>.
+     */
+    private long version;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param graph
+     * @param capacity Maximum number of routes kept.
+     * @throws IllegalArgumentException If the capacity is not positive.
+     */
+    public RouteCache(MapGraph graph, int capacity) throws IllegalArgumentException {
+        this.graph = Optional.ofNullable(graph).orElseThrow(() -> new IllegalArgumentException("nul graph."));
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.routes = new LinkedHashMap<Key, Optional<Route>>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Optional<Route>> eldest) {
+                if (size() > RouteCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.version = graph.getVersion();
+    }
+
+    /**
+     * The route by A*, by travel time, see <code>MapGraph.route</code>.
+     */
+    public Route route(GeographicPoint start, GeographicPoint goal) {
+        return route(start, goal, SearchStats.Algorithm.A_STAR, CostProfile.DURATION);
+    }
+
+    /**
+     * The route of <code>MapGraph.route</code>, from the cache if the same one was asked for on the current version of the graph.
+     *
+     * @param start The starting location
+     * @param goal The goal location
+     * @param algorithm <code>BFS</code>, <code>DIJKSTRA</code> or <code>A_STAR</code>.
+     * @param profile Cost to minimize.
+     * @return The route, or <code>null</code> if there is no path or a location is not an intersection of the graph.
+     * @throws IllegalArgumentException If any argument is null or the algorithm is not one of those.
+     */
+    public Route route(GeographicPoint start, GeographicPoint goal, SearchStats.Algorithm algorithm, CostProfile profile)
+            throws IllegalArgumentException {
+        Optional.ofNullable(start).orElseThrow(() -> new IllegalArgumentException("nul start."));
+        Optional.ofNullable(goal).orElseThrow(() -> new IllegalArgumentException("nul goal."));
+        Optional.ofNullable(algorithm).orElseThrow(() -> new IllegalArgumentException("nul algorithm."));
+        Optional.ofNullable(profile).orElseThrow(() -> new IllegalArgumentException("nul profile."));
+        CompactGraph current = graph.freeze();
+        int source = current.idOf(start);
+        int target = current.idOf(goal);
+        if (source < 0 || target < 0) {
+            // not a vertex, nothing to key it by.
+            misses.incrementAndGet();
+            return graph.route(start, goal, algorithm, profile, NO_HOOK);
+        }
+        Key key = new Key(source, target, algorithm, profile);
+        synchronized (this) {
+            if (version != current.version()) {
+                invalidate(current.version());
+            }
+            Optional<Route> cached = routes.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached.orElse(null);
+            }
+        }
+        misses.incrementAndGet();
+        // search without holding the lock, two threads may miss the same key and both search it.
+        Route route = graph.route(start, goal, algorithm, profile, NO_HOOK);
+        long found = route == null ? graph.getVersion() : route.getVersion();
+        synchronized (this) {
+            if (found == current.version() && version == current.version()) {
+                routes.put(key, Optional.ofNullable(route));
+            }
+        }
+        return route;
+    }
+
+    /**
+     * The path of <code>MapGraph.bfs</code>, from the cache if the same one was asked for on the current version of the graph.
+     *
+     * @param start The starting location
+     * @param goal The goal location
+     * @return The list of intersections from start to goal (including both start and goal), unmodifiable, or <code>null</code> if there is no
+     * path or a location is not an intersection of the graph.
+     * @throws IllegalArgumentException If any argument is null.
+     */
+    public List<GeographicPoint> bfs(GeographicPoint start, GeographicPoint goal) throws IllegalArgumentException {
+        return path(start, goal, SearchStats.Algorithm.BFS, CostProfile.DURATION);
+    }
+
+    /**
+     * The path of <code>MapGraph.dijkstra</code>, by travel time, see <code>dijkstra(GeographicPoint, GeographicPoint, CostProfile)</code>.
+     */
+    public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal) throws IllegalArgumentException {
+        return dijkstra(start, goal, CostProfile.DURATION);
+    }
+
+    /**
+     * The path of <code>MapGraph.dijkstra</code>, from the cache if the same one was asked for on the current version of the graph.
+     *
+     * @param start The starting location
+     * @param goal The goal location
+     * @param profile Cost to minimize.
+     * @return The list of intersections from start to goal (including both start and goal), unmodifiable, or <code>null</code> if there is no
+     * path or a location is not an intersection of the graph.
+     * @throws IllegalArgumentException If any argument is null.
+     */
+    public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal, CostProfile profile) throws IllegalArgumentException {
+        return path(start, goal, SearchStats.Algorithm.DIJKSTRA, profile);
+    }
+
+    /**
+     * The path of <code>MapGraph.aStarSearch</code>, by travel time, see
+     * <code>aStarSearch(GeographicPoint, GeographicPoint, CostProfile)</code>.
+     */
+    public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal) throws IllegalArgumentException {
+        return aStarSearch(start, goal, CostProfile.DURATION);
+    }
+
+    /**
+     * The path of <code>MapGraph.aStarSearch</code>, from the cache if the same one was asked for on the current version of the graph.
+     *
+     * @param start The starting location
+     * @param goal The goal location
+     * @param profile Cost to minimize.
+     * @return The list of intersections from start to goal (including both start and goal), unmodifiable, or <code>null</code> if there is no
+     * path or a location is not an intersection of the graph.
+     * @throws IllegalArgumentException If any argument is null.
+     */
+    public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal, CostProfile profile) throws IllegalArgumentException {
+        return path(start, goal, SearchStats.Algorithm.A_STAR, profile);
+    }
+
+    private List<GeographicPoint> path(GeographicPoint start, GeographicPoint goal, SearchStats.Algorithm algorithm, CostProfile profile) {
+        Optional.ofNullable(start).orElseThrow(() -> new IllegalArgumentException("nul start."));
+        Optional.ofNullable(goal).orElseThrow(() -> new IllegalArgumentException("nul goal."));
+        if (start.equals(goal)) {
+            // as MapGraph answers it, without a search.
+            return algorithm == SearchStats.Algorithm.BFS ? Collections.unmodifiableList(Arrays.asList(start)) : Collections.emptyList();
+        }
+        Route route = route(start, goal, algorithm, profile);
+        return route == null ? null : route.getVertices();
+    }
+
+    /**
+     * Drops every entry, they were found on an older version of the graph.
+     */
+    private void invalidate(long newVersion) {
+        if (!routes.isEmpty()) {
+            invalidations.incrementAndGet();
+        }
+        routes.clear();
+        version = newVersion;
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public synchronized void clear() {
+        routes.clear();
+    }
+
+    /**
+     * @return The number of routes kept.
+     */
+    public synchronized int size() {
+        return routes.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of lookups answered from the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of lookups that had to search, the ones for points that are not intersections included.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of routes dropped to make room for newer ones.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return The number of times the whole cache was dropped because the graph changed.
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return Hits over lookups, 0 before the first one.
+     */
+    public double getHitRate() {
+        long hits = this.hits.get();
+        long lookups = hits + misses.get();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteCache [size=" + size() + "/" + capacity + ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions="
+               + getEvictions() + ", invalidations=" + getInvalidations() + "]";
+    }
+
+    /**
+     * Start, goal, algorithm and profile of a route.
+     */
+    private static final class Key {
+
+        private final int source;
+
+        private final int target;
+
+        private final SearchStats.Algorithm algorithm;
+
+        private final CostProfile profile;
+
+        Key(int source, int target, SearchStats.Algorithm algorithm, CostProfile profile) {
+            this.source = source;
+            this.target = target;
+            this.algorithm = algorithm;
+            this.profile = profile;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return source == other.source && target == other.target && algorithm == other.algorithm && profile == other.profile;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * source + target) + algorithm.ordinal()) + profile.ordinal();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package roadgraph;
+
+import java.util.Random;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/** A class for timing RouteCache on traffic where a few popular start/goal
+ * pairs come back again and again: the same skewed stream of queries is
+ * routed straight on the graph and through the cache, with a road closed
+ * and reopened now and then, which must drop the cached routes.  Both
+ * must give routes of the same cost.
+ *
+ * @author dayler
+ *
+ */
+public class RouteCacheBenchmarking {
+
+	public static void main(String [] args) {
+
+		// Number of queries of the stream.
+		int queries = 20000;
+
+		// Number of popular start/goal pairs.
+		int popular = 500;
+
+		// Share of the queries for a random pair instead of a popular one.
+		double random = 0.2;
+
+		// Queries between two road changes.
+		int changeEvery = 5000;
+
+		// Routes kept by the cache.
+		int capacity = 1000;
+
+		// Fixed seed so every run routes the same stream.
+		long seed = 20171119L;
+
+		String[] maps = { "data/maps/new_york.map", "data/maps/san_diego.map" };
+
+		System.out.println("map\tus/query\tcached us/query\tspeedup\thit rate\tevictions\tinvalidations");
+		for (String map : maps) {
+			MapGraph graph = new MapGraph();
+			GraphLoader.loadRoadMap(map, graph);
+			GeographicPoint[][] stream = stream(graph.freeze(), queries, popular, random, seed);
+			GeographicPoint[] road = someRoad(graph.freeze());
+
+			// Warm up before timing.
+			run(graph, null, stream, road, changeEvery);
+			run(graph, new RouteCache(graph, capacity), stream, road, changeEvery);
+
+			long start = System.nanoTime();
+			double[] direct = run(graph, null, stream, road, changeEvery);
+			long plain = System.nanoTime() - start;
+			RouteCache cache = new RouteCache(graph, capacity);
+			start = System.nanoTime();
+			double[] cached = run(graph, cache, stream, road, changeEvery);
+			long withCache = System.nanoTime() - start;
+
+			for (int i = 0; i < queries; i++) {
+				if (direct[i] != cached[i]) {
+					throw new IllegalStateException("route costs differ on " + map + " at query " + i + ": " + direct[i] + " != " + cached[i]);
+				}
+			}
+			System.out.println(map + "\t" + String.format("%.1f", plain / 1000.0 / queries)
+					+ "\t" + String.format("%.1f", withCache / 1000.0 / queries) + "\t" + String.format("%.1fx", (double)plain / withCache)
+					+ "\t" + String.format("%.3f", cache.getHitRate()) + "\t" + cache.getEvictions() + "\t" + cache.getInvalidations());
+		}
+	}
+
+	// Routes the stream, closing the road every changeEvery queries and
+	// reopening it the next time, and returns the cost of every route.
+	private static double[] run(MapGraph graph, RouteCache cache, GeographicPoint[][] stream, GeographicPoint[] road, int changeEvery) {
+		double[] costs = new double[stream.length];
+		boolean closed = false;
+		for (int i = 0; i < stream.length; i++) {
+			if (i > 0 && i % changeEvery == 0) {
+				if (closed) {
+					graph.reopenRoad(road[0], road[1]);
+				} else {
+					graph.closeRoad(road[0], road[1]);
+				}
+				closed = !closed;
+			}
+			Route route = cache == null ? graph.route(stream[i][0], stream[i][1]) : cache.route(stream[i][0], stream[i][1]);
+			costs[i] = route == null ? Double.POSITIVE_INFINITY : route.getCost();
+		}
+		if (closed) {
+			graph.reopenRoad(road[0], road[1]);
+		}
+		return costs;
+	}
+
+	// Popular pairs picked with a skew towards the first ones, mixed with random pairs.
+	private static GeographicPoint[][] stream(CompactGraph graph, int queries, int popular, double share, long seed) {
+		Random random = new Random(seed);
+		GeographicPoint[][] pairs = new GeographicPoint[popular][];
+		for (int i = 0; i < popular; i++) {
+			pairs[i] = randomPair(graph, random);
+		}
+		GeographicPoint[][] stream = new GeographicPoint[queries][];
+		for (int i = 0; i < queries; i++) {
+			if (random.nextDouble() < share) {
+				stream[i] = randomPair(graph, random);
+			} else {
+				// the square of a uniform number favours the low ranks.
+				double u = random.nextDouble();
+				stream[i] = pairs[(int)(u * u * popular)];
+			}
+		}
+		return stream;
+	}
+
+	private static GeographicPoint[] randomPair(CompactGraph graph, Random random) {
+		return new GeographicPoint[] { graph.point(random.nextInt(graph.numVertices())), graph.point(random.nextInt(graph.numVertices())) };
+	}
+
+	// The first edge of the vertex with the most edges.
+	private static GeographicPoint[] someRoad(CompactGraph graph) {
+		int busiest = 0;
+		for (int v = 0; v < graph.numVertices(); v++) {
+			if (graph.endEdge(v) - graph.firstEdge(v) > graph.endEdge(busiest) - graph.firstEdge(busiest)) {
+				busiest = v;
+			}
+		}
+		return new GeographicPoint[] { graph.point(busiest), graph.point(graph.target(graph.firstEdge(busiest))) };
+	}
+}
@@ -0,0 +1,67 @@
+package roadgraph;
+
+import java.util.Optional;
+
+import geography.GeographicPoint;
+
+/**
+ * Immutable route query of a batch, see <code>MapGraph.routeAll</code>.
+ *
+ * @author dayler
+ */
+public final class RouteRequest {
+
+    private final GeographicPoint start;
+
+    private final GeographicPoint goal;
+
+    private final SearchStats.Algorithm algorithm;
+
+    private final CostProfile profile;
+
+    /**
+     * @param start The starting location
+     * @param goal The goal location
+     * @param algorithm <code>BFS</code>, <code>DIJKSTRA</code> or <code>A_STAR</code>.
+     * @param profile Cost to minimize.
+     * @throws IllegalArgumentException If any argument is null or the algorithm is not one of those.
+     */
+    public RouteRequest(GeographicPoint start, GeographicPoint goal, SearchStats.Algorithm algorithm, CostProfile profile)
+            throws IllegalArgumentException {
+        this.start = Optional.ofNullable(start).orElseThrow(() -> new IllegalArgumentException("nul start."));
+        this.goal = Optional.ofNullable(goal).orElseThrow(() -> new IllegalArgumentException("nul goal."));
+        this.algorithm = Optional.ofNullable(algorithm).orElseThrow(() -> new IllegalArgumentException("nul algorithm."));
+        this.profile = Optional.ofNullable(profile).orElseThrow(() -> new IllegalArgumentException("nul profile."));
+        if (!MapGraph.canRoute(algorithm)) {
+            throw new IllegalArgumentException("No route by " + algorithm.getLabel() + ".");
+        }
+    }
+
+    /**
+     * @return A request for the route by A*, by travel time.
+     */
+    public static RouteRequest of(GeographicPoint start, GeographicPoint goal) {
+        return new RouteRequest(start, goal, SearchStats.Algorithm.A_STAR, CostProfile.DURATION);
+    }
+
+    public GeographicPoint getStart() {
+        return start;
+    }
+
+    public GeographicPoint getGoal() {
+        return goal;
+    }
+
+    public SearchStats.Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public CostProfile getProfile() {
+        return profile;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteRequest [" + start + " -> " + goal + ", " + algorithm.getLabel() + ", " + profile + "]";
+    }
+}
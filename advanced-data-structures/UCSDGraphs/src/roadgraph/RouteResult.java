@@ -0,0 +1,55 @@
+package roadgraph;
+
+/**
+ * Outcome of one <code>RouteRequest</code> of a batch: the route, or the error that made the request fail, and how long it took.
+ *
+ * @author dayler
+ */
+public final class RouteResult {
+
+    private final RouteRequest request;
+
+    private final Route route;
+
+    private final RuntimeException error;
+
+    private final long latencyNanos;
+
+    RouteResult(RouteRequest request, Route route, RuntimeException error, long latencyNanos) {
+        this.request = request;
+        this.route = route;
+        this.error = error;
+        this.latencyNanos = latencyNanos;
+    }
+
+    public RouteRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * @return The route, <code>null</code> if there is no path or the request failed.
+     */
+    public Route getRoute() {
+        return route;
+    }
+
+    /**
+     * @return The exception thrown by the search, or <code>null</code> if it did not fail. The request is checked when it is built and a
+     * location that is not an intersection gives a <code>null</code> route, so only unexpected failures end up here.
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    /**
+     * @return The time the request took once it started running, without the time it waited for a thread.
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteResult [" + (error != null ? error : route) + ", " + latencyNanos / 1000 + " us]";
+    }
+}
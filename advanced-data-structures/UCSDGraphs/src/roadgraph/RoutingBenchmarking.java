@@ -0,0 +1,103 @@
+package roadgraph;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/** A class for judging the routing engine: bfs, dijkstra and aStarSearch
+ * over the same random start/goal pairs of every map, reporting queries
+ * per second, latency percentiles in microseconds and bytes allocated
+ * per query by the thread running them.
+ *
+ * @author dayler
+ *
+ */
+public class RoutingBenchmarking {
+
+	/** A routing algorithm under test. */
+	private interface Router {
+		Object route(MapGraph graph, GeographicPoint start, GeographicPoint goal);
+	}
+
+	public static void main(String [] args) {
+
+		// Number of random start/goal pairs per map.
+		int queries = 1000;
+
+		// Untimed passes over the pairs before measuring.
+		int warmups = 3;
+
+		// Fixed seed so every run routes the same pairs.
+		long seed = 20171119L;
+
+		String[] names = { "bfs", "dijkstra", "aStarSearch" };
+		Router[] routers = {
+			(graph, start, goal) -> graph.bfs(start, goal),
+			(graph, start, goal) -> graph.dijkstra(start, goal),
+			(graph, start, goal) -> graph.aStarSearch(start, goal)
+		};
+
+		File[] maps = new File("data/maps").listFiles((dir, name) -> name.endsWith(".map"));
+		Arrays.sort(maps, (a, b) -> Long.compare(a.length(), b.length()));
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		System.out.println("map\tvertices\talgorithm\tqueries/s\tp50 us\tp90 us\tp99 us\tmax us\tbytes/query");
+		for (File map : maps) {
+			MapGraph graph = new MapGraph();
+			GraphLoader.loadRoadMap(map.getPath(), graph);
+			GeographicPoint[][] pairs = randomPairs(graph.freeze(), queries, seed);
+
+			for (int a = 0; a < routers.length; a++) {
+				for (int w = 0; w < warmups; w++) {
+					for (GeographicPoint[] pair : pairs) {
+						routers[a].route(graph, pair[0], pair[1]);
+					}
+				}
+
+				long[] latencies = new long[queries];
+				long allocated = threads.getThreadAllocatedBytes(thread);
+				long started = System.nanoTime();
+				for (int i = 0; i < queries; i++) {
+					long start = System.nanoTime();
+					routers[a].route(graph, pairs[i][0], pairs[i][1]);
+					latencies[i] = System.nanoTime() - start;
+				}
+				long elapsed = System.nanoTime() - started;
+				allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+
+				Arrays.sort(latencies);
+				System.out.println(map.getPath() + "\t" + graph.getNumVertices() + "\t" + names[a]
+						+ "\t" + String.format("%.0f", queries * 1e9 / elapsed)
+						+ "\t" + micros(percentile(latencies, 0.50)) + "\t" + micros(percentile(latencies, 0.90))
+						+ "\t" + micros(percentile(latencies, 0.99)) + "\t" + micros(latencies[queries - 1])
+						+ "\t" + (allocated / queries));
+			}
+		}
+	}
+
+	// Nearest-rank percentile of sorted latencies.
+	private static long percentile(long[] sorted, double quantile) {
+		int rank = (int)Math.ceil(quantile * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	private static String micros(long nanos) {
+		return String.format("%.1f", nanos / 1000.0);
+	}
+
+	private static GeographicPoint[][] randomPairs(CompactGraph graph, int queries, long seed) {
+		Random random = new Random(seed);
+		GeographicPoint[][] pairs = new GeographicPoint[queries][2];
+		for (GeographicPoint[] pair : pairs) {
+			pair[0] = graph.point(random.nextInt(graph.numVertices()));
+			pair[1] = graph.point(random.nextInt(graph.numVertices()));
+		}
+		return pairs;
+	}
+}
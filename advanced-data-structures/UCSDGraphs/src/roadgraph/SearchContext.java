@@ -0,0 +1,161 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.util.Arrays;
+
+/**
+ * Per-query state of a search over a <code>CompactGraph</code>: tentative distance, parent, parent edge and settled flag of every vertex,
+ * indexed by vertex id.
+ * <p>
+ * Every slot is tagged with the epoch of the query that wrote it, and <code>reset()</code> just starts a new epoch, so a query never pays for
+ * clearing the state left by the previous one. A context belongs to a single thread at a time.
+ *
+ * @author dayler
+ */
+final class SearchContext {
+
+    private final double[] distance;
+
+    private final int[] parent;
+
+    /**
+     * Edge id from <code>parent</code> to the vertex, -1 if the search did not record it.
+     */
+    private final int[] parentEdge;
+
+    /**
+     * Epoch in which <code>distance</code>, <code>parent</code> and <code>parentEdge</code> of the vertex were written.
+     */
+    private final int[] reached;
+
+    /**
+     * Epoch in which the vertex was settled.
+     */
+    private final int[] settled;
+
+    /**
+     * Scratch queue for searches that need one, e.g. BFS.
+     */
+    final int[] queue;
+
+    /**
+     * Priority queue for the weighted searches.
+     */
+    final IndexedMinHeap heap;
+
+    private int epoch;
+
+    /**
+     * Work counters of the current query, see <code>SearchStats</code>.
+     */
+    int settledNodes;
+    int relaxedEdges;
+    int heapPushes;
+    int peakFrontier;
+
+    /**
+     * Context of the backward search of a bidirectional query, created on first use.
+     */
+    private SearchContext backward;
+
+    /**
+     * True while a query is running on this context.
+     */
+    boolean inUse;
+
+    SearchContext(int numVertices) {
+        distance = new double[numVertices];
+        parent = new int[numVertices];
+        parentEdge = new int[numVertices];
+        reached = new int[numVertices];
+        settled = new int[numVertices];
+        queue = new int[numVertices];
+        heap = new IndexedMinHeap(numVertices);
+    }
+
+    /**
+     * Starts a new query, forgetting the state of the previous one.
+     */
+    void reset() {
+        heap.clear();
+        settledNodes = 0;
+        relaxedEdges = 0;
+        heapPushes = 0;
+        peakFrontier = 0;
+        if (++epoch == Integer.MAX_VALUE) {
+            // wrap around, old stamps could collide with the new epochs.
+            Arrays.fill(reached, 0);
+            Arrays.fill(settled, 0);
+            epoch = 1;
+        }
+    }
+
+    /**
+     * @return The context for the backward frontier of a bidirectional query, reset for the current query.
+     */
+    SearchContext backward() {
+        if (backward == null) {
+            backward = new SearchContext(distance.length);
+        }
+        backward.reset();
+        return backward;
+    }
+
+    /**
+     * @param algorithm
+     * @param wallNanos
+     * @return The counters of the current query.
+     */
+    SearchStats stats(SearchStats.Algorithm algorithm, long wallNanos) {
+        return new SearchStats(algorithm, settledNodes, relaxedEdges, heapPushes, peakFrontier, wallNanos);
+    }
+
+    boolean isReached(int v) {
+        return reached[v] == epoch;
+    }
+
+    /**
+     * @param v
+     * @return Tentative distance of <code>v</code>, or infinity if it was not reached in this query.
+     */
+    double distance(int v) {
+        return reached[v] == epoch ? distance[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @param v
+     * @return Parent of <code>v</code>, or -1 if it was not reached in this query.
+     */
+    int parent(int v) {
+        return reached[v] == epoch ? parent[v] : -1;
+    }
+
+    /**
+     * @param v
+     * @return Id of the edge the search reached <code>v</code> through, or -1 if it was not reached in this query or the edge is unknown.
+     */
+    int parentEdge(int v) {
+        return reached[v] == epoch ? parentEdge[v] : -1;
+    }
+
+    void update(int v, double dist, int from) {
+        update(v, dist, from, -1);
+    }
+
+    void update(int v, double dist, int from, int edge) {
+        distance[v] = dist;
+        parent[v] = from;
+        parentEdge[v] = edge;
+        reached[v] = epoch;
+    }
+
+    boolean isSettled(int v) {
+        return settled[v] == epoch;
+    }
+
+    void settle(int v) {
+        settled[v] = epoch;
+    }
+}
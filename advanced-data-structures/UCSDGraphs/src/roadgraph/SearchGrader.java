@@ -21,7 +21,7 @@ public class SearchGrader implements Runnable {
 
     public int correct;
 
-    private static final int TESTS = 12;
+    private static final int TESTS = 13;
 
     /** Format readable feedback */
     public static String printOutput(double score, String feedback) {
@@ -125,6 +125,47 @@ public class SearchGrader implements Runnable {
         }
     }
 
+    /** Check that BFS goes around closed roads, and finds no path when
+     * only closed roads lead to the end.
+     * @param i The test number
+     * @param file The file to read from
+     * @param desc A description of the graph
+     */
+    public void runClosureTest(int i, String file, String desc) {
+        MapGraph graph = new MapGraph();
+
+        feedback += "\n\n" + desc;
+
+        GraphLoader.loadRoadMap("data/graders/mod2/" + file, graph);
+        GeographicPoint start = new GeographicPoint(0, 0);
+        GeographicPoint end = new GeographicPoint(1, 2);
+        List<GeographicPoint> around = new ArrayList<GeographicPoint>();
+        around.add(new GeographicPoint(0, 0));
+        around.add(new GeographicPoint(1, 0));
+        around.add(new GeographicPoint(2, 0));
+        around.add(new GeographicPoint(2, 1));
+        around.add(new GeographicPoint(2, 2));
+        around.add(new GeographicPoint(1, 2));
+
+        feedback += appendFeedback(i, "Testing BFS with closed roads");
+        graph.closeRoad(new GeographicPoint(0, 1), new GeographicPoint(0, 2));
+        List<GeographicPoint> bfs = graph.bfs(start, end);
+        if (bfs == null || !printBFSList(around).equals(printBFSList(bfs))) {
+            feedback += "FAILED. Expected: \n" + printBFSList(around) + "Got: \n" + (bfs == null ? "null\n" : printBFSList(bfs));
+            return;
+        }
+        graph.closeRoad(new GeographicPoint(2, 2), new GeographicPoint(1, 2));
+        bfs = graph.bfs(start, end);
+        Route route = graph.route(start, end, SearchStats.Algorithm.BFS, CostProfile.LENGTH, (x) -> {});
+        if (bfs != null || route != null) {
+            feedback += "FAILED. Expected null once every road to the end is closed; got \n"
+                    + (bfs == null ? "null\n" : printBFSList(bfs)) + "and route " + route + ".";
+        } else {
+            feedback += "PASSED.";
+            correct++;
+        }
+    }
+
     /** Print a BFS path in readable form */
     public String printBFSList(List<GeographicPoint> bfs) {
         String ret = "";
@@ -149,6 +190,8 @@ public class SearchGrader implements Runnable {
 
             runTest(4, "ucsd.map", "UCSD MAP: Intersections around UCSD", new GeographicPoint(32.8756538, -117.2435715), new GeographicPoint(32.8742087, -117.2381344));
 
+            runClosureTest(13, "map3.txt", "Square graph - Roads closed on the shortest path");
+
             if (correct == TESTS)
                 feedback = "All tests passed. Great job!" + feedback;
             else
@@ -0,0 +1,176 @@
+/**
+ *
+ */
+package roadgraph;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Aggregate registry of <code>SearchStats</code>. Every recorded query is rolled up into lock-free histograms per algorithm, which
+ * <code>scrape()</code> renders in the Prometheus text format. Listeners can also subscribe to the raw stats of each query.
+ *
+ * @author dayler
+ */
+public final class SearchMetrics {
+
+    private static final SearchMetrics GLOBAL = new SearchMetrics();
+
+    private final Map<SearchStats.Algorithm, AlgorithmMetrics> metrics = new EnumMap<>(SearchStats.Algorithm.class);
+
+    private final List<Consumer<SearchStats>> listeners = new CopyOnWriteArrayList<>();
+
+    public SearchMetrics() {
+        for (SearchStats.Algorithm algorithm : SearchStats.Algorithm.values()) {
+            metrics.put(algorithm, new AlgorithmMetrics());
+        }
+    }
+
+    /**
+     * @return The registry shared by the graphs that were not given their own.
+     */
+    public static SearchMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Rolls up the stats of a query and hands them to the listeners.
+     *
+     * @param stats
+     */
+    public void record(SearchStats stats) {
+        Objects.requireNonNull(stats, "stats");
+        AlgorithmMetrics algorithm = metrics.get(stats.getAlgorithm());
+        algorithm.wallMicros.record(stats.getWallNanos() / 1000L);
+        algorithm.settledNodes.record(stats.getSettledNodes());
+        algorithm.relaxedEdges.record(stats.getRelaxedEdges());
+        algorithm.heapPushes.record(stats.getHeapPushes());
+        algorithm.peakFrontier.record(stats.getPeakFrontier());
+        for (Consumer<SearchStats> listener : listeners) {
+            listener.accept(stats);
+        }
+    }
+
+    public void addListener(Consumer<SearchStats> listener) {
+        listeners.add(Objects.requireNonNull(listener, "listener"));
+    }
+
+    public void removeListener(Consumer<SearchStats> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param algorithm
+     * @return Histogram of the wall time in microseconds of the queries run with <code>algorithm</code>.
+     */
+    public Histogram getWallMicros(SearchStats.Algorithm algorithm) {
+        return metrics.get(algorithm).wallMicros;
+    }
+
+    /**
+     * @param algorithm
+     * @return Histogram of the settled nodes of the queries run with <code>algorithm</code>.
+     */
+    public Histogram getSettledNodes(SearchStats.Algorithm algorithm) {
+        return metrics.get(algorithm).settledNodes;
+    }
+
+    /**
+     * @return Every histogram in the Prometheus text exposition format.
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        append(out, "route_search_wall_microseconds", "Wall time of a route query.", m -> m.wallMicros);
+        append(out, "route_search_settled_nodes", "Vertices settled by a route query.", m -> m.settledNodes);
+        append(out, "route_search_relaxed_edges", "Edges relaxed by a route query.", m -> m.relaxedEdges);
+        append(out, "route_search_heap_pushes", "Frontier inserts and decrease-keys of a route query.", m -> m.heapPushes);
+        append(out, "route_search_peak_frontier", "Peak frontier size of a route query.", m -> m.peakFrontier);
+        return out.toString();
+    }
+
+    private void append(StringBuilder out, String name, String help, Function<AlgorithmMetrics, Histogram> histogram) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        for (Map.Entry<SearchStats.Algorithm, AlgorithmMetrics> entry : metrics.entrySet()) {
+            histogram.apply(entry.getValue()).append(out, name, "algorithm=\"" + entry.getKey().getLabel() + "\"");
+        }
+    }
+
+    private static final class AlgorithmMetrics {
+        final Histogram wallMicros = new Histogram();
+        final Histogram settledNodes = new Histogram();
+        final Histogram relaxedEdges = new Histogram();
+        final Histogram heapPushes = new Histogram();
+        final Histogram peakFrontier = new Histogram();
+    }
+
+    /**
+     * Histogram of non-negative values with power of two buckets: bucket <code>i</code> counts the values in <code>[2^(i-1), 2^i)</code>,
+     * bucket 0 counts the zeros.
+     */
+    public static final class Histogram {
+
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder sum = new LongAdder();
+
+        public void record(long value) {
+            long v = Math.max(0L, value);
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(v)));
+            count.increment();
+            sum.add(v);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getSum() {
+            return sum.sum();
+        }
+
+        /**
+         * @param quantile In <code>[0, 1]</code>.
+         * @return Upper bound of the bucket holding the quantile, 0 if nothing was recorded.
+         */
+        public long quantile(double quantile) {
+            long total = getCount();
+            long rank = (long)Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    return upperBound(i);
+                }
+            }
+            return 0L;
+        }
+
+        private static long upperBound(int bucket) {
+            return bucket == 0 ? 0L : bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        }
+
+        private void append(StringBuilder out, String name, String labels) {
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS - 1; i++) {
+                cumulative += buckets.get(i);
+                out.append(name).append("_bucket{").append(labels).append(",le=\"").append(upperBound(i)).append("\"} ").append(cumulative)
+                   .append('\n');
+            }
+            out.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(getCount()).append('\n');
+            out.append(name).append("_sum{").append(labels).append("} ").append(getSum()).append('\n');
+            out.append(name).append("_count{").append(labels).append("} ").append(getCount()).append('\n');
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ *
+ */
+package roadgraph;
+
+/**
+ * Work done by a single route query, published to the <code>SearchMetrics</code> of the graph instead of being printed.
+ *
+ * @author dayler
+ */
+public final class SearchStats {
+
+    /**
+     * Search algorithms reported in the stats.
+     */
+    public enum Algorithm {
+        BFS("bfs"),
+        DIJKSTRA("dijkstra"),
+        A_STAR("astar"),
+        BIDIRECTIONAL_DIJKSTRA("bidirectional_dijkstra"),
+        BIDIRECTIONAL_A_STAR("bidirectional_astar"),
+        CONTRACTION_HIERARCHY("contraction_hierarchy"),
+        ONE_TO_MANY("one_to_many"),
+        MANY_TO_MANY("many_to_many"),
+        ISOCHRONE("isochrone"),
+        FACILITIES("facilities"),
+        ;
+
+        private String label;
+
+        private Algorithm(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return The name of the algorithm in the scraped metrics.
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final Algorithm algorithm;
+
+    private final int settledNodes;
+
+    private final int relaxedEdges;
+
+    private final int heapPushes;
+
+    private final int peakFrontier;
+
+    private final long wallNanos;
+
+    public SearchStats(Algorithm algorithm, int settledNodes, int relaxedEdges, int heapPushes, int peakFrontier, long wallNanos) {
+        this.algorithm = algorithm;
+        this.settledNodes = settledNodes;
+        this.relaxedEdges = relaxedEdges;
+        this.heapPushes = heapPushes;
+        this.peakFrontier = peakFrontier;
+        this.wallNanos = wallNanos;
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return Vertices removed from the frontier.
+     */
+    public int getSettledNodes() {
+        return settledNodes;
+    }
+
+    /**
+     * @return Edges scanned from settled vertices.
+     */
+    public int getRelaxedEdges() {
+        return relaxedEdges;
+    }
+
+    /**
+     * @return Inserts and decrease-keys on the frontier.
+     */
+    public int getHeapPushes() {
+        return heapPushes;
+    }
+
+    /**
+     * @return Largest size reached by the frontier.
+     */
+    public int getPeakFrontier() {
+        return peakFrontier;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    @Override
+    public String toString() {
+        return algorithm.getLabel() + "[settled:" + settledNodes + " relaxed:" + relaxedEdges + " pushes:" + heapPushes + " peak:" + peakFrontier
+                + " ns:" + wallNanos + "]";
+    }
+}
@@ -0,0 +1,668 @@
+package roadgraph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import geography.BoundingBox;
+import geography.DistanceKernel;
+import geography.GeographicPoint;
+
+/**
+ * A road graph split in square tiles of latitude and longitude, each one a graph file of its own, for regions too big to keep in memory.
+ * <p>
+ * A vertex belongs to the tile its coordinates fall in, and a tile holds its vertices and the edges leaving them. The targets of the edges
+ * that cross to another tile are kept in the tile too, as border nodes. Every vertex has a global id, the ids of a tile being a range in
+ * the order of the manifest, and the border-node table of a tile gives the global id of each of its border nodes, which is how a search
+ * steps from one tile to the next without loading it. The searches run on a <code>SearchContext</code> over the global ids, like the ones
+ * of <code>MapGraph</code>, so only the search state grows with the whole region.
+ * <p>
+ * The tiles are loaded on demand, when a search settles one of their vertices, into a least recently used cache of a fixed number of tiles:
+ * a query only holds the tile it is expanding, so the cache bounds the tiles in memory whatever the size of the region, at the price of
+ * reading a tile again when a query comes back to it after it was evicted. A tile is read outside the lock of the cache, once however many
+ * queries wait for it. A* only loads the tiles around the straight line from the start to the goal.
+ * <p>
+ * The tiles are written by <code>partition</code>, from a graph loaded by <code>GraphLoader</code>, into a directory with a
+ * <code>tiles.txt</code> manifest. Like <code>CompactGraph.save</code> they keep the lengths and road types of the edges and not the costs
+ * changed on a <code>MapGraph</code>. It is thread-safe.
+ *
+ * @author dayler
+ */
+public final class TiledGraph {
+
+    /**
+     * Name of the manifest of a tile directory.
+     */
+    public static final String MANIFEST = "tiles.txt";
+
+    private final Path dir;
+
+    /**
+     * Side of a tile, in degrees.
+     */
+    private final double tileSize;
+
+    /**
+     * Keys of the tiles in the order of the manifest, and their index by key.
+     */
+    private final long[] keys;
+
+    private final Map<Long, Integer> indexOf;
+
+    /**
+     * First global id of every tile, the last entry is the number of vertices.
+     */
+    private final int[] base;
+
+    private final int[] numEdges;
+
+    private final int[] numBorderNodes;
+
+    private final int capacity;
+
+    /**
+     * Tiles by index, loaded or being loaded, in access order. Guarded by <code>this</code>.
+     */
+    private final LinkedHashMap<Integer, CompletableFuture<Tile>> tiles;
+
+    private final ThreadLocal<SearchContext> contexts;
+
+    private volatile SearchMetrics metrics = SearchMetrics.global();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong loads = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private TiledGraph(Path dir, double tileSize, long[] keys, int[] base, int[] numEdges, int[] numBorderNodes, int capacity) {
+        this.dir = dir;
+        this.tileSize = tileSize;
+        this.keys = keys;
+        this.base = base;
+        this.numEdges = numEdges;
+        this.numBorderNodes = numBorderNodes;
+        this.capacity = capacity;
+        this.indexOf = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            indexOf.put(keys[i], i);
+        }
+        this.tiles = new LinkedHashMap<Integer, CompletableFuture<Tile>>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CompletableFuture<Tile>> eldest) {
+                if (size() > TiledGraph.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        int numVertices = base[keys.length];
+        this.contexts = ThreadLocal.withInitial(() -> new SearchContext(numVertices));
+    }
+
+    /**
+     * Splits a graph in tiles and writes them to a directory, see <code>open</code>.
+     *
+     * @param graph E.g. <code>CompactGraph.load</code> of a file of <code>GraphLoader.createGraphFile</code>.
+     * @param tileSize Side of a tile, in degrees.
+     * @param dir Directory of the tiles, created if missing. The tiles and the manifest already there are overwritten.
+     * @throws IOException If a file cannot be written.
+     * @throws IllegalArgumentException If the tile size is not positive.
+     */
+    public static void partition(CompactGraph graph, double tileSize, Path dir) throws IOException, IllegalArgumentException {
+        Objects.requireNonNull(graph, "graph");
+        Objects.requireNonNull(dir, "dir");
+        if (!(tileSize > 0)) {
+            throw new IllegalArgumentException("tileSize must be positive: " + tileSize);
+        }
+        Map<Long, List<Integer>> owned = new TreeMap<>();
+        for (int v = 0; v < graph.numVertices(); v++) {
+            owned.computeIfAbsent(keyOf(graph.lat(v), graph.lon(v), tileSize), key -> new ArrayList<>()).add(v);
+        }
+        Files.createDirectories(dir);
+        Map<GeographicPoint, Integer> globalOf = new HashMap<>();
+        Map<Long, List<GeographicPoint>> borders = new LinkedHashMap<>();
+        try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+            writer.write("tileSize " + tileSize);
+            writer.newLine();
+            int next = 0;
+            for (Map.Entry<Long, List<Integer>> entry : owned.entrySet()) {
+                long key = entry.getKey();
+                MapGraph tile = new MapGraph();
+                for (int v : entry.getValue()) {
+                    tile.addVertex(graph.point(v));
+                }
+                for (int v : entry.getValue()) {
+                    for (int e = graph.firstEdge(v), end = graph.endEdge(v); e < end; e++) {
+                        // a target in another tile is added as a border node.
+                        GeographicPoint target = graph.point(graph.target(e));
+                        tile.addVertex(target);
+                        tile.addEdge(graph.point(v), target, graph.roadName(e), graph.roadType(e), graph.length(e), graph.geometry(e));
+                    }
+                }
+                CompactGraph frozen = tile.freeze();
+                frozen.save(dir.resolve(fileOf(key, ".graph")));
+                // global ids follow the order of the vertices in the saved tile, as open reads them.
+                List<GeographicPoint> border = new ArrayList<>();
+                int numOwned = 0;
+                for (int v = 0; v < frozen.numVertices(); v++) {
+                    if (keyOf(frozen.lat(v), frozen.lon(v), tileSize) == key) {
+                        globalOf.put(frozen.point(v), next + numOwned++);
+                    } else {
+                        border.add(frozen.point(v));
+                    }
+                }
+                borders.put(key, border);
+                next += numOwned;
+                writer.write(rowOf(key) + " " + colOf(key) + " " + numOwned + " " + frozen.numEdges() + " " + border.size());
+                writer.newLine();
+            }
+        }
+        // the border-node tables, now that every tile has its ids.
+        for (Map.Entry<Long, List<GeographicPoint>> entry : borders.entrySet()) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(dir.resolve(fileOf(entry.getKey(), ".border")))))) {
+                out.writeInt(entry.getValue().size());
+                for (GeographicPoint point : entry.getValue()) {
+                    out.writeInt(globalOf.get(point));
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the tiles written by <code>partition</code>. Only the manifest is read, the tiles are loaded by the queries.
+     *
+     * @param dir Directory of the tiles.
+     * @param capacity Maximum number of tiles kept in memory.
+     * @return The tiled graph.
+     * @throws IOException If the manifest cannot be read or is not one.
+     * @throws IllegalArgumentException If the capacity is not positive.
+     */
+    public static TiledGraph open(Path dir, int capacity) throws IOException, IllegalArgumentException {
+        Objects.requireNonNull(dir, "dir");
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        Path file = dir.resolve(MANIFEST);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.startsWith("tileSize ")) {
+                throw new IOException("Not a tile manifest: " + file);
+            }
+            double tileSize = Double.parseDouble(header.substring("tileSize ".length()));
+            List<int[]> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split(" ");
+                if (fields.length != 5) {
+                    throw new IOException("Corrupted tile manifest: " + file + ": " + line);
+                }
+                int[] values = new int[fields.length];
+                for (int i = 0; i < fields.length; i++) {
+                    values[i] = Integer.parseInt(fields[i]);
+                }
+                lines.add(values);
+            }
+            long[] keys = new long[lines.size()];
+            int[] base = new int[lines.size() + 1];
+            int[] numEdges = new int[lines.size()];
+            int[] numBorderNodes = new int[lines.size()];
+            for (int i = 0; i < keys.length; i++) {
+                int[] values = lines.get(i);
+                keys[i] = keyOf(values[0], values[1]);
+                base[i + 1] = base[i] + values[2];
+                numEdges[i] = values[3];
+                numBorderNodes[i] = values[4];
+            }
+            return new TiledGraph(dir, tileSize, keys, base, numEdges, numBorderNodes, capacity);
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupted tile manifest: " + file, e);
+        }
+    }
+
+    private static long keyOf(double lat, double lon, double tileSize) {
+        return keyOf((int) Math.floor(lat / tileSize), (int) Math.floor(lon / tileSize));
+    }
+
+    private static long keyOf(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+
+    private static int rowOf(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int colOf(long key) {
+        return (int) key;
+    }
+
+    private static String fileOf(long key, String extension) {
+        return "tile_" + rowOf(key) + "_" + colOf(key) + extension;
+    }
+
+    /**
+     * @param id Global id of a vertex.
+     * @return The index of the tile the vertex belongs to.
+     */
+    private int tileIndexOf(int id) {
+        int i = Arrays.binarySearch(base, id);
+        // an empty tile shares its base with the next one, the owner is the last of them.
+        while (i >= 0 && i + 1 < keys.length && base[i + 1] == id) {
+            i++;
+        }
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /**
+     * @param index
+     * @return The tile, from the cache or read from its files. The first query to ask for a tile that is not in the cache reads it, outside
+     * the lock of the cache, and the other ones asking for it meanwhile wait for that read.
+     * @throws UncheckedIOException If the tile files cannot be read.
+     */
+    private Tile tile(int index) {
+        CompletableFuture<Tile> future;
+        boolean read = false;
+        synchronized (this) {
+            future = tiles.get(index);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                tiles.put(index, future);
+                read = true;
+            }
+        }
+        if (!read) {
+            hits.incrementAndGet();
+        } else {
+            try {
+                future.complete(new Tile(this, index));
+                loads.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    // the next query tries again.
+                    tiles.remove(index, future);
+                }
+                UncheckedIOException error = new UncheckedIOException("Problem loading tile: " + fileOf(keys[index], ".graph"),
+                                                                      e instanceof IOException ? (IOException) e : new IOException(e));
+                future.completeExceptionally(error);
+                throw error;
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * @param point
+     * @return The global id of <code>point</code>, or -1 if it is not a vertex of the graph.
+     */
+    private int idOf(GeographicPoint point) {
+        Integer index = indexOf.get(keyOf(point.getX(), point.getY(), tileSize));
+        if (index == null) {
+            return -1;
+        }
+        Tile tile = tile(index);
+        // a tile has no point index, a scan of its own vertices is enough for the two ends of a query.
+        for (int v : tile.local) {
+            if (tile.graph.lat(v) == point.getX() && tile.graph.lon(v) == point.getY()) {
+                return tile.global[v];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the shortest path by minutes of travel, see <code>dijkstra(GeographicPoint, GeographicPoint, CostProfile)</code>.
+     */
+    public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal) throws IllegalArgumentException {
+        return dijkstra(start, goal, CostProfile.DURATION);
+    }
+
+    /**
+     * Finds the shortest path from <code>start</code> to <code>goal</code> across the tiles, loading the ones it settles a vertex of.
+     *
+     * @param start The starting location
+     * @param goal The goal location
+     * @param profile Cost of the edges.
+     * @return The list of intersections that form the shortest path from start to goal (including both start and goal), empty if they are
+     * the same, null if there is no path or a location is not an intersection of the graph, as <code>MapGraph.dijkstra</code>.
+     * @throws IllegalArgumentException If any argument is null.
+     */
+    public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal, CostProfile profile) throws IllegalArgumentException {
+        return findPath(start, goal, profile, SearchStats.Algorithm.DIJKSTRA);
+    }
+
+    /**
+     * Finds the shortest path by minutes of travel, see <code>aStarSearch(GeographicPoint, GeographicPoint, CostProfile)</code>.
+     */
+    public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal) throws IllegalArgumentException {
+        return aStarSearch(start, goal, CostProfile.DURATION);
+    }
+
+    /**
+     * Finds the shortest path from <code>start</code> to <code>goal</code> across the tiles with A* and the great-circle distance, which
+     * keeps the search, and the tiles it loads, around the line from the start to the goal.
+     *
+     * @param start The starting location
+     * @param goal The goal location
+     * @param profile Cost of the edges.
+     * @return The list of intersections that form the shortest path from start to goal (including both start and goal), empty if they are
+     * the same, null if there is no path or a location is not an intersection of the graph, as <code>MapGraph.aStarSearch</code>.
+     * @throws IllegalArgumentException If any argument is null.
+     */
+    public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal, CostProfile profile) throws IllegalArgumentException {
+        return findPath(start, goal, profile, SearchStats.Algorithm.A_STAR);
+    }
+
+    private List<GeographicPoint> findPath(GeographicPoint start, GeographicPoint goal, CostProfile profile,
+                                           SearchStats.Algorithm algorithm) {
+        Optional.ofNullable(start).orElseThrow(() -> new IllegalArgumentException("nul start."));
+        Optional.ofNullable(goal).orElseThrow(() -> new IllegalArgumentException("nul goal."));
+        Optional.ofNullable(profile).orElseThrow(() -> new IllegalArgumentException("nul profile."));
+        if (start.equals(goal)) {
+            return Collections.emptyList();
+        }
+        int source = idOf(start);
+        int target = idOf(goal);
+        if (source < 0 || target < 0) {
+            return null;
+        }
+        long started = System.nanoTime();
+        SearchContext context = contexts.get();
+        context.reset();
+        double minCostPerKm = algorithm == SearchStats.Algorithm.A_STAR ? profile.getMinCostPerKm() : 0;
+        search(context, profile, source, target, goal.getX(), goal.getY(), minCostPerKm);
+        metrics.record(context.stats(algorithm, System.nanoTime() - started));
+        return buildPath(context, source, target);
+    }
+
+    /**
+     * Dijkstra, or A* when <code>minCostPerKm</code> is positive, over the global ids from <code>source</code> until <code>target</code> is
+     * settled, as <code>MapGraph.search</code>. Only the tile of the vertex being expanded is held, and it is kept while the next vertices
+     * settled are in it too, without going through the cache.
+     */
+    private void search(SearchContext context, CostProfile profile, int source, int target, double goalLat, double goalLon,
+                        double minCostPerKm) {
+        context.update(source, 0, source);
+        IndexedMinHeap unsettle = context.heap;
+        unsettle.offer(source, 0);
+        context.heapPushes++;
+        context.peakFrontier = 1;
+        int index = -1;
+        Tile tile = null;
+        CompactGraph graph = null;
+        CostTable weights = null;
+        while (!unsettle.isEmpty()) {
+            int current = unsettle.poll();
+            context.settle(current);
+            context.settledNodes++;
+            if (current == target) {
+                break;
+            }
+            if (index < 0 || current < base[index] || current >= base[index + 1]) {
+                index = tileIndexOf(current);
+                tile = tile(index);
+                graph = tile.graph;
+                weights = graph.costs(profile);
+            }
+            int v = tile.local[current - base[index]];
+            for (int e = graph.firstEdge(v), end = graph.endEdge(v); e < end; e++) {
+                int w = graph.target(e);
+                int next = tile.global[w];
+                context.relaxedEdges++;
+                if (context.isSettled(next)) {
+                    continue;
+                }
+                double tmp = context.distance(current) + weights.get(e);
+                if (tmp < context.distance(next)) {
+                    context.update(next, tmp, current);
+                    double estimate = minCostPerKm == 0 ? 0
+                            : DistanceKernel.HAVERSINE.distance(graph.lat(w), graph.lon(w), goalLat, goalLon) * minCostPerKm;
+                    unsettle.offer(next, tmp + estimate);
+                    context.heapPushes++;
+                    context.peakFrontier = Math.max(context.peakFrontier, unsettle.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The path to <code>target</code>, or <code>null</code> if it was not reached. The points are read from the tiles along the path.
+     */
+    private List<GeographicPoint> buildPath(SearchContext context, int source, int target) {
+        if (!context.isReached(target)) {
+            return null;
+        }
+        List<GeographicPoint> path = new ArrayList<>();
+        int index = -1;
+        Tile tile = null;
+        for (int current = target;; current = context.parent(current)) {
+            if (index < 0 || current < base[index] || current >= base[index + 1]) {
+                index = tileIndexOf(current);
+                tile = tile(index);
+            }
+            path.add(tile.graph.point(tile.local[current - base[index]]));
+            if (current == source) {
+                break;
+            }
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Loads the tiles overlapping a box into a <code>MapGraph</code>, for the queries of <code>MapGraph</code> on a part of the region, e.g.
+     * the area around a route. The edges to the vertices of the tiles left out are dropped. The tiles are read through the cache but all of
+     * them end up in the <code>MapGraph</code>, however many the cache holds.
+     *
+     * @param box
+     * @return The vertices of every tile overlapping the box, and the edges between them.
+     */
+    public MapGraph region(BoundingBox box) {
+        Optional.ofNullable(box).orElseThrow(() -> new IllegalArgumentException("nul box."));
+        Set<Integer> overlapping = new HashSet<>();
+        for (int row = (int) Math.floor(box.getMinLat() / tileSize); row <= (int) Math.floor(box.getMaxLat() / tileSize); row++) {
+            for (int col = (int) Math.floor(box.getMinLon() / tileSize); col <= (int) Math.floor(box.getMaxLon() / tileSize); col++) {
+                Integer index = indexOf.get(keyOf(row, col));
+                if (index != null) {
+                    overlapping.add(index);
+                }
+            }
+        }
+        MapGraph region = new MapGraph();
+        for (int index : overlapping) {
+            Tile tile = tile(index);
+            for (int v : tile.local) {
+                region.addVertex(tile.graph.point(v));
+            }
+        }
+        for (int index : overlapping) {
+            Tile tile = tile(index);
+            CompactGraph graph = tile.graph;
+            for (int v : tile.local) {
+                for (int e = graph.firstEdge(v), end = graph.endEdge(v); e < end; e++) {
+                    int w = graph.target(e);
+                    if (overlapping.contains(tileIndexOf(tile.global[w]))) {
+                        region.addEdge(graph.point(v), graph.point(w), graph.roadName(e), graph.roadType(e), graph.length(e), graph.geometry(e));
+                    }
+                }
+            }
+        }
+        return region;
+    }
+
+    /**
+     * @return The registry the <code>SearchStats</code> of every query on this graph are published to.
+     */
+    public SearchMetrics getSearchMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics Registry for the <code>SearchStats</code> of the next queries on this graph.
+     */
+    public void setSearchMetrics(SearchMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+    }
+
+    /**
+     * @return The side of a tile, in degrees.
+     */
+    public double getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return The number of tiles, loaded or not.
+     */
+    public int getNumTiles() {
+        return keys.length;
+    }
+
+    /**
+     * @return The number of vertices of every tile, border nodes excluded, loaded or not.
+     */
+    public int getNumVertices() {
+        return base[keys.length];
+    }
+
+    /**
+     * @return The number of edges of every tile, loaded or not.
+     */
+    public long getNumEdges() {
+        long total = 0;
+        for (int count : numEdges) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return The number of border nodes of every tile, the vertices reached by an edge from another tile counted once per tile.
+     */
+    public long getNumBorderNodes() {
+        long total = 0;
+        for (int count : numBorderNodes) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return The maximum number of tiles kept in memory.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of tiles in memory, or being read.
+     */
+    public synchronized int getResidentTiles() {
+        return tiles.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of tiles read from their files, again after they were evicted.
+     */
+    public long getLoads() {
+        return loads.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "TiledGraph [dir=" + dir + ", tileSize=" + tileSize + ", tiles=" + keys.length + ", capacity=" + capacity + "]";
+    }
+
+    /**
+     * A loaded tile, with the global id of every vertex of its graph and the vertex of every one of its own global ids.
+     */
+    private static final class Tile {
+
+        final CompactGraph graph;
+
+        /**
+         * Global id by vertex of the graph, from the border-node table for the border nodes.
+         */
+        final int[] global;
+
+        /**
+         * Vertex of the graph by global id, less the base of the tile.
+         */
+        final int[] local;
+
+        Tile(TiledGraph tiles, int index) throws IOException {
+            long key = tiles.keys[index];
+            // only forward searches run on a tile, the reverse edges and the indexes would be rebuilt on every load for nothing.
+            graph = CompactGraph.loadForwardOnly(tiles.dir.resolve(fileOf(key, ".graph")));
+            int[] border;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(tiles.dir.resolve(fileOf(key, ".border")))))) {
+                border = new int[in.readInt()];
+                for (int i = 0; i < border.length; i++) {
+                    border[i] = in.readInt();
+                }
+            }
+            int base = tiles.base[index];
+            global = new int[graph.numVertices()];
+            local = new int[tiles.base[index + 1] - base];
+            int numOwned = 0;
+            int numBorder = 0;
+            for (int v = 0; v < global.length; v++) {
+                if (keyOf(graph.lat(v), graph.lon(v), tiles.tileSize) == key) {
+                    if (numOwned == local.length) {
+                        throw new IOException("Corrupted tile: " + fileOf(key, ".graph"));
+                    }
+                    local[numOwned] = v;
+                    global[v] = base + numOwned++;
+                } else {
+                    if (numBorder == border.length) {
+                        throw new IOException("Corrupted border-node table: " + fileOf(key, ".border"));
+                    }
+                    global[v] = border[numBorder++];
+                }
+            }
+            if (numOwned != local.length || numBorder != border.length) {
+                throw new IOException("Tile does not match the manifest: " + fileOf(key, ".graph"));
+            }
+        }
+    }
+}
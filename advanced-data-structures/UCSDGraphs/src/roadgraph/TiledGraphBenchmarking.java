@@ -0,0 +1,136 @@
+package roadgraph;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+import geography.BoundingBox;
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/** A class for timing the queries on a TiledGraph, with the tiles
+ * loaded on demand into caches of growing capacity, against the same
+ * queries on the whole graph in memory: the time per query, the tiles
+ * loaded per query and the most tiles kept.  Every path must cost the
+ * same as the one of the whole graph, and the cache may not keep more
+ * tiles than its capacity.
+ *
+ * @author dayler
+ *
+ */
+public class TiledGraphBenchmarking {
+
+	public static void main(String [] args) throws IOException {
+
+		// Number of random queries per map.
+		int queries = 500;
+
+		// Side of a tile, in degrees.
+		double tileSize = 0.005;
+
+		// Tiles kept in memory.
+		int[] capacities = { 4, 16, 64 };
+
+		// Fixed seed so every run asks the same queries.
+		long seed = 20171119L;
+
+		String[] maps = { "data/maps/new_york.map", "data/maps/san_diego.map", "data/maps/hollywood_large.map" };
+
+		System.out.println("map\ttiles\tborder nodes\tcapacity\tsearch\tquery us\tin memory us\tloads/query\tresident");
+		for (String map : maps) {
+			Path dir = Files.createTempDirectory("tiles");
+			try {
+				Path graphFile = dir.resolve("map.graph");
+				GraphLoader.createGraphFile(map, graphFile.toString());
+				GraphLoader.createTiles(graphFile.toString(), dir.toString(), tileSize);
+				MapGraph graph = GraphLoader.loadGraphFile(graphFile.toString(), null, null);
+				CompactGraph frozen = graph.freeze();
+				Random random = new Random(seed);
+				GeographicPoint[] starts = new GeographicPoint[queries];
+				GeographicPoint[] goals = new GeographicPoint[queries];
+				double[] expected = new double[queries];
+				for (int i = 0; i < queries; i++) {
+					starts[i] = frozen.point(random.nextInt(frozen.numVertices()));
+					goals[i] = frozen.point(random.nextInt(frozen.numVertices()));
+					Route route = graph.route(starts[i], goals[i]);
+					expected[i] = route == null ? Double.POSITIVE_INFINITY : route.getCost();
+				}
+
+				// Warm up before timing.
+				for (int i = 0; i < queries; i++) {
+					graph.aStarSearch(starts[i], goals[i]);
+				}
+				long start = System.nanoTime();
+				for (int i = 0; i < queries; i++) {
+					graph.aStarSearch(starts[i], goals[i]);
+				}
+				long inMemoryNanos = System.nanoTime() - start;
+
+				for (int capacity : capacities) {
+					for (boolean aStar : new boolean[] { false, true }) {
+						TiledGraph tiled = TiledGraph.open(dir, capacity);
+						int resident = 0;
+						start = System.nanoTime();
+						for (int i = 0; i < queries; i++) {
+							List<GeographicPoint> path = aStar ? tiled.aStarSearch(starts[i], goals[i]) : tiled.dijkstra(starts[i], goals[i]);
+							check(map, frozen, path, expected[i], starts[i], goals[i]);
+							resident = Math.max(resident, tiled.getResidentTiles());
+						}
+						if (resident > capacity) {
+							throw new IllegalStateException(resident + " tiles of " + map + " kept in a cache of " + capacity);
+						}
+						long tiledNanos = System.nanoTime() - start;
+						System.out.println(map + "\t" + tiled.getNumTiles() + "\t" + tiled.getNumBorderNodes() + "\t" + capacity
+								+ "\t" + (aStar ? "astar" : "dijkstra") + "\t" + String.format("%.1f", tiledNanos / 1000.0 / queries)
+								+ "\t" + String.format("%.1f", inMemoryNanos / 1000.0 / queries)
+								+ "\t" + String.format("%.2f", (double) tiled.getLoads() / queries) + "\t" + resident);
+					}
+				}
+
+				// The same point is an empty path, as on MapGraph.
+				if (!TiledGraph.open(dir, 1).dijkstra(starts[0], starts[0]).isEmpty()) {
+					throw new IllegalStateException("path from " + starts[0] + " to itself on " + map + " is not empty");
+				}
+
+				// The region around a query answers as the whole graph does.
+				TiledGraph tiled = TiledGraph.open(dir, capacities[capacities.length - 1]);
+				MapGraph region = tiled.region(new BoundingBox(-90, -180, 90, 180));
+				if (region.getNumVertices() != graph.getNumVertices() || region.getNumEdges() != graph.getNumEdges()) {
+					throw new IllegalStateException("region of " + map + " has " + region.getNumVertices() + " vertices and "
+							+ region.getNumEdges() + " edges");
+				}
+			} finally {
+				delete(dir);
+			}
+		}
+	}
+
+	// The path goes along edges of the graph and costs the same as the one of the whole graph.
+	private static void check(String map, CompactGraph frozen, List<GeographicPoint> path, double expected,
+			GeographicPoint start, GeographicPoint goal) {
+		double cost = path == null ? Double.POSITIVE_INFINITY : 0;
+		for (int i = 0; path != null && i + 1 < path.size(); i++) {
+			int v = frozen.idOf(path.get(i));
+			double best = Double.POSITIVE_INFINITY;
+			for (int e = frozen.firstEdge(v); e < frozen.endEdge(v); e++) {
+				if (frozen.point(frozen.target(e)).equals(path.get(i + 1))) {
+					best = Math.min(best, frozen.cost(CostProfile.DURATION, e));
+				}
+			}
+			cost += best;
+		}
+		if (Math.abs(cost - expected) > 1e-9 * Math.max(1, expected) && cost != expected) {
+			throw new IllegalStateException("path from " + start + " to " + goal + " on " + map + " costs " + cost + " != " + expected);
+		}
+	}
+
+	private static void delete(Path dir) throws IOException {
+		for (Path file : Files.newDirectoryStream(dir)) {
+			Files.delete(file);
+		}
+		Files.delete(dir);
+	}
+}
@@ -0,0 +1,107 @@
+package roadgraph;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/** A class for timing the live road updates of MapGraph: closing,
+ * reopening and slowing down random roads, each making a new version of
+ * the frozen graph, against reloading the map to change it.  The updates
+ * are timed alone and then again while another thread keeps running
+ * Dijkstra queries on whatever version is current.
+ *
+ * @author dayler
+ *
+ */
+public class UpdateBenchmarking {
+
+	public static void main(String [] args) throws InterruptedException {
+
+		// Number of random road updates per run.
+		int updates = 100000;
+
+		// Fixed seed so every run makes the same updates.
+		long seed = 20171119L;
+
+		String[] maps = { "data/maps/new_york.map", "data/maps/san_diego.map" };
+
+		System.out.println("map\treload ms\tus/update\tus/update with queries\tqueries");
+		for (String map : maps) {
+			long start = System.nanoTime();
+			MapGraph mapGraph = new MapGraph();
+			GraphLoader.loadRoadMap(map, mapGraph);
+			CompactGraph graph = mapGraph.freeze();
+			long reload = System.nanoTime() - start;
+
+			int[][] roads = randomRoads(graph, updates, seed);
+
+			// Warm up before timing.
+			update(mapGraph, graph, roads);
+
+			start = System.nanoTime();
+			update(mapGraph, graph, roads);
+			long alone = System.nanoTime() - start;
+
+			AtomicBoolean done = new AtomicBoolean();
+			AtomicLong queries = new AtomicLong();
+			Thread reader = new Thread(() -> {
+				Random random = new Random(seed);
+				while (!done.get()) {
+					GeographicPoint from = graph.point(random.nextInt(graph.numVertices()));
+					GeographicPoint to = graph.point(random.nextInt(graph.numVertices()));
+					mapGraph.dijkstra(from, to);
+					queries.incrementAndGet();
+				}
+			});
+			reader.start();
+			start = System.nanoTime();
+			update(mapGraph, graph, roads);
+			long shared = System.nanoTime() - start;
+			done.set(true);
+			reader.join();
+
+			System.out.println(map + "\t" + (reload / 1000000.0) + "\t" + (alone / 1000.0 / updates)
+					+ "\t" + (shared / 1000.0 / updates) + "\t" + queries.get());
+		}
+	}
+
+	// Close, reopen and slow down the roads in turn, then drop the changes.
+	private static void update(MapGraph mapGraph, CompactGraph graph, int[][] roads) {
+		for (int i = 0; i < roads.length; i++) {
+			GeographicPoint from = graph.point(roads[i][0]);
+			GeographicPoint to = graph.point(roads[i][1]);
+			switch (i % 3) {
+			case 0:
+				mapGraph.closeRoad(from, to);
+				break;
+			case 1:
+				mapGraph.reopenRoad(from, to);
+				break;
+			default:
+				mapGraph.setSpeed(from, to, 20);
+				break;
+			}
+		}
+		for (int[] road : roads) {
+			mapGraph.resetRoad(graph.point(road[0]), graph.point(road[1]));
+		}
+	}
+
+	// Source and target of random edges.
+	private static int[][] randomRoads(CompactGraph graph, int count, long seed) {
+		Random random = new Random(seed);
+		int[][] roads = new int[count][];
+		for (int i = 0; i < count; i++) {
+			int source;
+			do {
+				source = random.nextInt(graph.numVertices());
+			} while (graph.firstEdge(source) == graph.endEdge(source));
+			int e = graph.firstEdge(source) + random.nextInt(graph.endEdge(source) - graph.firstEdge(source));
+			roads[i] = new int[] { source, graph.target(e) };
+		}
+		return roads;
+	}
+}
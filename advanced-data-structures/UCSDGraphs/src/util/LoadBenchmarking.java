@@ -0,0 +1,72 @@
+package util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import roadgraph.MapGraph;
+
+/** A class for timing how long GraphLoader takes to build a MapGraph
+ * from the map files, smallest to largest.  The time per edge should
+ * stay flat as the maps grow if the build is linear.
+ *
+ * The peak heap is the most the heap pools held during one more load,
+ * over what they held after a collection just before it.  It counts the
+ * garbage not yet collected too, so run with a small young generation,
+ * e.g. -Xmn8m, to see what the loader keeps alive.
+ *
+ * @author dayler
+ *
+ */
+public class LoadBenchmarking {
+
+	public static void main(String [] args) {
+
+		// Run each load more than once to get bigger numbers and less noise.
+		int trials = 10;
+
+		// The maps to load, ordered by size.
+		String[] maps = { "data/maps/ucsd.map", "data/maps/hollywood_small.map",
+				"data/maps/new_york.map", "data/maps/san_diego.map" };
+
+		// Warm up the JIT so the first map is not charged with it.
+		for (int i = 0; i < trials; i++) {
+			GraphLoader.loadRoadMap(maps[0], new MapGraph());
+		}
+
+		System.out.println("map\tvertices\tedges\tms/load\tns/edge\tpeak heap KB");
+		for (String map : maps) {
+			MapGraph graph = null;
+			long start = System.nanoTime();
+			for (int i = 0; i < trials; i++) {
+				graph = new MapGraph();
+				GraphLoader.loadRoadMap(map, graph);
+			}
+			long elapsed = (System.nanoTime() - start) / trials;
+			long peak = peakHeap(map);
+			System.out.println(map + "\t" + graph.getNumVertices() + "\t" + graph.getNumEdges()
+					+ "\t" + (elapsed / 1000000.0) + "\t" + (elapsed / graph.getNumEdges())
+					+ "\t" + (peak / 1024));
+		}
+	}
+
+	// Peak heap in bytes while loading the map, over the heap in use before.
+	private static long peakHeap(String map) {
+		System.gc();
+		long before = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				before += pool.getUsage().getUsed();
+				pool.resetPeakUsage();
+			}
+		}
+		GraphLoader.loadRoadMap(map, new MapGraph());
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak - before;
+	}
+}
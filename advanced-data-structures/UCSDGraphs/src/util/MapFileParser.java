@@ -0,0 +1,308 @@
+package util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/** A streaming tokenizer for the road data files read by GraphLoader.
+ *
+ * Each line holds
+ * lat1 lon1 lat2 lon2 roadName roadType
+ * where the road name is usually quoted.  The file is read in fixed
+ * size chunks through a ByteBuffer, so it can be far larger than the
+ * heap, and the lines are tokenized in place: the coordinates are parsed
+ * straight from the bytes and the names and types are interned, so a line
+ * costs no allocation.
+ *
+ * The tokens are split the same way the former regular expression
+ * [^\s"']+|"([^"]*)" did.
+ *
+ * @author dayler
+ *
+ */
+final class MapFileParser {
+
+	/** Receives the lines of a map file. */
+	interface LineHandler {
+		/**
+		 * @param lat1 Latitude of the first point
+		 * @param lon1 Longitude of the first point
+		 * @param lat2 Latitude of the second point
+		 * @param lon2 Longitude of the second point
+		 * @param roadName The interned road name
+		 * @param roadType The interned road type
+		 */
+		void line(double lat1, double lon1, double lat2, double lon2, String roadName, String roadType);
+	}
+
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	// Largest number of digits whose value is exact in a double mantissa
+	// for the fast path.
+	private static final int MAX_FAST_DIGITS = 15;
+
+	private static final double[] POWERS_OF_TEN = new double[MAX_FAST_DIGITS + 1];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private byte[] buffer = new byte[CHUNK_SIZE];
+
+	// Cursor and end of the line being tokenized.
+	private int pos;
+	private int limit;
+
+	private int lineNumber;
+
+	// Open addressing table of the interned names and types.
+	private byte[][] keys = new byte[256][];
+	private String[] values = new String[256];
+	private int size;
+
+	private MapFileParser() {
+	}
+
+	/**
+	 * Reads every line of a map file.
+	 *
+	 * @param filename The file containing the road data
+	 * @param handler Called once per line, in file order
+	 * @throws IOException If the file cannot be read or a line is malformed
+	 */
+	static void parse(String filename, LineHandler handler) throws IOException {
+		new MapFileParser().read(filename, handler);
+	}
+
+	private void read(String filename, LineHandler handler) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			int start = 0;
+			int end = 0;
+			boolean eof = false;
+			while (!eof) {
+				if (end == buffer.length) {
+					// keep the partial line, growing the buffer for very long ones.
+					if (start == 0) {
+						buffer = Arrays.copyOf(buffer, buffer.length * 2);
+					} else {
+						System.arraycopy(buffer, start, buffer, 0, end - start);
+						end -= start;
+						start = 0;
+					}
+				}
+				int read = channel.read(ByteBuffer.wrap(buffer, end, buffer.length - end));
+				if (read < 0) {
+					eof = true;
+				} else {
+					end += read;
+				}
+				for (int i = start; i < end; i++) {
+					if (buffer[i] == '\n') {
+						parseLine(start, i, handler);
+						start = i + 1;
+					}
+				}
+				if (eof && start < end) {
+					// last line without a line break.
+					parseLine(start, end, handler);
+				}
+			}
+		}
+	}
+
+	private void parseLine(int start, int end, LineHandler handler) throws IOException {
+		lineNumber++;
+		pos = start;
+		limit = end;
+		if (!skipSeparators()) {
+			// blank line.
+			return;
+		}
+		double lat1 = nextDouble();
+		double lon1 = nextDouble();
+		double lat2 = nextDouble();
+		double lon2 = nextDouble();
+		String roadName = nextToken();
+		String roadType = nextToken();
+		handler.line(lat1, lon1, lat2, lon2, roadName, roadType);
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\n' || b == 0x0B || b == '\f';
+	}
+
+	private static boolean isSeparator(byte b) {
+		return isWhitespace(b) || b == '"' || b == '\'';
+	}
+
+	/**
+	 * Moves the cursor to the start of the next token, skipping the
+	 * characters no token can start with, like a quote that is never closed.
+	 * @return true if there is a token left on the line
+	 */
+	private boolean skipSeparators() {
+		while (pos < limit) {
+			byte b = buffer[pos];
+			if (b == '"') {
+				if (closingQuote(pos) >= 0) {
+					return true;
+				}
+				pos++;
+			} else if (isWhitespace(b) || b == '\'') {
+				pos++;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int closingQuote(int quote) {
+		for (int i = quote + 1; i < limit; i++) {
+			if (buffer[i] == '"') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses the next token as a double.  Plain decimals of up to 15
+	 * digits are the mantissa over a power of ten, both exact, so the
+	 * division rounds the same way Double.parseDouble does; anything else
+	 * goes through Double.parseDouble.
+	 */
+	private double nextDouble() throws IOException {
+		if (!skipSeparators()) {
+			throw malformed();
+		}
+		int start = pos;
+		int end = start;
+		while (end < limit && !isSeparator(buffer[end])) {
+			end++;
+		}
+		pos = end;
+		int i = start;
+		boolean negative = false;
+		if (buffer[i] == '-' || buffer[i] == '+') {
+			negative = buffer[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int decimals = -1;
+		for (; i < end; i++) {
+			byte b = buffer[i];
+			if (b >= '0' && b <= '9') {
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				if (decimals >= 0) {
+					decimals++;
+				}
+			} else if (b == '.' && decimals < 0) {
+				decimals = 0;
+			} else {
+				break;
+			}
+		}
+		if (i == end && digits > 0 && digits <= MAX_FAST_DIGITS) {
+			double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+			return negative ? -value : value;
+		}
+		try {
+			return Double.parseDouble(new String(buffer, start, end - start, StandardCharsets.ISO_8859_1));
+		} catch (NumberFormatException e) {
+			throw malformed();
+		}
+	}
+
+	/** Reads the next token, quoted or not, as an interned string. */
+	private String nextToken() throws IOException {
+		if (!skipSeparators()) {
+			throw malformed();
+		}
+		int start;
+		int end;
+		if (buffer[pos] == '"') {
+			start = pos + 1;
+			end = closingQuote(pos);
+			pos = end + 1;
+		} else {
+			start = pos;
+			end = start;
+			while (end < limit && !isSeparator(buffer[end])) {
+				end++;
+			}
+			pos = end;
+		}
+		return intern(start, end);
+	}
+
+	private String intern(int start, int end) {
+		int hash = 1;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + buffer[i];
+		}
+		int mask = keys.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (keys[slot] != null) {
+			byte[] key = keys[slot];
+			if (key.length == end - start && rangeEquals(key, start)) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		byte[] key = Arrays.copyOfRange(buffer, start, end);
+		String value = new String(key, StandardCharsets.UTF_8);
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size * 2 > keys.length) {
+			rehash();
+		}
+		return value;
+	}
+
+	private boolean rangeEquals(byte[] key, int start) {
+		for (int i = 0; i < key.length; i++) {
+			if (key[i] != buffer[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		byte[][] oldKeys = keys;
+		String[] oldValues = values;
+		keys = new byte[oldKeys.length * 2][];
+		values = new String[oldKeys.length * 2];
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			byte[] key = oldKeys[i];
+			if (key == null) {
+				continue;
+			}
+			int hash = 1;
+			for (byte b : key) {
+				hash = 31 * hash + b;
+			}
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while (keys[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			values[slot] = oldValues[i];
+		}
+	}
+
+	private IOException malformed() {
+		return new IOException("Malformed road line " + lineNumber);
+	}
+}
@@ -0,0 +1,110 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import geography.GeographicPoint;
+import geography.RoadSegment;
+import roadgraph.MapGraph;
+
+/** A class for timing GraphLoader on every map file, on the calling
+ * thread alone and on a fork-join pool.  Before timing, both loads of
+ * each map are checked to give the same graph, down to the bytes of
+ * its binary file, and the same segments and intersections.
+ *
+ * The number of threads of the pool can be given as the first argument,
+ * it defaults to the number of cores.
+ *
+ * @author dayler
+ *
+ */
+public class ParallelLoadBenchmarking {
+
+	public static void main(String [] args) throws IOException {
+
+		// Run each load more than once to get bigger numbers and less noise.
+		int trials = 10;
+
+		int threads = args.length > 0 ? Integer.parseInt(args[0])
+				: Runtime.getRuntime().availableProcessors();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+
+		File[] maps = new File("data/maps").listFiles((dir, name) -> name.endsWith(".map"));
+		Arrays.sort(maps, (a, b) -> Long.compare(a.length(), b.length()));
+
+		// Warm up the JIT so the first map is not charged with it.
+		for (int i = 0; i < trials; i++) {
+			load(maps[maps.length - 1].getPath(), null);
+			load(maps[maps.length - 1].getPath(), pool);
+		}
+
+		System.out.println("map\tvertices\tedges\tsequential ms\t" + threads + " threads ms\tspeedup");
+		try {
+			for (File map : maps) {
+				String path = map.getPath();
+				MapGraph graph = check(path, pool);
+
+				long start = System.nanoTime();
+				for (int i = 0; i < trials; i++) {
+					load(path, null);
+				}
+				long sequential = (System.nanoTime() - start) / trials;
+
+				start = System.nanoTime();
+				for (int i = 0; i < trials; i++) {
+					load(path, pool);
+				}
+				long parallel = (System.nanoTime() - start) / trials;
+
+				System.out.println(path + "\t" + graph.getNumVertices() + "\t" + graph.getNumEdges()
+						+ "\t" + String.format("%.2f", sequential / 1e6) + "\t" + String.format("%.2f", parallel / 1e6)
+						+ "\t" + String.format("%.2fx", (double)sequential / parallel));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static MapGraph load(String path, ForkJoinPool pool) {
+		MapGraph graph = new MapGraph();
+		GraphLoader.loadRoadMap(path, graph, new HashMap<GeographicPoint,HashSet<RoadSegment>>(),
+				new HashSet<GeographicPoint>(), pool);
+		return graph;
+	}
+
+	// Load the map both ways and fail if anything differs.
+	private static MapGraph check(String path, ForkJoinPool pool) throws IOException {
+		MapGraph sequential = new MapGraph();
+		HashMap<GeographicPoint,HashSet<RoadSegment>> sequentialSegments = new HashMap<GeographicPoint,HashSet<RoadSegment>>();
+		Set<GeographicPoint> sequentialIntersections = new HashSet<GeographicPoint>();
+		GraphLoader.loadRoadMap(path, sequential, sequentialSegments, sequentialIntersections, null);
+
+		MapGraph parallel = new MapGraph();
+		HashMap<GeographicPoint,HashSet<RoadSegment>> parallelSegments = new HashMap<GeographicPoint,HashSet<RoadSegment>>();
+		Set<GeographicPoint> parallelIntersections = new HashSet<GeographicPoint>();
+		GraphLoader.loadRoadMap(path, parallel, parallelSegments, parallelIntersections, pool);
+
+		if (!sequentialSegments.equals(parallelSegments) || !sequentialIntersections.equals(parallelIntersections)
+				|| !Arrays.equals(bytes(sequential), bytes(parallel))) {
+			throw new IllegalStateException("The parallel load differs on " + path);
+		}
+		return sequential;
+	}
+
+	// The binary file of the graph, same vertex and edge ids give the same bytes.
+	private static byte[] bytes(MapGraph graph) throws IOException {
+		File file = File.createTempFile("load", ".graph");
+		try {
+			graph.freeze().save(file.toPath());
+			return Files.readAllBytes(file.toPath());
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import geography.GeographicPoint;
+
+/** A class for timing the tokenizing of the map files, in MB/s: the
+ * streaming MapFileParser against the regular expression splitter
+ * GraphLoader used to run on every line.  Both build the two points of
+ * each line, and their checksums must match.
+ *
+ * The last row is a big file made of copies of the largest map, the
+ * size in MB can be given as the first argument.
+ *
+ * @author dayler
+ *
+ */
+public class ParserBenchmarking {
+
+	public static void main(String [] args) throws IOException {
+
+		// Run each parse more than once to get bigger numbers and less noise.
+		int trials = 5;
+
+		// Size of the big file, in MB.
+		int bigSize = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+
+		File[] maps = new File("data/maps").listFiles((dir, name) -> name.endsWith(".map"));
+		Arrays.sort(maps, (a, b) -> Long.compare(a.length(), b.length()));
+		File big = createBigFile(maps[maps.length - 1], bigSize * 1024L * 1024L);
+
+		// Warm up the JIT so the first map is not charged with it.
+		for (int i = 0; i < trials; i++) {
+			runRegex(maps[maps.length - 1].getPath());
+			runStreaming(maps[maps.length - 1].getPath());
+		}
+
+		System.out.println("map\tMB\tregex MB/s\tstreaming MB/s\tspeedup");
+		try {
+			for (File map : maps) {
+				print(map.getPath(), map.length(), trials);
+			}
+			print("copies of " + maps[maps.length - 1].getName(), big.length(), 1, big.getPath());
+		} finally {
+			big.delete();
+		}
+	}
+
+	private static void print(String map, long bytes, int trials) throws IOException {
+		print(map, bytes, trials, map);
+	}
+
+	private static void print(String label, long bytes, int trials, String path) throws IOException {
+		double checksum = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < trials; i++) {
+			checksum = runRegex(path);
+		}
+		long regex = (System.nanoTime() - start) / trials;
+
+		double streamedChecksum = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < trials; i++) {
+			streamedChecksum = runStreaming(path);
+		}
+		long streaming = (System.nanoTime() - start) / trials;
+
+		if (checksum != streamedChecksum) {
+			throw new IllegalStateException("The parsers disagree on " + label);
+		}
+		double mb = bytes / (1024.0 * 1024.0);
+		System.out.println(label + "\t" + String.format("%.2f", mb) + "\t" + String.format("%.1f", mb * 1e9 / regex)
+				+ "\t" + String.format("%.1f", mb * 1e9 / streaming) + "\t" + String.format("%.1fx", (double)regex / streaming));
+	}
+
+	private static File createBigFile(File map, long size) throws IOException {
+		File big = File.createTempFile("big", ".map");
+		byte[] content = Files.readAllBytes(map.toPath());
+		for (long written = 0; written < size; written += content.length) {
+			Files.write(big.toPath(), content, StandardOpenOption.APPEND);
+		}
+		return big;
+	}
+
+	private static double runStreaming(String path) throws IOException {
+		double[] checksum = new double[1];
+		MapFileParser.parse(path, (lat1, lon1, lat2, lon2, roadName, roadType) -> {
+			GeographicPoint p1 = new GeographicPoint(lat1, lon1);
+			GeographicPoint p2 = new GeographicPoint(lat2, lon2);
+			checksum[0] += p1.getX() - p2.getY() + roadName.length() + roadType.length();
+		});
+		return checksum[0];
+	}
+
+	// The former GraphLoader.splitInputString, run on every line.
+	private static double runRegex(String path) throws IOException {
+		double checksum = 0;
+		try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+			String nextLine;
+			while ((nextLine = reader.readLine()) != null) {
+				ArrayList<String> tokens = new ArrayList<String>();
+				Pattern tokSplitter = Pattern.compile("[^\\s\"']+|\"([^\"]*)\"");
+				Matcher m = tokSplitter.matcher(nextLine);
+				while (m.find()) {
+					if (m.group(1) != null) {
+						tokens.add(m.group(1));
+					}
+					else {
+						tokens.add(m.group());
+					}
+				}
+				GeographicPoint p1 = new GeographicPoint(Double.parseDouble(tokens.get(0)), Double.parseDouble(tokens.get(1)));
+				GeographicPoint p2 = new GeographicPoint(Double.parseDouble(tokens.get(2)), Double.parseDouble(tokens.get(3)));
+				checksum += p1.getX() - p2.getY() + tokens.get(4).length() + tokens.get(5).length();
+			}
+		}
+		return checksum;
+	}
+}
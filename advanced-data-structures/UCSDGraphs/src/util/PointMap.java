@@ -0,0 +1,226 @@
+package util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import geography.GeographicPoint;
+
+/** The lines of a map file indexed by their points, the way GraphLoader
+ * walks them to find the intersections and trace the roads between them.
+ *
+ * Every distinct coordinate is interned to an int id, in the order it
+ * first shows up in the file, and each line is kept as the ids of its two
+ * points plus its interned name and type.  The lines going out of and
+ * coming into a point are then int ranges of two arrays sorted by point,
+ * in file order, so the map costs a few ints per line instead of a list
+ * node and two boxed points.
+ *
+ * It is only read once built, so many threads can walk it at once.
+ *
+ * @author dayler
+ *
+ */
+final class PointMap {
+
+	private static final int INITIAL_CAPACITY = 1 << 10;
+
+	// Interned coordinates, by point id.
+	private double[] lat = new double[INITIAL_CAPACITY];
+	private double[] lon = new double[INITIAL_CAPACITY];
+	private int numPoints;
+
+	// Open addressing table of the point ids, -1 for a free slot.
+	private int[] table;
+
+	// The lines, by line id in file order.
+	private int[] from = new int[INITIAL_CAPACITY];
+	private int[] to = new int[INITIAL_CAPACITY];
+	private String[] names = new String[INITIAL_CAPACITY];
+	private String[] types = new String[INITIAL_CAPACITY];
+	private int numLines;
+
+	// Lines out of point p are outLines[outOffsets[p]] to
+	// outLines[outOffsets[p + 1] - 1], the same for the lines in.
+	private int[] outOffsets;
+	private int[] outLines;
+	private int[] inOffsets;
+	private int[] inLines;
+
+	private PointMap() {
+		table = new int[INITIAL_CAPACITY * 2];
+		Arrays.fill(table, -1);
+	}
+
+	/**
+	 * Reads every line of a map file.
+	 *
+	 * @param filename The file containing the road data
+	 * @return The lines of the file by point
+	 * @throws IOException If the file cannot be read or a line is malformed
+	 */
+	static PointMap read(String filename) throws IOException {
+		PointMap map = new PointMap();
+		MapFileParser.parse(filename, map::addLine);
+		map.index();
+		return map;
+	}
+
+	/** @return A map without any line. */
+	static PointMap empty() {
+		PointMap map = new PointMap();
+		map.index();
+		return map;
+	}
+
+	private void addLine(double lat1, double lon1, double lat2, double lon2, String roadName, String roadType) {
+		if (numLines == from.length) {
+			int capacity = numLines * 2;
+			from = Arrays.copyOf(from, capacity);
+			to = Arrays.copyOf(to, capacity);
+			names = Arrays.copyOf(names, capacity);
+			types = Arrays.copyOf(types, capacity);
+		}
+		from[numLines] = intern(lat1, lon1);
+		to[numLines] = intern(lat2, lon2);
+		names[numLines] = roadName;
+		types[numLines] = roadType;
+		numLines++;
+	}
+
+	private int intern(double latitude, double longitude) {
+		int mask = table.length - 1;
+		int slot = hash(latitude, longitude) & mask;
+		while (table[slot] >= 0) {
+			int p = table[slot];
+			if (Double.doubleToLongBits(lat[p]) == Double.doubleToLongBits(latitude)
+					&& Double.doubleToLongBits(lon[p]) == Double.doubleToLongBits(longitude)) {
+				return p;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (numPoints == lat.length) {
+			lat = Arrays.copyOf(lat, numPoints * 2);
+			lon = Arrays.copyOf(lon, numPoints * 2);
+		}
+		int p = numPoints++;
+		lat[p] = latitude;
+		lon[p] = longitude;
+		table[slot] = p;
+		if (numPoints * 2 > table.length) {
+			rehash();
+		}
+		return p;
+	}
+
+	private static int hash(double latitude, double longitude) {
+		long bits = Double.doubleToLongBits(latitude) * 31 + Double.doubleToLongBits(longitude);
+		int hash = (int)(bits ^ (bits >>> 32));
+		return hash ^ (hash >>> 16);
+	}
+
+	private void rehash() {
+		table = new int[table.length * 2];
+		Arrays.fill(table, -1);
+		int mask = table.length - 1;
+		for (int p = 0; p < numPoints; p++) {
+			int slot = hash(lat[p], lon[p]) & mask;
+			while (table[slot] >= 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = p;
+		}
+	}
+
+	// Sort the lines by point, keeping the file order for each point, and
+	// drop the room left for more lines and points.
+	private void index() {
+		lat = Arrays.copyOf(lat, numPoints);
+		lon = Arrays.copyOf(lon, numPoints);
+		from = Arrays.copyOf(from, numLines);
+		to = Arrays.copyOf(to, numLines);
+		names = Arrays.copyOf(names, numLines);
+		types = Arrays.copyOf(types, numLines);
+		outOffsets = new int[numPoints + 1];
+		outLines = new int[numLines];
+		inOffsets = new int[numPoints + 1];
+		inLines = new int[numLines];
+		sort(from, outOffsets, outLines);
+		sort(to, inOffsets, inLines);
+	}
+
+	private void sort(int[] point, int[] offsets, int[] lines) {
+		for (int line = 0; line < numLines; line++) {
+			offsets[point[line] + 1]++;
+		}
+		for (int p = 0; p < numPoints; p++) {
+			offsets[p + 1] += offsets[p];
+		}
+		int[] next = Arrays.copyOf(offsets, numPoints);
+		for (int line = 0; line < numLines; line++) {
+			lines[next[point[line]]++] = line;
+		}
+	}
+
+	/** @return The number of distinct points. */
+	int numPoints() {
+		return numPoints;
+	}
+
+	/** @return The number of lines. */
+	int numLines() {
+		return numLines;
+	}
+
+	/** @return A new GeographicPoint at point p. */
+	GeographicPoint point(int p) {
+		return new GeographicPoint(lat[p], lon[p]);
+	}
+
+	/** @return The number of lines going out of point p. */
+	int outDegree(int p) {
+		return outOffsets[p + 1] - outOffsets[p];
+	}
+
+	/** @return The i-th line going out of point p, in file order. */
+	int outLine(int p, int i) {
+		return outLines[outOffsets[p] + i];
+	}
+
+	/** @return The number of lines coming into point p. */
+	int inDegree(int p) {
+		return inOffsets[p + 1] - inOffsets[p];
+	}
+
+	/** @return The i-th line coming into point p, in file order. */
+	int inLine(int p, int i) {
+		return inLines[inOffsets[p] + i];
+	}
+
+	/** @return The point the line starts at. */
+	int from(int line) {
+		return from[line];
+	}
+
+	/** @return The point the line ends at. */
+	int to(int line) {
+		return to[line];
+	}
+
+	/** @return The name of the road of the line. */
+	String roadName(int line) {
+		return names[line];
+	}
+
+	/** @return The type of the road of the line. */
+	String roadType(int line) {
+		return types[line];
+	}
+
+	/** @return true if the line b is the line a in the other direction,
+	 * on the same road.
+	 */
+	boolean isReverse(int a, int b) {
+		return from[a] == to[b] && to[a] == from[b]
+				&& names[a].equals(names[b]) && types[a].equals(types[b]);
+	}
+}